@@ -1,5 +1,13 @@
 import javax.swing.*;
 import javax.swing.border.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.Date;
@@ -8,15 +16,74 @@ import java.util.ArrayList;
 import javax.swing.table.DefaultTableModel;
 import java.sql.*;
 import java.text.SimpleDateFormat;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
 
 // Main Application Entry Point
 public class CtrlYouApp {
     public static void main(String[] args) {
-        // Initialize database on startup
-        DatabaseManager.initializeDatabase();
+        Startup.begin();
+        Metrics.start();
+        
+        // Staged startup: the window shell goes up straight away while the rest runs in the background.
+        // Schema setup is the first job on the ordered database worker, so every query the panels
+        // queue afterwards runs once the tables exist.
+        AsyncDatabase.run(DatabaseManager::initializeDatabase).thenRun(() -> {
+            Startup.schemaReady();
+            SearchIndex.start();
+        });
         
         SwingUtilities.invokeLater(() -> {
             new DashboardFrame().setVisible(true);
@@ -24,19 +91,410 @@ public class CtrlYouApp {
     }
 }
 
+// Startup - Timestamps for the staged launch, reported once the first frame is on screen
+class Startup {
+    private static final long launchNanos = System.nanoTime();
+    private static final AtomicBoolean firstFrameReported = new AtomicBoolean(false);
+    
+    // Called first thing in main so the clock starts before anything else is loaded
+    static void begin() {
+    }
+    
+    static long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launchNanos);
+    }
+    
+    static void schemaReady() {
+        Metrics.histogram("startup.schemaReady").recordSince(launchNanos);
+        System.out.println("Startup: schema ready after " + elapsedMillis() + " ms");
+    }
+    
+    static void firstFrame() {
+        if (!firstFrameReported.compareAndSet(false, true)) {
+            return;
+        }
+        Metrics.histogram("startup.firstFrame").recordSince(launchNanos);
+        // JVM start covers class loading and everything before main, which nanoTime cannot see
+        long sinceJvmStart = System.currentTimeMillis() - java.lang.management.ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println("Startup: first frame after " + elapsedMillis() + " ms (" + sinceJvmStart + " ms since JVM start)");
+    }
+}
+
+// Metrics - Lightweight built-in timers, so regressions show up without attaching a profiler.
+// Each histogram keeps durations in microseconds in log-linear buckets (16 per power of two, as in
+// HdrHistogram), so recording is a couple of atomic increments and any percentile is within ~6%.
+// Summaries are printed every ctrlyou.metrics.log.seconds (0 turns the log line off), published over
+// JMX as CtrlYou:type=Metrics, and shown live in the diagnostics window (Ctrl+Shift+D on the dashboard).
+class Metrics {
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private static final AtomicBoolean started = new AtomicBoolean(false);
+    
+    static class Histogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+        
+        final String name;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+        
+        Histogram(String name) {
+            this.name = name;
+        }
+        
+        void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+        
+        void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            counts.incrementAndGet(bucketOf(micros));
+            count.incrementAndGet();
+            totalMicros.addAndGet(micros);
+            long max;
+            while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+                // Lost the race to a concurrent recorder, try again with its value
+            }
+        }
+        
+        long getCount() {
+            return count.get();
+        }
+        
+        double meanMillis() {
+            long n = count.get();
+            return n == 0 ? 0 : totalMicros.get() / (n * 1000.0);
+        }
+        
+        double maxMillis() {
+            return maxMicros.get() / 1000.0;
+        }
+        
+        // Upper end of the bucket holding the given fraction of recordings, e.g. 0.99 for p99
+        double percentileMillis(double fraction) {
+            long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * n));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.min(highestInBucket(i), maxMicros.get()) / 1000.0;
+                }
+            }
+            return maxMillis();
+        }
+        
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+            count.set(0);
+            totalMicros.set(0);
+            maxMicros.set(0);
+        }
+        
+        String summary() {
+            return String.format("%s n=%d p50=%.2fms p99=%.2fms max=%.2fms",
+                name, getCount(), percentileMillis(0.50), percentileMillis(0.99), maxMillis());
+        }
+        
+        // Values below 16 get a bucket each; above that, the top four bits after the leading one pick the bucket
+        static int bucketOf(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) micros;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+        
+        static long highestInBucket(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+            return lowest + (1L << shift) - 1;
+        }
+    }
+    
+    static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, Histogram::new);
+    }
+    
+    // A value read when metrics are reported, e.g. a counter or a cache size
+    static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+    
+    // Current gauge values, sorted by name
+    static TreeMap<String, Long> gaugeValues() {
+        TreeMap<String, Long> values = new TreeMap<>();
+        for (java.util.Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        return values;
+    }
+    
+    // Sorted by name, for display
+    static ArrayList<Histogram> snapshot() {
+        ArrayList<Histogram> list = new ArrayList<>(histograms.values());
+        list.sort((a, b) -> a.name.compareTo(b.name));
+        return list;
+    }
+    
+    static void resetAll() {
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+    
+    // Wraps an interface so every call through it is timed as prefix + method name
+    @SuppressWarnings("unchecked")
+    static <T> T timed(Class<T> type, T target, String prefix) {
+        ConcurrentHashMap<Method, Histogram> byMethod = new ConcurrentHashMap<>();
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            long start = System.nanoTime();
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                byMethod.computeIfAbsent(method, m -> histogram(prefix + m.getName())).recordSince(start);
+            }
+        });
+    }
+    
+    // EDT timing, the periodic log line and the JMX bean; called once from main
+    static void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        if (!GraphicsEnvironment.isHeadless()) {
+            Toolkit.getDefaultToolkit().getSystemEventQueue().push(new TimedEventQueue());
+        }
+        
+        long logSeconds = Long.parseLong(StorageConfig.get("ctrlyou.metrics.log.seconds", "60"));
+        if (logSeconds > 0) {
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-reporter");
+                t.setDaemon(true);
+                return t;
+            });
+            reporter.scheduleAtFixedRate(Metrics::log, logSeconds, logSeconds, TimeUnit.SECONDS);
+        }
+        
+        try {
+            java.lang.management.ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(new MetricsMBean(), new ObjectName("CtrlYou:type=Metrics"));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+    
+    static void log() {
+        StringBuilder line = new StringBuilder("Metrics:");
+        for (Histogram histogram : snapshot()) {
+            if (histogram.getCount() > 0) {
+                line.append(' ').append(histogram.summary()).append(';');
+            }
+        }
+        for (java.util.Map.Entry<String, Long> gauge : gaugeValues().entrySet()) {
+            line.append(' ').append(gauge.getKey()).append('=').append(gauge.getValue()).append(';');
+        }
+        System.out.println(line);
+    }
+    
+    // Times each event the EDT dispatches. A modal dialog runs a nested dispatch loop inside the event
+    // that opened it; the nested events are timed on their own and the outer one is left out.
+    private static class TimedEventQueue extends EventQueue {
+        private static final Histogram dispatchTime = histogram("edt.dispatch");
+        private int depth = 0;
+        private boolean nested = false;
+        
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            boolean outermost = depth++ == 0;
+            nested = !outermost;
+            long start = System.nanoTime();
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                depth--;
+                if (!outermost || !nested) {
+                    dispatchTime.recordSince(start);
+                }
+            }
+        }
+    }
+    
+    // Exposes count, p50, p99 and max of every histogram as read-only attributes named "<histogram>.<stat>",
+    // and each gauge under its own name
+    private static class MetricsMBean implements DynamicMBean {
+        private static final String[] STATS = {"count", "p50Millis", "p99Millis", "maxMillis"};
+        
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongSupplier gauge = gauges.get(attribute);
+            if (gauge != null) {
+                return gauge.getAsLong();
+            }
+            int dot = attribute.lastIndexOf('.');
+            Histogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+            if (histogram == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            switch (attribute.substring(dot + 1)) {
+                case "count":
+                    return histogram.getCount();
+                case "p50Millis":
+                    return histogram.percentileMillis(0.50);
+                case "p99Millis":
+                    return histogram.percentileMillis(0.99);
+                case "maxMillis":
+                    return histogram.maxMillis();
+                default:
+                    throw new AttributeNotFoundException(attribute);
+            }
+        }
+        
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Left out, as the DynamicMBean contract expects
+                }
+            }
+            return list;
+        }
+        
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+        
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+        
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            if ("reset".equals(actionName)) {
+                resetAll();
+                return null;
+            }
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+        
+        // Built on each call because histograms are created lazily as code paths first run
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            ArrayList<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Histogram histogram : snapshot()) {
+                for (String stat : STATS) {
+                    String type = stat.equals("count") ? "long" : "double";
+                    attributes.add(new MBeanAttributeInfo(histogram.name + "." + stat, type,
+                        stat + " of " + histogram.name, true, false, false));
+                }
+            }
+            for (String gauge : gaugeValues().keySet()) {
+                attributes.add(new MBeanAttributeInfo(gauge, "long", gauge, true, false, false));
+            }
+            MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Clear all histograms",
+                new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+            return new MBeanInfo(Metrics.class.getName(), "Ctrl+You timings",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[]{reset}, null);
+        }
+    }
+}
+
 // Icon Manager Class - Handles all icon loading
+// Icons are decoded and scaled once per (file, width, height) and cached. Cached icons are only
+// softly held, so under memory pressure the GC may drop them and they are simply loaded again.
 class IconManager {
     private static final String ICON_PATH = "icons/";
     
+    private static final ConcurrentHashMap<IconKey, java.lang.ref.SoftReference<ImageIcon>> cache = new ConcurrentHashMap<>();
+    private static final java.lang.ref.ReferenceQueue<ImageIcon> cleared = new java.lang.ref.ReferenceQueue<>();
+    
+    private static final class IconKey {
+        final String filename;
+        final int width;
+        final int height;
+        final int hash;
+        
+        IconKey(String filename, int width, int height) {
+            this.filename = filename;
+            this.width = width;
+            this.height = height;
+            this.hash = (filename.hashCode() * 31 + width) * 31 + height;
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof IconKey)) {
+                return false;
+            }
+            IconKey key = (IconKey) other;
+            return key.width == width && key.height == height && key.filename.equals(filename);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+    
+    // Knows its key so a cleared entry can be removed from the cache
+    private static final class IconRef extends java.lang.ref.SoftReference<ImageIcon> {
+        final IconKey key;
+        
+        IconRef(IconKey key, ImageIcon icon) {
+            super(icon, cleared);
+            this.key = key;
+        }
+    }
+    
     // Load icon from file with fallback
     public static ImageIcon loadIcon(String filename, int width, int height) {
+        IconKey key = new IconKey(filename, width, height);
+        java.lang.ref.SoftReference<ImageIcon> ref = cache.get(key);
+        ImageIcon icon = ref != null ? ref.get() : null;
+        if (icon == null) {
+            // Two threads may both decode a missing icon; either result is fine to keep
+            icon = createIcon(filename, width, height);
+            expungeCleared();
+            cache.put(key, new IconRef(key, icon));
+        }
+        return icon;
+    }
+    
+    private static void expungeCleared() {
+        java.lang.ref.Reference<? extends ImageIcon> ref;
+        while ((ref = cleared.poll()) != null) {
+            cache.remove(((IconRef) ref).key, ref);
+        }
+    }
+    
+    private static ImageIcon createIcon(String filename, int width, int height) {
         try {
             // Try to load from icons folder
             File iconFile = new File(ICON_PATH + filename);
             if (iconFile.exists()) {
                 BufferedImage img = ImageIO.read(iconFile);
-                Image scaledImg = img.getScaledInstance(width, height, Image.SCALE_SMOOTH);
-                return new ImageIcon(scaledImg);
+                if (img != null) {
+                    return new ImageIcon(scale(img, width, height));
+                }
             }
         } catch (Exception e) {
             System.out.println("Could not load icon: " + filename);
@@ -46,9 +504,42 @@ class IconManager {
         return createFallbackIcon(width, height, getFallbackColor(filename));
     }
     
+    // Scales eagerly into a display-compatible image, so painting is a plain copy. Large reductions
+    // halve the size in steps, which keeps the quality close to SCALE_SMOOTH at a fraction of its cost.
+    private static BufferedImage scale(BufferedImage source, int width, int height) {
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            if (w < width * 2 && h < height * 2) {
+                w = width;
+                h = height;
+            }
+            BufferedImage next = createImage(w, h);
+            Graphics2D g2d = next.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(current, 0, 0, w, h, null);
+            g2d.dispose();
+            current = next;
+        } while (w != width || h != height);
+        return current;
+    }
+    
+    private static BufferedImage createImage(int width, int height) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+            return config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+    
     // Create a simple colored circle as fallback
     private static ImageIcon createFallbackIcon(int width, int height, Color color) {
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage image = createImage(width, height);
         Graphics2D g2d = image.createGraphics();
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         
@@ -83,313 +574,4702 @@ class IconManager {
 }
 
 // Database Manager Class (same as before, with mood task additions)
+// Every screen goes through these static methods; the backend behind them is chosen by StorageConfig.
 class DatabaseManager {
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/ctrlyou_db";
-    private static final String DB_USER = "root";
-    private static final String DB_PASSWORD = "vaanya"; 
+    // Every backend call is timed as db.<method>, see Metrics
+    private static final PlannerStorage storage = Metrics.timed(PlannerStorage.class, StorageConfig.openStorage(), "db.");
+    
+    // For each note open in the editor, the modified time of the version its edits are relative to:
+    // the content it opened or last saved. With none, the editor's next save writes the whole note.
+    private static final ConcurrentHashMap<Integer, Long> editorStamps = new ConcurrentHashMap<>();
+    
+    static {
+        // Let queued saves reach the backend before it is closed
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            AsyncDatabase.drain();
+            storage.close();
+        }));
+    }
     
-    public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+    public static PlannerStorage getStorage() {
+        return storage;
     }
     
+    // Home screen counters: loaded once with a single query, then kept current by the write methods.
+    // Writers hold the read lock so a reload never lands between a write and its counter update.
+    private static final ReentrantReadWriteLock statsLock = new ReentrantReadWriteLock();
+    private static volatile boolean statsLoaded = false;
+    private static final AtomicInteger notesCount = new AtomicInteger();
+    private static final AtomicInteger tasksCount = new AtomicInteger();
+    private static final AtomicInteger moodEntriesCount = new AtomicInteger();
+    
     public static void initializeDatabase() {
         try {
-            Connection conn = DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/", DB_USER, DB_PASSWORD);
-            Statement stmt = conn.createStatement();
-            stmt.executeUpdate("CREATE DATABASE IF NOT EXISTS ctrlyou_db");
-            stmt.close();
-            conn.close();
-            
-            conn = getConnection();
-            stmt = conn.createStatement();
-            
-            String createNotesTable = "CREATE TABLE IF NOT EXISTS notes (" +
-                "id INT AUTO_INCREMENT PRIMARY KEY," +
-                "title VARCHAR(255) NOT NULL," +
-                "content TEXT," +
-                "created_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                "modified_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
-                ")";
-            stmt.executeUpdate(createNotesTable);
-            
-            String createTasksTable = "CREATE TABLE IF NOT EXISTS tasks (" +
-                "id INT AUTO_INCREMENT PRIMARY KEY," +
-                "task_name VARCHAR(255) NOT NULL," +
-                "status VARCHAR(50) DEFAULT 'Pending'," +
-                "created_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-                ")";
-            stmt.executeUpdate(createTasksTable);
-            
-            String createMoodTable = "CREATE TABLE IF NOT EXISTS mood_entries (" +
-                "id INT AUTO_INCREMENT PRIMARY KEY," +
-                "mood VARCHAR(100) NOT NULL," +
-                "entry_date DATE," +
-                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-                ")";
-            stmt.executeUpdate(createMoodTable);
-            
-            String createJournalTable = "CREATE TABLE IF NOT EXISTS journal_entries (" +
-                "id INT AUTO_INCREMENT PRIMARY KEY," +
-                "content TEXT," +
-                "entry_date DATE," +
-                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-                ")";
-            stmt.executeUpdate(createJournalTable);
-            
-            String createMindMapTable = "CREATE TABLE IF NOT EXISTS mindmap_nodes (" +
-                "id INT AUTO_INCREMENT PRIMARY KEY," +
-                "mindmap_id INT," +
-                "node_text VARCHAR(255)," +
-                "position_x INT," +
-                "position_y INT," +
-                "created_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-                ")";
-            stmt.executeUpdate(createMindMapTable);
-            
-            stmt.close();
-            conn.close();
-            
-            System.out.println("Database initialized successfully!");
-            
+            storage.initialize();
+            System.out.println("Database initialized successfully! (" + storage.describe() + ")");
         } catch (SQLException e) {
             System.err.println("Database initialization error: " + e.getMessage());
             JOptionPane.showMessageDialog(null, 
-                "Database connection failed! Please check your MySQL settings.\nError: " + e.getMessage(),
+                "Database connection failed! Please check your " + storage.describe() + " settings.\nError: " + e.getMessage(),
                 "Database Error", 
                 JOptionPane.ERROR_MESSAGE);
         }
     }
     
     // NOTES OPERATIONS
-    public static void saveNote(String title, String content) {
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "INSERT INTO notes (title, content) VALUES (?, ?)")) {
-            pstmt.setString(1, title);
-            pstmt.setString(2, content);
-            pstmt.executeUpdate();
+    // Returns the new note's ID, or -1 if it could not be saved
+    public static int saveNote(String title, String content) {
+        statsLock.readLock().lock();
+        try {
+            int noteId = storage.insertNote(title, content);
+            notesCount.incrementAndGet();
+            SearchIndex.indexNote(noteId, title, content, -1);
+            return noteId;
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            statsLock.readLock().unlock();
         }
+        return -1;
     }
     
-    public static void updateNote(String oldTitle, String newTitle, String content) {
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "UPDATE notes SET title = ?, content = ? WHERE title = ?")) {
-            pstmt.setString(1, newTitle);
-            pstmt.setString(2, content);
-            pstmt.setString(3, oldTitle);
-            pstmt.executeUpdate();
+    // Written through to the content cache, so reopening the note needs no query
+    public static void updateNote(int noteId, String content) {
+        editorStamps.remove(noteId);
+        try {
+            noteWritten(noteId, content, storage.updateNote(noteId, content));
         } catch (SQLException e) {
+            NoteContentCache.remove(noteId);
             e.printStackTrace();
         }
     }
     
-    public static void deleteNote(String title) {
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "DELETE FROM notes WHERE title = ?")) {
-            pstmt.setString(1, title);
-            pstmt.executeUpdate();
+    // Saves a round of edits from the notes editor. Only the changed range is sent, provided the stored
+    // note is still the version the editor last opened or saved; otherwise (another instance saved it,
+    // or an earlier save failed) the whole text is written.
+    public static void saveNoteEdit(int noteId, NoteDocument.Edit edit) {
+        Long base = editorStamps.remove(noteId);
+        try {
+            long modified = base == null || edit.isWhole() ? -1
+                : storage.updateNoteRange(noteId, base, edit);
+            if (modified < 0) {
+                modified = storage.updateNote(noteId, edit.text);
+            }
+            if (modified >= 0) {
+                editorStamps.put(noteId, modified);
+            }
+            noteWritten(noteId, edit.text, modified);
         } catch (SQLException e) {
+            NoteContentCache.remove(noteId);
             e.printStackTrace();
         }
     }
     
-    public static ArrayList<String> getAllNotes() {
-        ArrayList<String> notes = new ArrayList<>();
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT title FROM notes ORDER BY modified_date DESC")) {
-            while (rs.next()) {
-                notes.add(rs.getString("title"));
+    private static void noteWritten(int noteId, CharSequence content, long modified) {
+        if (modified >= 0) {
+            NoteContentCache.put(noteId, content, modified);
+            SearchIndex.updateNoteContent(noteId, content);
+        } else {
+            NoteContentCache.remove(noteId);
+        }
+    }
+    
+    public static void deleteNote(int noteId) {
+        statsLock.readLock().lock();
+        try {
+            NoteContentCache.remove(noteId);
+            editorStamps.remove(noteId);
+            if (storage.deleteNote(noteId)) {
+                notesCount.decrementAndGet();
             }
+            SearchIndex.remove(SearchIndex.NOTE, noteId);
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            statsLock.readLock().unlock();
         }
-        return notes;
     }
     
-    public static String getNoteContent(String title) {
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "SELECT content FROM notes WHERE title = ?")) {
-            pstmt.setString(1, title);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getString("content");
-            }
+    // One page of notes, most recently modified first, starting after the given note
+    // (pass a null date for the first page). Only the list columns are read, never the content.
+    public static ArrayList<NoteItem> getNotePage(Timestamp afterModified, int afterId, int limit) {
+        try {
+            return storage.getNotePage(afterModified, afterId, limit);
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return "";
+        return new ArrayList<>();
     }
     
-    public static int getNotesCount() {
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) as count FROM notes")) {
-            if (rs.next()) {
-                return rs.getInt("count");
-            }
+    // Notes created or changed at or after the given time, oldest first
+    public static ArrayList<NoteItem> getNotesModifiedSince(Timestamp since) {
+        try {
+            return storage.getNotesModifiedSince(since);
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return 0;
+        return new ArrayList<>();
     }
     
-    // TASK OPERATIONS
-    public static void addTask(String taskName) {
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "INSERT INTO tasks (task_name, status) VALUES (?, 'Pending')")) {
-            pstmt.setString(1, taskName);
-            pstmt.executeUpdate();
+    // {title, content, modified millis} for one note, or null if it no longer exists
+    public static Object[] getNoteForIndex(int noteId) {
+        try {
+            return storage.getNoteForIndex(noteId);
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        return null;
     }
     
-    public static void updateTaskStatus(String taskName, String status) {
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "UPDATE tasks SET status = ? WHERE task_name = ?")) {
-            pstmt.setString(1, status);
-            pstmt.setString(2, taskName);
-            pstmt.executeUpdate();
+    // SEARCH INDEX SUPPORT
+    // id -> modified millis for every note; lets the search index find what changed while it was closed
+    public static HashMap<Integer, Long> getNoteStamps() {
+        try {
+            return storage.getNoteStamps();
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        return new HashMap<>();
     }
     
-    public static void deleteTask(String taskName) {
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "DELETE FROM tasks WHERE task_name = ?")) {
-            pstmt.setString(1, taskName);
-            pstmt.executeUpdate();
+    public static HashMap<Integer, Long> getJournalStamps() {
+        try {
+            return storage.getJournalStamps();
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        return new HashMap<>();
     }
     
-    public static ArrayList<Object[]> getAllTasks() {
-        ArrayList<Object[]> tasks = new ArrayList<>();
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT task_name, status FROM tasks ORDER BY created_date DESC")) {
-            while (rs.next()) {
-                tasks.add(new Object[]{rs.getString("task_name"), rs.getString("status")});
-            }
+    // Streams {id, title, content, modified millis} for every note without holding them all in memory
+    public static void scanNotesForIndex(Consumer<Object[]> consumer) {
+        try {
+            storage.scanNotes(consumer);
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return tasks;
     }
     
-    // MOOD OPERATIONS
-    public static void saveMoodEntry(String mood) {
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "INSERT INTO mood_entries (mood, entry_date) VALUES (?, CURDATE())")) {
-            pstmt.setString(1, mood);
-            pstmt.executeUpdate();
+    // Streams {id, entry date millis, content} for every journal entry
+    public static void scanJournalsForIndex(Consumer<Object[]> consumer) {
+        try {
+            storage.scanJournalEntries(consumer);
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
     
-    public static int getMoodEntriesCount() {
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) as count FROM mood_entries")) {
-            if (rs.next()) {
-                return rs.getInt("count");
+    public static String getNoteContent(int noteId) {
+        Object[] note = readNoteText(noteId);
+        return note == null ? "" : note[0].toString();
+    }
+    
+    // Content for the notes editor, as a NoteText its document adopts without copying. The version
+    // opened is remembered so the editor's saves can send just the changed range (see saveNoteEdit).
+    public static NoteText openNote(int noteId) {
+        Object[] note = readNoteText(noteId);
+        if (note == null) {
+            editorStamps.remove(noteId);
+            return NoteText.EMPTY;
+        }
+        editorStamps.put(noteId, (long) note[1]);
+        return (NoteText) note[0];
+    }
+    
+    // {content, modified millis}, or null if the note does not exist or cannot be read.
+    // Served from NoteContentCache while the cached copy is at least as new as the stored note. The
+    // modified time is always asked for, with a small query, rather than taken from the notes list:
+    // the list only refreshes when the panel is shown, and would miss another instance's saves.
+    private static Object[] readNoteText(int noteId) {
+        try {
+            long modified = storage.getNoteModified(noteId);
+            if (modified < 0) {
+                NoteContentCache.remove(noteId);
+                return null;
+            }
+            NoteContentCache.Entry cached = NoteContentCache.get(noteId, modified);
+            if (cached != null) {
+                return new Object[]{cached.content, cached.modified};
+            }
+            // Content and modified time come from the same row read, so the cached pair is consistent
+            Object[] note = storage.readNoteText(noteId);
+            if (note != null) {
+                NoteContentCache.put(noteId, (NoteText) note[0], (long) note[1]);
             }
+            return note;
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return 0;
+        return null;
     }
     
-    // JOURNAL OPERATIONS
-    public static void saveJournalEntry(String content) {
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "INSERT INTO journal_entries (content, entry_date) VALUES (?, CURDATE())")) {
-            pstmt.setString(1, content);
-            pstmt.executeUpdate();
+    public static int getNotesCount() {
+        try {
+            return storage.countNotes();
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        return 0;
     }
     
-    public static ArrayList<Object[]> getAllJournalEntries() {
-        ArrayList<Object[]> entries = new ArrayList<>();
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT id, content, entry_date FROM journal_entries ORDER BY entry_date DESC")) {
-            while (rs.next()) {
-                entries.add(new Object[]{
-                    rs.getInt("id"),
-                    rs.getString("content"),
-                    rs.getDate("entry_date")
-                });
-            }
+    // TASK OPERATIONS
+    // Returns the new task's ID, or -1 if it could not be saved
+    public static int addTask(String taskName) {
+        statsLock.readLock().lock();
+        try {
+            int taskId = storage.insertTask(taskName);
+            tasksCount.incrementAndGet();
+            return taskId;
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            statsLock.readLock().unlock();
         }
-        return entries;
+        return -1;
     }
     
-    // MINDMAP OPERATIONS
-    public static void saveMindMap(int mindmapId, ArrayList<MindMapNode> nodes) {
-        try (Connection conn = getConnection()) {
-            PreparedStatement deletePstmt = conn.prepareStatement(
-                "DELETE FROM mindmap_nodes WHERE mindmap_id = ?");
-            deletePstmt.setInt(1, mindmapId);
-            deletePstmt.executeUpdate();
-            
-            PreparedStatement insertPstmt = conn.prepareStatement(
-                "INSERT INTO mindmap_nodes (mindmap_id, node_text, position_x, position_y) VALUES (?, ?, ?, ?)");
-            
-            for (MindMapNode node : nodes) {
-                insertPstmt.setInt(1, mindmapId);
-                insertPstmt.setString(2, node.text);
-                insertPstmt.setInt(3, node.x);
-                insertPstmt.setInt(4, node.y);
-                insertPstmt.executeUpdate();
-            }
+    public static void updateTaskStatus(int taskId, String status) {
+        try {
+            storage.updateTaskStatus(taskId, status);
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
     
-    public static ArrayList<MindMapNode> loadMindMap(int mindmapId) {
-        ArrayList<MindMapNode> nodes = new ArrayList<>();
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "SELECT node_text, position_x, position_y FROM mindmap_nodes WHERE mindmap_id = ?")) {
-            pstmt.setInt(1, mindmapId);
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                nodes.add(new MindMapNode(
-                    rs.getString("node_text"),
-                    rs.getInt("position_x"),
-                    rs.getInt("position_y")
-                ));
+    public static void deleteTask(int taskId) {
+        statsLock.readLock().lock();
+        try {
+            if (storage.deleteTask(taskId)) {
+                tasksCount.decrementAndGet();
             }
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            statsLock.readLock().unlock();
         }
-        return nodes;
     }
-}
-
-// Mood Gift Box - Provides tasks and playlists based on mood
-class MoodGiftBox {
+    
+    public static ArrayList<Object[]> getAllTasks() {
+        try {
+            return storage.getAllTasks();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+    
+    // MOOD OPERATIONS
+    public static void saveMoodEntry(String mood) {
+        statsLock.readLock().lock();
+        try {
+            storage.insertMoodEntry(mood);
+            moodEntriesCount.incrementAndGet();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            statsLock.readLock().unlock();
+        }
+    }
+    
+    public static int getMoodEntriesCount() {
+        try {
+            return storage.countMoodEntries();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+    
+    // DASHBOARD OPERATIONS
+    public static DashboardStats getDashboardStats() {
+        if (!statsLoaded) {
+            loadDashboardStats();
+        }
+        return new DashboardStats(notesCount.get(), tasksCount.get(), moodEntriesCount.get());
+    }
+    
+    private static void loadDashboardStats() {
+        statsLock.writeLock().lock();
+        try {
+            if (statsLoaded) {
+                return;
+            }
+            DashboardStats counts = storage.countAll();
+            notesCount.set(counts.notes);
+            tasksCount.set(counts.tasks);
+            moodEntriesCount.set(counts.moodEntries);
+            statsLoaded = true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            statsLock.writeLock().unlock();
+        }
+    }
+    
+    // JOURNAL OPERATIONS
+    // Returns the new entry's ID, or -1 if it could not be saved
+    public static int saveJournalEntry(String content) {
+        try {
+            int entryId = storage.insertJournalEntry(content);
+            SearchIndex.indexJournalEntry(entryId, java.sql.Date.valueOf(java.time.LocalDate.now()).getTime(), content);
+            return entryId;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+    
+    // One page of {id, entry_date, preview} rows, newest first, starting after the given entry
+    // (pass a null date for the first page)
+    public static ArrayList<Object[]> getJournalEntryPage(java.sql.Date afterDate, int afterId, int limit) {
+        try {
+            return storage.getJournalEntryPage(afterDate, afterId, limit);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+    
+    public static String getJournalEntryContent(int entryId) {
+        try {
+            String content = storage.getJournalEntryContent(entryId);
+            if (content != null) {
+                return content;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return "";
+    }
+    
+    // MINDMAP OPERATIONS
+    // Replaces the whole map in a single transaction
+    public static boolean saveMindMap(int mindmapId, ArrayList<MindMapNode> nodes) {
+        try {
+            storage.replaceMindMap(mindmapId, nodes);
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+    
+    // Writes only the nodes added, moved or edited since the last save, plus deletions
+    public static boolean saveMindMapChanges(int mindmapId, ArrayList<MindMapNode> changedNodes, ArrayList<Long> deletedNodeIds) {
+        if (changedNodes.isEmpty() && deletedNodeIds.isEmpty()) {
+            return true;
+        }
+        try {
+            storage.applyMindMapChanges(mindmapId, changedNodes, deletedNodeIds);
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+    
+    public static ArrayList<MindMapNode> loadMindMap(int mindmapId) {
+        try {
+            return storage.loadMindMap(mindmapId);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+    
+    // Returns the new map's ID, or -1 if it could not be created. noteId 0 means no linked note.
+    public static int createMindMap(String title, int noteId) {
+        try {
+            return storage.createMindMap(title, noteId);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+    
+    public static ArrayList<MindMapItem> getMindMaps() {
+        try {
+            return storage.getMindMaps();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+}
+
+// Planner Storage - The operations a storage backend provides to DatabaseManager.
+// Failures are thrown as SQLException by every backend; DatabaseManager reports them.
+interface PlannerStorage {
+    // Create or open the store; called once at startup
+    void initialize() throws SQLException;
+    
+    // Short human-readable name, used in log lines and error dialogs
+    String describe();
+    
+    void close();
+    
+    // NOTES
+    int insertNote(String title, String content) throws SQLException;
+    
+    // The note's modified time after the update, or -1 if the note does not exist
+    long updateNote(int noteId, CharSequence content) throws SQLException;
+    
+    // Rewrites only the edit's text[head .. length - tail]; the note's first `head` and last `tail`
+    // characters are kept as stored. Applied only while the note's modified time is still
+    // expectedModified and its length is still the edit's base length. The new modified time, or -1 if
+    // the note does not exist or has changed since.
+    long updateNoteRange(int noteId, long expectedModified, NoteDocument.Edit edit) throws SQLException;
+    
+    boolean deleteNote(int noteId) throws SQLException;
+    
+    ArrayList<NoteItem> getNotePage(Timestamp afterModified, int afterId, int limit) throws SQLException;
+    
+    ArrayList<NoteItem> getNotesModifiedSince(Timestamp since) throws SQLException;
+    
+    // null if the note does not exist
+    String getNoteContent(int noteId) throws SQLException;
+    
+    Object[] getNoteForIndex(int noteId) throws SQLException;
+    
+    // {content, modified millis}, or null if the note does not exist
+    Object[] readNoteText(int noteId) throws SQLException;
+    
+    // Modified time in millis, or -1 if the note does not exist
+    long getNoteModified(int noteId) throws SQLException;
+    
+    HashMap<Integer, Long> getNoteStamps() throws SQLException;
+    
+    void scanNotes(Consumer<Object[]> consumer) throws SQLException;
+    
+    int countNotes() throws SQLException;
+    
+    // TASKS
+    int insertTask(String taskName) throws SQLException;
+    
+    void updateTaskStatus(int taskId, String status) throws SQLException;
+    
+    boolean deleteTask(int taskId) throws SQLException;
+    
+    // {id, task_name, status} rows, newest first
+    ArrayList<Object[]> getAllTasks() throws SQLException;
+    
+    // MOODS
+    void insertMoodEntry(String mood) throws SQLException;
+    
+    int countMoodEntries() throws SQLException;
+    
+    DashboardStats countAll() throws SQLException;
+    
+    // JOURNAL
+    int insertJournalEntry(String content) throws SQLException;
+    
+    ArrayList<Object[]> getJournalEntryPage(java.sql.Date afterDate, int afterId, int limit) throws SQLException;
+    
+    // null if the entry does not exist
+    String getJournalEntryContent(int entryId) throws SQLException;
+    
+    HashMap<Integer, Long> getJournalStamps() throws SQLException;
+    
+    void scanJournalEntries(Consumer<Object[]> consumer) throws SQLException;
+    
+    // MIND MAPS (each call is all-or-nothing)
+    void replaceMindMap(int mindmapId, ArrayList<MindMapNode> nodes) throws SQLException;
+    
+    void applyMindMapChanges(int mindmapId, ArrayList<MindMapNode> changedNodes, ArrayList<Long> deletedNodeIds) throws SQLException;
+    
+    ArrayList<MindMapNode> loadMindMap(int mindmapId) throws SQLException;
+    
+    int createMindMap(String title, int noteId) throws SQLException;
+    
+    // Every map in creation order; a link to a note that no longer exists reads as 0
+    ArrayList<MindMapItem> getMindMaps() throws SQLException;
+}
+
+// Storage Config - Picks the storage backend and its settings.
+// Settings are read from ctrlyou.properties in the working directory, then ~/.ctrlyou/ctrlyou.properties;
+// -D system properties override both. ctrlyou.storage=local selects the embedded store.
+class StorageConfig {
+    private static final Properties settings = loadSettings();
+    
+    public static String get(String key, String defaultValue) {
+        return System.getProperty(key, settings.getProperty(key, defaultValue));
+    }
+    
+    // Planner account this instance reads and writes; defaults to the OS login
+    public static String currentUser() {
+        return get("ctrlyou.user", System.getProperty("user.name", "default"));
+    }
+    
+    public static PlannerStorage openStorage() {
+        String backend = get("ctrlyou.storage", "mysql");
+        if ("local".equalsIgnoreCase(backend)) {
+            File dir = new File(get("ctrlyou.local.dir",
+                new File(System.getProperty("user.home"), ".ctrlyou/data").getPath()));
+            return new LocalLogStorage(dir, Boolean.parseBoolean(get("ctrlyou.local.fsync", "false")));
+        }
+        if (!"mysql".equalsIgnoreCase(backend)) {
+            System.err.println("Unknown ctrlyou.storage '" + backend + "', using mysql");
+        }
+        return new MySqlStorage(
+            get("ctrlyou.db.server", "jdbc:mysql://localhost:3306/"),
+            get("ctrlyou.db.name", "ctrlyou_db"),
+            get("ctrlyou.db.user", "root"),
+            get("ctrlyou.db.password", "vaanya"),
+            Integer.parseInt(get("ctrlyou.db.pool.size", "8")),
+            currentUser());
+    }
+    
+    private static Properties loadSettings() {
+        Properties properties = new Properties();
+        File[] candidates = {
+            new File(System.getProperty("user.home"), ".ctrlyou/ctrlyou.properties"),
+            new File("ctrlyou.properties")
+        };
+        // Later files win, so a project-local file overrides the per-user one
+        for (File file : candidates) {
+            if (file.isFile()) {
+                try (FileInputStream in = new FileInputStream(file)) {
+                    properties.load(in);
+                } catch (IOException e) {
+                    System.err.println("Could not read " + file + ": " + e.getMessage());
+                }
+            }
+        }
+        return properties;
+    }
+}
+
+// MySQL Storage - The original JDBC backend, talking to a MySQL server through a connection pool.
+// Several people can share one database: every row belongs to a planner account (users table), and
+// every query is scoped to the account this instance was opened for.
+class MySqlStorage implements PlannerStorage {
+    private final String serverUrl;
+    private final String databaseName;
+    private final String user;
+    private final String password;
+    private final String plannerUser;
+    
+    // users.id of plannerUser, resolved by initialize() before any other query runs
+    private volatile int userId = -1;
+    
+    // Pooled so each click reuses an open connection instead of a new MySQL handshake
+    private final ConnectionPool pool;
+    
+    // Change records a mind map collects before a diff save folds them into its blob
+    private static final int FOLD_MINDMAP_CHANGES = 64;
+    
+    public MySqlStorage(String serverUrl, String databaseName, String user, String password, int poolSize, String plannerUser) {
+        this.serverUrl = serverUrl;
+        this.databaseName = databaseName;
+        this.user = user;
+        this.password = password;
+        this.plannerUser = plannerUser;
+        this.pool = new ConnectionPool(serverUrl + databaseName, user, password, poolSize, 5000, 60000);
+    }
+    
+    public Connection getConnection() throws SQLException {
+        return pool.borrow();
+    }
+    
+    public ConnectionPool getPool() {
+        return pool;
+    }
+    
+    public String describe() {
+        return "MySQL " + serverUrl + databaseName + " as " + plannerUser;
+    }
+    
+    public void close() {
+        pool.shutdown();
+    }
+    
+    public void initialize() throws SQLException {
+        Connection conn = DriverManager.getConnection(serverUrl, user, password);
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("CREATE DATABASE IF NOT EXISTS " + databaseName);
+        stmt.close();
+        conn.close();
+        
+        conn = getConnection();
+        stmt = conn.createStatement();
+        
+        String createNotesTable = "CREATE TABLE IF NOT EXISTS notes (" +
+            "id INT AUTO_INCREMENT PRIMARY KEY," +
+            "title VARCHAR(255) NOT NULL," +
+            "content TEXT," +
+            "created_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+            "modified_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
+            ")";
+        stmt.executeUpdate(createNotesTable);
+        
+        String createTasksTable = "CREATE TABLE IF NOT EXISTS tasks (" +
+            "id INT AUTO_INCREMENT PRIMARY KEY," +
+            "task_name VARCHAR(255) NOT NULL," +
+            "status VARCHAR(50) DEFAULT 'Pending'," +
+            "created_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+            ")";
+        stmt.executeUpdate(createTasksTable);
+        
+        String createMoodTable = "CREATE TABLE IF NOT EXISTS mood_entries (" +
+            "id INT AUTO_INCREMENT PRIMARY KEY," +
+            "mood VARCHAR(100) NOT NULL," +
+            "entry_date DATE," +
+            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+            ")";
+        stmt.executeUpdate(createMoodTable);
+        
+        String createJournalTable = "CREATE TABLE IF NOT EXISTS journal_entries (" +
+            "id INT AUTO_INCREMENT PRIMARY KEY," +
+            "content TEXT," +
+            "entry_date DATE," +
+            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+            ")";
+        stmt.executeUpdate(createJournalTable);
+        
+        String createMindMapTable = "CREATE TABLE IF NOT EXISTS mindmap_nodes (" +
+            "id INT AUTO_INCREMENT PRIMARY KEY," +
+            "mindmap_id INT," +
+            "node_uid BIGINT," +
+            "node_text VARCHAR(255)," +
+            "position_x INT," +
+            "position_y INT," +
+            "created_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+            "UNIQUE KEY uq_mindmap_node (mindmap_id, node_uid)" +
+            ")";
+        stmt.executeUpdate(createMindMapTable);
+        
+        // Tables created before nodes had stable IDs: reuse the row id as the node's id
+        ResultSet uidColumn = conn.getMetaData().getColumns(conn.getCatalog(), null, "mindmap_nodes", "node_uid");
+        if (!uidColumn.next()) {
+            stmt.executeUpdate("ALTER TABLE mindmap_nodes ADD COLUMN node_uid BIGINT AFTER mindmap_id");
+            stmt.executeUpdate("UPDATE mindmap_nodes SET node_uid = id");
+            stmt.executeUpdate("ALTER TABLE mindmap_nodes ADD UNIQUE KEY uq_mindmap_node (mindmap_id, node_uid)");
+        }
+        uidColumn.close();
+        
+        stmt.close();
+        migrateSchema(conn, plannerUser);
+        userId = ensureUser(conn, plannerUser);
+        conn.close();
+    }
+    
+    // SCHEMA MIGRATIONS
+    // Step N upgrades the schema from version N-1 to N. Append new steps; never change released ones.
+    // plannerUser is the account the store is being opened for.
+    interface SchemaMigration {
+        void apply(Connection conn, String plannerUser) throws SQLException;
+    }
+    
+    // Tables owned per user: name, the index its lists are read through, its columns,
+    // and the single-column index from version 1 that it replaces
+    private static final String[][] USER_TABLES = {
+        {"notes", "idx_notes_user_modified", "user_id, modified_date", "idx_notes_modified"},
+        {"tasks", "idx_tasks_user_created", "user_id, created_date", "idx_tasks_created"},
+        {"mood_entries", "idx_mood_user_entry_date", "user_id, entry_date", "idx_mood_entry_date"},
+        {"journal_entries", "idx_journal_user_entry_date", "user_id, entry_date", "idx_journal_entry_date"},
+        {"mindmaps", "idx_mindmaps_user", "user_id", null}
+    };
+    
+    private static final SchemaMigration[] MIGRATIONS = {
+        // 1: indexes for the list orderings. mindmap_nodes is already covered by uq_mindmap_node,
+        //    which leads with mindmap_id.
+        (conn, plannerUser) -> {
+            createIndexIfMissing(conn, "notes", "idx_notes_modified", "modified_date");
+            createIndexIfMissing(conn, "tasks", "idx_tasks_created", "created_date");
+            createIndexIfMissing(conn, "mood_entries", "idx_mood_entry_date", "entry_date");
+            createIndexIfMissing(conn, "journal_entries", "idx_journal_entry_date", "entry_date");
+        },
+        // 2: parent/child edges, keyed by the child since every node has at most one parent.
+        //    Existing maps were drawn as a star around their first node, so that is what gets stored.
+        (conn, plannerUser) -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS mindmap_edges (" +
+                    "mindmap_id INT NOT NULL," +
+                    "child_uid BIGINT NOT NULL," +
+                    "parent_uid BIGINT NOT NULL," +
+                    "PRIMARY KEY (mindmap_id, child_uid)" +
+                    ")");
+                stmt.executeUpdate("INSERT IGNORE INTO mindmap_edges (mindmap_id, child_uid, parent_uid) " +
+                    "SELECT n.mindmap_id, n.node_uid, r.node_uid FROM mindmap_nodes n " +
+                    "JOIN (SELECT mindmap_id, MIN(id) AS root_id FROM mindmap_nodes GROUP BY mindmap_id) f ON f.mindmap_id = n.mindmap_id " +
+                    "JOIN mindmap_nodes r ON r.id = f.root_id " +
+                    "WHERE n.id <> f.root_id");
+            }
+        },
+        // 3: mind map catalog, so there can be more than the one map and each can belong to a note.
+        //    Maps saved before this get a catalog row under their existing ID.
+        (conn, plannerUser) -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS mindmaps (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY," +
+                    "title VARCHAR(255) NOT NULL," +
+                    "note_id INT NULL," +
+                    "created_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                    "INDEX idx_mindmaps_note (note_id)" +
+                    ")");
+                stmt.executeUpdate("INSERT IGNORE INTO mindmaps (id, title) " +
+                    "SELECT DISTINCT mindmap_id, CONCAT('Mind Map ', mindmap_id) FROM mindmap_nodes");
+            }
+        },
+        // 4: each map becomes one MindMapCodec blob on its catalog row. Maps are converted one at a
+        //    time, each in its own transaction, so an interrupted upgrade picks up where it stopped.
+        //    The old tables are left in place, empty.
+        (conn, plannerUser) -> {
+            try (Statement stmt = conn.createStatement()) {
+                ResultSet contentColumn = conn.getMetaData().getColumns(conn.getCatalog(), null, "mindmaps", "content");
+                if (!contentColumn.next()) {
+                    stmt.executeUpdate("ALTER TABLE mindmaps ADD COLUMN content MEDIUMBLOB NULL");
+                }
+                contentColumn.close();
+                
+                ArrayList<Integer> mindmapIds = new ArrayList<>();
+                try (ResultSet rs = stmt.executeQuery("SELECT DISTINCT mindmap_id FROM mindmap_nodes")) {
+                    while (rs.next()) {
+                        mindmapIds.add(rs.getInt("mindmap_id"));
+                    }
+                }
+                conn.setAutoCommit(false);
+                try (PreparedStatement deleteNodes = conn.prepareStatement("DELETE FROM mindmap_nodes WHERE mindmap_id = ?");
+                     PreparedStatement deleteEdges = conn.prepareStatement("DELETE FROM mindmap_edges WHERE mindmap_id = ?")) {
+                    for (int mindmapId : mindmapIds) {
+                        writeMindMapContent(conn, mindmapId, readMindMapRows(conn, mindmapId));
+                        deleteNodes.setInt(1, mindmapId);
+                        deleteNodes.executeUpdate();
+                        deleteEdges.setInt(1, mindmapId);
+                        deleteEdges.executeUpdate();
+                        conn.commit();
+                    }
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+        },
+        // 5: user accounts. Every table gets a user_id, and existing rows go to the user the store is
+        //    opened for, who becomes the first account. The list indexes are replaced by ones that
+        //    lead with user_id, so a user's queries only read that user's slice of each index however
+        //    many accounts share the database. mindmap_nodes and mindmap_edges have been empty since
+        //    version 4 and are left alone; a map's owner is on its catalog row.
+        (conn, plannerUser) -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS users (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY," +
+                    "username VARCHAR(100) NOT NULL," +
+                    "created_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                    "UNIQUE KEY uq_users_username (username)" +
+                    ")");
+            }
+            int ownerId = ensureUser(conn, plannerUser);
+            for (String[] table : USER_TABLES) {
+                addUserColumn(conn, table[0], ownerId);
+                createIndexIfMissing(conn, table[0], table[1], table[2]);
+                addUserForeignKey(conn, table[0]);
+                if (table[3] != null) {
+                    dropIndexIfPresent(conn, table[0], table[3]);
+                }
+            }
+        },
+        // 6: note content as MEDIUMTEXT. TEXT stops at 64 KB, well short of a term's lecture notes.
+        (conn, plannerUser) -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("ALTER TABLE notes MODIFY content MEDIUMTEXT");
+            }
+        },
+        // 7: change records of mind map diff saves, applied on top of the blob until folded into it.
+        //    Owned through the map's catalog row.
+        (conn, plannerUser) -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS mindmap_changes (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                    "mindmap_id INT NOT NULL," +
+                    "changes MEDIUMBLOB NOT NULL," +
+                    "INDEX idx_mindmap_changes_map (mindmap_id, id)," +
+                    "CONSTRAINT fk_mindmap_changes_map FOREIGN KEY (mindmap_id) REFERENCES mindmaps (id) ON DELETE CASCADE" +
+                    ")");
+            }
+        }
+    };
+    
+  
+    // Each step checks what is already there, so an upgrade interrupted half way can simply run again
+    private static void addUserColumn(Connection conn, String table, int ownerId) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet column = conn.getMetaData().getColumns(conn.getCatalog(), null, table, "user_id");
+            boolean present = column.next();
+            column.close();
+            if (!present) {
+                stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN user_id INT NULL AFTER id");
+            }
+            try (PreparedStatement assign = conn.prepareStatement("UPDATE " + table + " SET user_id = ? WHERE user_id IS NULL")) {
+                assign.setInt(1, ownerId);
+                assign.executeUpdate();
+            }
+            stmt.executeUpdate("ALTER TABLE " + table + " MODIFY user_id INT NOT NULL");
+        }
+    }
+    
+    private static void addUserForeignKey(Connection conn, String table) throws SQLException {
+        String name = "fk_" + table + "_user";
+        try (ResultSet rs = conn.getMetaData().getImportedKeys(conn.getCatalog(), null, table)) {
+            while (rs.next()) {
+                if (name.equalsIgnoreCase(rs.getString("FK_NAME"))) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE " + table + " ADD CONSTRAINT " + name +
+                " FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE");
+        }
+    }
+    
+    // Looked up first so a restart does not burn an AUTO_INCREMENT value on an ignored insert
+    private static int ensureUser(Connection conn, String username) throws SQLException {
+        try (PreparedStatement find = conn.prepareStatement("SELECT id FROM users WHERE username = ?");
+             PreparedStatement add = conn.prepareStatement("INSERT IGNORE INTO users (username) VALUES (?)")) {
+            find.setString(1, username);
+            try (ResultSet rs = find.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt("id");
+                }
+            }
+            add.setString(1, username);
+            add.executeUpdate();
+            try (ResultSet rs = find.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt("id");
+                }
+            }
+        }
+        throw new SQLException("Could not create planner user " + username);
+    }
+    
+    private static void migrateSchema(Connection conn, String plannerUser) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version (" +
+                "version INT PRIMARY KEY," +
+                "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")");
+            int current = 0;
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) AS version FROM schema_version")) {
+                if (rs.next()) {
+                    current = rs.getInt("version");
+                }
+            }
+            for (int version = current + 1; version <= MIGRATIONS.length; version++) {
+                MIGRATIONS[version - 1].apply(conn, plannerUser);
+                stmt.executeUpdate("INSERT INTO schema_version (version) VALUES (" + version + ")");
+                System.out.println("Database schema upgraded to version " + version);
+            }
+        }
+    }
+    
+    // MySQL has no CREATE INDEX IF NOT EXISTS, so check the catalog first; this keeps a half-applied step re-runnable
+    private static void createIndexIfMissing(Connection conn, String table, String indexName, String columns) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, table, false, false)) {
+            while (rs.next()) {
+                if (indexName.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE INDEX " + indexName + " ON " + table + " (" + columns + ")");
+        }
+    }
+    
+    private static void dropIndexIfPresent(Connection conn, String table, String indexName) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, table, false, false)) {
+            while (rs.next()) {
+                if (indexName.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.executeUpdate("DROP INDEX " + indexName + " ON " + table);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+    
+    // Runs an INSERT for the current user (user_id is always the first parameter) and returns the generated ID
+    private int insert(String sql, String... values) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setInt(1, userId);
+            for (int i = 0; i < values.length; i++) {
+                pstmt.setString(i + 2, values[i]);
+            }
+            pstmt.executeUpdate();
+            ResultSet keys = pstmt.getGeneratedKeys();
+            if (!keys.next()) {
+                throw new SQLException("No ID generated for: " + sql);
+            }
+            return keys.getInt(1);
+        }
+    }
+    
+    private int count(String table) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) as count FROM " + table + " WHERE user_id = ?")) {
+            pstmt.setInt(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getInt("count") : 0;
+        }
+    }
+    
+    // NOTES OPERATIONS
+    public int insertNote(String title, String content) throws SQLException {
+        return insert("INSERT INTO notes (user_id, title, content) VALUES (?, ?, ?)", title, content);
+    }
+    
+    // Sent as a character stream, so a long note is never turned into one more String on the way out
+    public long updateNote(int noteId, CharSequence content) throws SQLException {
+        return updateNoteStamped(noteId, "UPDATE notes SET content = ? WHERE id = ? AND user_id = ?", update -> {
+            update.setCharacterStream(1, NoteText.reader(content), content.length());
+            update.setInt(2, noteId);
+            update.setInt(3, userId);
+        });
+    }
+    
+    // Only the changed range crosses the network. LEFT, RIGHT and CHAR_LENGTH count code points rather
+    // than UTF-16 units, hence the conversions. modified_date has one-second resolution, so a save from
+    // another instance in the same second would pass that check alone; the stored length must also still
+    // be the one our edit started from. A miss returns -1 and the caller writes the whole note.
+    public long updateNoteRange(int noteId, long expectedModified, NoteDocument.Edit edit) throws SQLException {
+        NoteText text = edit.text;
+        int end = text.length() - edit.tail;
+        return updateNoteStamped(noteId, "UPDATE notes SET content = CONCAT(LEFT(content, ?), ?, RIGHT(content, ?)) " +
+            "WHERE id = ? AND user_id = ? AND modified_date = ? AND CHAR_LENGTH(content) = ?", update -> {
+            update.setInt(1, text.codePointCount(0, edit.head));
+            update.setString(2, text.subSequence(edit.head, end));
+            update.setInt(3, text.codePointCount(end, text.length()));
+            update.setInt(4, noteId);
+            update.setInt(5, userId);
+            update.setTimestamp(6, new Timestamp(expectedModified));
+            update.setInt(7, edit.baseCodePoints);
+        });
+    }
+    
+    // Fills in a statement's parameters, for helpers that run the statement themselves
+    interface StatementBinder {
+        void bind(PreparedStatement pstmt) throws SQLException;
+    }
+    
+    // The new modified_date is read in the same transaction, while the row is still locked,
+    // so it belongs to this write and not to one from another instance
+    private long updateNoteStamped(int noteId, String sql, StatementBinder binder) throws SQLException {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement update = conn.prepareStatement(sql);
+                 PreparedStatement stamp = conn.prepareStatement(
+                     "SELECT modified_date FROM notes WHERE id = ? AND user_id = ?")) {
+                binder.bind(update);
+                long modified = -1;
+                if (update.executeUpdate() > 0) {
+                    stamp.setInt(1, noteId);
+                    stamp.setInt(2, userId);
+                    ResultSet rs = stamp.executeQuery();
+                    if (rs.next()) {
+                        modified = rs.getTimestamp(1).getTime();
+                    }
+                }
+                conn.commit();
+                return modified;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+    
+    public boolean deleteNote(int noteId) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "DELETE FROM notes WHERE id = ? AND user_id = ?")) {
+            pstmt.setInt(1, noteId);
+            pstmt.setInt(2, userId);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+    
+    public ArrayList<NoteItem> getNotePage(Timestamp afterModified, int afterId, int limit) throws SQLException {
+        ArrayList<NoteItem> notes = new ArrayList<>();
+        String sql = "SELECT id, title, created_date, modified_date FROM notes WHERE user_id = ? " +
+            (afterModified == null ? "" : "AND (modified_date < ? OR (modified_date = ? AND id < ?)) ") +
+            "ORDER BY modified_date DESC, id DESC LIMIT ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            int param = 2;
+            if (afterModified != null) {
+                pstmt.setTimestamp(param++, afterModified);
+                pstmt.setTimestamp(param++, afterModified);
+                pstmt.setInt(param++, afterId);
+            }
+            pstmt.setInt(param, limit);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                notes.add(readNoteItem(rs));
+            }
+        }
+        return notes;
+    }
+    
+    public ArrayList<NoteItem> getNotesModifiedSince(Timestamp since) throws SQLException {
+        ArrayList<NoteItem> notes = new ArrayList<>();
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT id, title, created_date, modified_date FROM notes WHERE user_id = ? AND modified_date >= ? ORDER BY modified_date, id")) {
+            pstmt.setInt(1, userId);
+            pstmt.setTimestamp(2, since);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                notes.add(readNoteItem(rs));
+            }
+        }
+        return notes;
+    }
+    
+    public Object[] getNoteForIndex(int noteId) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT title, content, modified_date FROM notes WHERE id = ? AND user_id = ?")) {
+            pstmt.setInt(1, noteId);
+            pstmt.setInt(2, userId);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return new Object[]{rs.getString("title"), rs.getString("content"), rs.getTimestamp("modified_date").getTime()};
+            }
+        }
+        return null;
+    }
+    
+    // The length comes first so NoteText.read sizes its array once, then the content is read as a
+    // character stream straight into it
+    public Object[] readNoteText(int noteId) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT CHAR_LENGTH(content), content, modified_date FROM notes WHERE id = ? AND user_id = ?")) {
+            pstmt.setInt(1, noteId);
+            pstmt.setInt(2, userId);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                int length = rs.getInt(1);
+                NoteText content;
+                try (Reader reader = rs.getCharacterStream(2)) {
+                    content = reader == null ? NoteText.EMPTY : NoteText.read(reader, length);
+                } catch (IOException e) {
+                    throw new SQLException("Reading note " + noteId + " failed: " + e.getMessage(), e);
+                }
+                return new Object[]{content, rs.getTimestamp(3).getTime()};
+            }
+        }
+        return null;
+    }
+    
+    public long getNoteModified(int noteId) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT modified_date FROM notes WHERE id = ? AND user_id = ?")) {
+            pstmt.setInt(1, noteId);
+            pstmt.setInt(2, userId);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getTimestamp(1).getTime() : -1;
+        }
+    }
+    
+    public HashMap<Integer, Long> getNoteStamps() throws SQLException {
+        HashMap<Integer, Long> stamps = new HashMap<>();
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT id, modified_date FROM notes WHERE user_id = ?")) {
+            pstmt.setInt(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                stamps.put(rs.getInt(1), rs.getTimestamp(2).getTime());
+            }
+        }
+        return stamps;
+    }
+    
+    // Streamed row by row so a full rebuild never holds every note in memory
+    public void scanNotes(Consumer<Object[]> consumer) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT id, title, content, modified_date FROM notes WHERE user_id = ?",
+                 ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(Integer.MIN_VALUE);
+            pstmt.setInt(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                consumer.accept(new Object[]{rs.getInt(1), rs.getString(2), rs.getString(3), rs.getTimestamp(4).getTime()});
+            }
+        }
+    }
+    
+    private static NoteItem readNoteItem(ResultSet rs) throws SQLException {
+        return new NoteItem(rs.getInt("id"), rs.getString("title"),
+            rs.getTimestamp("created_date"), rs.getTimestamp("modified_date"));
+    }
+    
+    public String getNoteContent(int noteId) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT content FROM notes WHERE id = ? AND user_id = ?")) {
+            pstmt.setInt(1, noteId);
+            pstmt.setInt(2, userId);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return rs.getString("content");
+            }
+        }
+        return null;
+    }
+    
+    public int countNotes() throws SQLException {
+        return count("notes");
+    }
+    
+    // TASK OPERATIONS
+    public int insertTask(String taskName) throws SQLException {
+        return insert("INSERT INTO tasks (user_id, task_name, status) VALUES (?, ?, 'Pending')", taskName);
+    }
+    
+    public void updateTaskStatus(int taskId, String status) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "UPDATE tasks SET status = ? WHERE id = ? AND user_id = ?")) {
+            pstmt.setString(1, status);
+            pstmt.setInt(2, taskId);
+            pstmt.setInt(3, userId);
+            pstmt.executeUpdate();
+        }
+    }
+    
+    public boolean deleteTask(int taskId) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "DELETE FROM tasks WHERE id = ? AND user_id = ?")) {
+            pstmt.setInt(1, taskId);
+            pstmt.setInt(2, userId);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+    
+    public ArrayList<Object[]> getAllTasks() throws SQLException {
+        ArrayList<Object[]> tasks = new ArrayList<>();
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT id, task_name, status FROM tasks WHERE user_id = ? ORDER BY created_date DESC")) {
+            pstmt.setInt(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                tasks.add(new Object[]{rs.getInt("id"), rs.getString("task_name"), rs.getString("status")});
+            }
+        }
+        return tasks;
+    }
+    
+    // MOOD OPERATIONS
+    public void insertMoodEntry(String mood) throws SQLException {
+        insert("INSERT INTO mood_entries (user_id, mood, entry_date) VALUES (?, ?, CURDATE())", mood);
+    }
+    
+    public int countMoodEntries() throws SQLException {
+        return count("mood_entries");
+    }
+    
+    public DashboardStats countAll() throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT (SELECT COUNT(*) FROM notes WHERE user_id = ?) AS notes_count, " +
+                 "(SELECT COUNT(*) FROM tasks WHERE user_id = ?) AS tasks_count, " +
+                 "(SELECT COUNT(*) FROM mood_entries WHERE user_id = ?) AS mood_count")) {
+            for (int i = 1; i <= 3; i++) {
+                pstmt.setInt(i, userId);
+            }
+            ResultSet rs = pstmt.executeQuery();
+            rs.next();
+            return new DashboardStats(rs.getInt("notes_count"), rs.getInt("tasks_count"), rs.getInt("mood_count"));
+        }
+    }
+    
+    // JOURNAL OPERATIONS
+    public int insertJournalEntry(String content) throws SQLException {
+        return insert("INSERT INTO journal_entries (user_id, content, entry_date) VALUES (?, ?, CURDATE())", content);
+    }
+    
+    // Previews are cut in SQL so full entries never leave the server.
+    // The (user_id, entry_date) index also carries the primary key, so it serves the (entry_date, id) order directly.
+    public ArrayList<Object[]> getJournalEntryPage(java.sql.Date afterDate, int afterId, int limit) throws SQLException {
+        ArrayList<Object[]> entries = new ArrayList<>();
+        String sql = "SELECT id, entry_date, SUBSTRING(content, 1, 60) AS preview, CHAR_LENGTH(content) > 60 AS truncated " +
+            "FROM journal_entries WHERE user_id = ? " +
+            (afterDate == null ? "" : "AND (entry_date < ? OR (entry_date = ? AND id < ?)) ") +
+            "ORDER BY entry_date DESC, id DESC LIMIT ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            int param = 2;
+            if (afterDate != null) {
+                pstmt.setDate(param++, afterDate);
+                pstmt.setDate(param++, afterDate);
+                pstmt.setInt(param++, afterId);
+            }
+            pstmt.setInt(param, limit);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                String preview = rs.getString("preview");
+                entries.add(new Object[]{
+                    rs.getInt("id"),
+                    rs.getDate("entry_date"),
+                    rs.getBoolean("truncated") ? preview + "..." : preview
+                });
+            }
+        }
+        return entries;
+    }
+    
+    public String getJournalEntryContent(int entryId) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT content FROM journal_entries WHERE id = ? AND user_id = ?")) {
+            pstmt.setInt(1, entryId);
+            pstmt.setInt(2, userId);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return rs.getString("content");
+            }
+        }
+        return null;
+    }
+    
+    public HashMap<Integer, Long> getJournalStamps() throws SQLException {
+        HashMap<Integer, Long> stamps = new HashMap<>();
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT id, entry_date FROM journal_entries WHERE user_id = ?")) {
+            pstmt.setInt(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                stamps.put(rs.getInt(1), rs.getDate(2).getTime());
+            }
+        }
+        return stamps;
+    }
+    
+    public void scanJournalEntries(Consumer<Object[]> consumer) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT id, entry_date, content FROM journal_entries WHERE user_id = ?",
+                 ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(Integer.MIN_VALUE);
+            pstmt.setInt(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                consumer.accept(new Object[]{rs.getInt(1), rs.getDate(2).getTime(), rs.getString(3)});
+            }
+        }
+    }
+    
+    // MINDMAP OPERATIONS
+    // A map is one MindMapCodec blob on its catalog row plus the change records of diff saves made since
+    // the blob was written (mindmap_changes), so loading it is one row and a few small ones however many
+    // nodes it has. A full save writes the blob and drops the records.
+    public void replaceMindMap(int mindmapId, ArrayList<MindMapNode> nodes) throws SQLException {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                updateMindMapContent(conn, mindmapId, nodes);
+                deleteMindMapChanges(conn, mindmapId);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+    
+    // A diff save appends one change record, so it costs the size of the change rather than of the map.
+    // The save that brings a map to FOLD_MINDMAP_CHANGES records folds them into the blob: one save in
+    // that many pays for a full rewrite, which keeps loads short. Savers lock the catalog row first, so
+    // saves and folds of one map take turns.
+    public void applyMindMapChanges(int mindmapId, ArrayList<MindMapNode> changedNodes, ArrayList<Long> deletedNodeIds) throws SQLException {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                lockMindMap(conn, mindmapId);
+                try (PreparedStatement insert = conn.prepareStatement(
+                         "INSERT INTO mindmap_changes (mindmap_id, changes) VALUES (?, ?)")) {
+                    insert.setInt(1, mindmapId);
+                    insert.setBytes(2, MindMapCodec.encodeChanges(changedNodes, deletedNodeIds));
+                    insert.executeUpdate();
+                }
+                if (countMindMapChanges(conn, mindmapId) >= FOLD_MINDMAP_CHANGES) {
+                    updateMindMapContent(conn, mindmapId, readMindMapContent(conn, mindmapId, true));
+                    deleteMindMapChanges(conn, mindmapId);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+    
+    public ArrayList<MindMapNode> loadMindMap(int mindmapId) throws SQLException {
+        try (Connection conn = getConnection()) {
+            return readMindMapContent(conn, mindmapId, false);
+        }
+    }
+    
+    // The blob with its change records applied
+    private ArrayList<MindMapNode> readMindMapContent(Connection conn, int mindmapId, boolean forUpdate) throws SQLException {
+        ArrayList<MindMapNode> nodes = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT content FROM mindmaps WHERE id = ? AND user_id = ?" + (forUpdate ? " FOR UPDATE" : ""))) {
+            pstmt.setInt(1, mindmapId);
+            pstmt.setInt(2, userId);
+            ResultSet rs = pstmt.executeQuery();
+            if (!rs.next()) {
+                return nodes;
+            }
+            java.io.InputStream content = rs.getBinaryStream("content");
+            if (content != null) {
+                try (java.io.InputStream in = content) {
+                    nodes = MindMapCodec.decode(in);
+                } catch (IOException e) {
+                    throw new SQLException("Mind map " + mindmapId + " could not be decoded: " + e.getMessage(), e);
+                }
+            }
+        }
+        ArrayList<byte[]> records = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT changes FROM mindmap_changes WHERE mindmap_id = ? ORDER BY id" + (forUpdate ? " FOR UPDATE" : ""))) {
+            pstmt.setInt(1, mindmapId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                records.add(rs.getBytes(1));
+            }
+        }
+        try {
+            return MindMapCodec.applyChangeRecords(nodes, records);
+        } catch (IOException e) {
+            throw new SQLException("Mind map " + mindmapId + " changes could not be decoded: " + e.getMessage(), e);
+        }
+    }
+    
+    // Takes the catalog row's lock without reading the blob
+    private void lockMindMap(Connection conn, int mindmapId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM mindmaps WHERE id = ? AND user_id = ? FOR UPDATE")) {
+            pstmt.setInt(1, mindmapId);
+            pstmt.setInt(2, userId);
+            if (!pstmt.executeQuery().next()) {
+                throw new SQLException("Mind map " + mindmapId + " does not exist for " + plannerUser);
+            }
+        }
+    }
+    
+    private static int countMindMapChanges(Connection conn, int mindmapId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM mindmap_changes WHERE mindmap_id = ?")) {
+            pstmt.setInt(1, mindmapId);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+    
+    private static void deleteMindMapChanges(Connection conn, int mindmapId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM mindmap_changes WHERE mindmap_id = ?")) {
+            pstmt.setInt(1, mindmapId);
+            pstmt.executeUpdate();
+        }
+    }
+    
+    // Every map has had a catalog row since version 3, so a save that matches no row is a map
+    // this user does not own
+    private void updateMindMapContent(Connection conn, int mindmapId, ArrayList<MindMapNode> nodes) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                 "UPDATE mindmaps SET content = ? WHERE id = ? AND user_id = ?")) {
+            pstmt.setBytes(1, MindMapCodec.encode(nodes));
+            pstmt.setInt(2, mindmapId);
+            pstmt.setInt(3, userId);
+            if (pstmt.executeUpdate() == 0) {
+                throw new SQLException("Mind map " + mindmapId + " does not exist for " + plannerUser);
+            }
+        }
+    }
+    
+    // Used by the version 4 migration, which runs before maps have owners. Saving a map that has
+    // no catalog row yet (one from before the catalog) gives it one.
+    private static void writeMindMapContent(Connection conn, int mindmapId, ArrayList<MindMapNode> nodes) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO mindmaps (id, title, content) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE content = VALUES(content)")) {
+            pstmt.setInt(1, mindmapId);
+            pstmt.setString(2, "Mind Map " + mindmapId);
+            pstmt.setBytes(3, MindMapCodec.encode(nodes));
+            pstmt.executeUpdate();
+        }
+    }
+    
+    // The per-row layout used before schema version 4, read once by the migration
+    private static ArrayList<MindMapNode> readMindMapRows(Connection conn, int mindmapId) throws SQLException {
+        ArrayList<MindMapNode> nodes = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT n.node_uid, n.node_text, n.position_x, n.position_y, e.parent_uid FROM mindmap_nodes n " +
+                 "LEFT JOIN mindmap_edges e ON e.mindmap_id = n.mindmap_id AND e.child_uid = n.node_uid " +
+                 "WHERE n.mindmap_id = ? ORDER BY n.id")) {
+            pstmt.setInt(1, mindmapId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                MindMapNode node = new MindMapNode(
+                    rs.getLong("node_uid"),
+                    rs.getString("node_text"),
+                    rs.getInt("position_x"),
+                    rs.getInt("position_y")
+                );
+                node.parentUid = rs.getLong("parent_uid");
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+    
+    public int createMindMap(String title, int noteId) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO mindmaps (user_id, title, note_id) VALUES (?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setInt(1, userId);
+            pstmt.setString(2, title);
+            if (noteId > 0) {
+                pstmt.setInt(3, noteId);
+            } else {
+                pstmt.setNull(3, Types.INTEGER);
+            }
+            pstmt.executeUpdate();
+            ResultSet keys = pstmt.getGeneratedKeys();
+            if (!keys.next()) {
+                throw new SQLException("No ID generated for mind map " + title);
+            }
+            return keys.getInt(1);
+        }
+    }
+    
+    public ArrayList<MindMapItem> getMindMaps() throws SQLException {
+        ArrayList<MindMapItem> maps = new ArrayList<>();
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT m.id, m.title, n.id AS note_id FROM mindmaps m " +
+                 "LEFT JOIN notes n ON n.id = m.note_id AND n.user_id = m.user_id " +
+                 "WHERE m.user_id = ? ORDER BY m.id")) {
+            pstmt.setInt(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                maps.add(new MindMapItem(rs.getInt("id"), rs.getString("title"), rs.getInt("note_id")));
+            }
+        }
+        return maps;
+    }
+}
+
+// Local Log Storage - Embedded backend that needs no server.
+// All data lives in memory and every change is appended to one log file, which is replayed on startup.
+// Records are [length][payload][crc32]; a torn record at the end (crash mid-write) is cut off on open.
+// Once the log is mostly superseded records it is rewritten as a compact snapshot.
+class LocalLogStorage implements PlannerStorage {
+    private static final int LOG_MAGIC = 0x43594C47; // "CYLG"
+    private static final int LOG_VERSION = 1;
+    private static final int COMPACT_MIN_RECORDS = 1000;
+    
+    // Record types
+    private static final byte OP_SEQUENCES = 0;
+    private static final byte OP_NOTE_PUT = 1;
+    private static final byte OP_NOTE_DELETE = 2;
+    private static final byte OP_TASK_PUT = 3;
+    private static final byte OP_TASK_DELETE = 4;
+    private static final byte OP_MOOD_ADD = 5;
+    private static final byte OP_JOURNAL_ADD = 6;
+    private static final byte OP_MINDMAP_REPLACE = 7;          // nodes without parents (older logs)
+    private static final byte OP_MINDMAP_CHANGES = 8;          // nodes without parents (older logs)
+    private static final byte OP_MINDMAP_REPLACE_EDGES = 9;
+    private static final byte OP_MINDMAP_CHANGES_EDGES = 10;
+    private static final byte OP_MINDMAP_CATALOG_PUT = 11;
+    private static final byte OP_MINDMAP_ENCODED = 12;         // whole map as a MindMapCodec blob
+    private static final byte OP_NOTE_PATCH = 13;              // changed range of a note's content
+    
+    private final File dir;
+    private final File logFile;
+    private final boolean fsync;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private FileChannel channel;
+    private java.nio.channels.FileLock fileLock;
+    private DataOutputStream log;
+    private long logRecords = 0;
+    
+    // Tables
+    private final TreeMap<Integer, NoteRecord> notes = new TreeMap<>();
+    private final java.util.TreeSet<NoteRecord> notesByModified = new java.util.TreeSet<>(
+        (a, b) -> a.modified != b.modified ? Long.compare(b.modified, a.modified) : Integer.compare(b.id, a.id));
+    private final TreeMap<Integer, TaskRecord> tasks = new TreeMap<>();
+    private final TreeMap<Integer, MoodRecord> moods = new TreeMap<>();
+    private final HashMap<Integer, JournalRecord> journals = new HashMap<>();
+    private final java.util.TreeSet<JournalRecord> journalsByDate = new java.util.TreeSet<>(
+        (a, b) -> a.date != b.date ? Long.compare(b.date, a.date) : Integer.compare(b.id, a.id));
+    private final HashMap<Integer, LinkedHashMap<Long, NodeRecord>> mindmaps = new HashMap<>();
+    private final TreeMap<Integer, MindMapItem> mindmapCatalog = new TreeMap<>();
+    
+    // Next IDs; like AUTO_INCREMENT they never go backwards, even after deletes
+    private int nextNoteId = 1;
+    private int nextTaskId = 1;
+    private int nextMoodId = 1;
+    private int nextJournalId = 1;
+    private int nextMindMapId = 1;
+    
+    // content is kept as a NoteText so a logged patch can be applied by splicing slices, and a long
+    // note's text is not copied on every save or open
+    private static class NoteRecord {
+        final int id;
+        final String title;
+        final NoteText content;
+        final long created;
+        final long modified;
+        
+        NoteRecord(int id, String title, CharSequence content, long created, long modified) {
+            this.id = id;
+            this.title = title;
+            this.content = content == null ? null : NoteText.of(content);
+            this.created = created;
+            this.modified = modified;
+        }
+        
+        NoteItem toItem() {
+            return new NoteItem(id, title, new Timestamp(created), new Timestamp(modified));
+        }
+    }
+    
+    private static class TaskRecord {
+        final int id;
+        final String name;
+        final String status;
+        final long created;
+        
+        TaskRecord(int id, String name, String status, long created) {
+            this.id = id;
+            this.name = name;
+            this.status = status;
+            this.created = created;
+        }
+    }
+    
+    private static class MoodRecord {
+        final int id;
+        final String mood;
+        final long date;
+        
+        MoodRecord(int id, String mood, long date) {
+            this.id = id;
+            this.mood = mood;
+            this.date = date;
+        }
+    }
+    
+    private static class JournalRecord {
+        final int id;
+        final String content;
+        final long date;
+        
+        JournalRecord(int id, String content, long date) {
+            this.id = id;
+            this.content = content;
+            this.date = date;
+        }
+    }
+    
+    private static class NodeRecord {
+        final long uid;
+        final String text;
+        final int x;
+        final int y;
+        final long parentUid;
+        
+        NodeRecord(long uid, String text, int x, int y, long parentUid) {
+            this.uid = uid;
+            this.text = text;
+            this.x = x;
+            this.y = y;
+            this.parentUid = parentUid;
+        }
+    }
+    
+    interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+    
+    public LocalLogStorage(File dir, boolean fsync) {
+        this.dir = dir;
+        this.logFile = new File(dir, "ctrlyou.log");
+        this.fsync = fsync;
+    }
+    
+    public String describe() {
+        return "local storage " + logFile.getPath();
+    }
+    
+    public void initialize() throws SQLException {
+        lock.writeLock().lock();
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new SQLException("Cannot create storage directory " + dir);
+            }
+            boolean fresh = !logFile.exists() || logFile.length() == 0;
+            channel = FileChannel.open(logFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            fileLock = channel.tryLock();
+            if (fileLock == null) {
+                throw new SQLException(logFile + " is in use by another CtrlYou window");
+            }
+            if (fresh) {
+                writeHeader(channel);
+            } else {
+                replay();
+            }
+            openAppender();
+            if (needsCompaction()) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new SQLException("Cannot open " + logFile + ": " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (log != null) {
+                log.flush();
+                channel.force(true);
+                fileLock.release();
+                channel.close();
+                log = null;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // LOG FILE
+    private static void writeHeader(FileChannel target) throws IOException {
+        java.nio.ByteBuffer header = java.nio.ByteBuffer.allocate(8).putInt(LOG_MAGIC).putInt(LOG_VERSION);
+        header.flip();
+        target.write(header, 0);
+    }
+    
+    private void replay() throws IOException, SQLException {
+        long validEnd;
+        DataInputStream in = new DataInputStream(new java.io.BufferedInputStream(
+            java.nio.channels.Channels.newInputStream(channel.position(0)), 1 << 16));
+        if (in.readInt() != LOG_MAGIC || in.readInt() != LOG_VERSION) {
+            throw new SQLException(logFile + " is not a CtrlYou log (or was written by a newer version)");
+        }
+        validEnd = 8;
+        long fileSize = channel.size();
+        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+        while (validEnd + 8 <= fileSize) {
+            int length = in.readInt();
+            if (length <= 0 || validEnd + 8 + length > fileSize) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            int checksum = in.readInt();
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            apply(payload);
+            logRecords++;
+            validEnd += 8 + length;
+        }
+        if (validEnd < fileSize) {
+            System.err.println("Discarding " + (fileSize - validEnd) + " bytes of incomplete log at the end of " + logFile);
+            channel.truncate(validEnd);
+        }
+    }
+    
+    private void openAppender() throws IOException {
+        channel.position(channel.size());
+        log = new DataOutputStream(new BufferedOutputStream(java.nio.channels.Channels.newOutputStream(channel), 1 << 16));
+    }
+    
+    // Write one record, then apply it to the in-memory tables through the same path replay uses.
+    // The caller holds the write lock.
+    private void append(byte op, RecordWriter body) throws SQLException {
+        if (log == null) {
+            throw new SQLException("Local storage is not open");
+        }
+        try {
+            java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(op);
+            body.write(out);
+            byte[] payload = bytes.toByteArray();
+            writeRecord(log, payload);
+            log.flush();
+            if (fsync) {
+                channel.force(false);
+            }
+            apply(payload);
+            logRecords++;
+            if (needsCompaction()) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new SQLException("Write to " + logFile + " failed: " + e.getMessage(), e);
+        }
+    }
+    
+    private static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+    
+    private boolean needsCompaction() {
+        long live = notes.size() + tasks.size() + moods.size() + journals.size() + mindmaps.size() + mindmapCatalog.size() + 1;
+        return logRecords > COMPACT_MIN_RECORDS && logRecords > 2 * live;
+    }
+    
+    // Rewrite the log as one record per live row, then swap it in atomically
+    private void compact() throws IOException {
+        File temp = new File(dir, "ctrlyou.log.compact");
+        long records = 0;
+        try (FileChannel tempChannel = FileChannel.open(temp.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(tempChannel);
+            tempChannel.position(8);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(java.nio.channels.Channels.newOutputStream(tempChannel), 1 << 16));
+            writeRecord(out, encode(OP_SEQUENCES, o -> {
+                o.writeInt(nextNoteId);
+                o.writeInt(nextTaskId);
+                o.writeInt(nextMoodId);
+                o.writeInt(nextJournalId);
+                o.writeInt(nextMindMapId);
+            }));
+            records++;
+            for (NoteRecord note : notes.values()) {
+                writeRecord(out, encode(OP_NOTE_PUT, o -> writeNote(o, note)));
+                records++;
+            }
+            for (TaskRecord task : tasks.values()) {
+                writeRecord(out, encode(OP_TASK_PUT, o -> writeTask(o, task)));
+                records++;
+            }
+            for (MoodRecord mood : moods.values()) {
+                writeRecord(out, encode(OP_MOOD_ADD, o -> {
+                    o.writeInt(mood.id);
+                    writeString(o, mood.mood);
+                    o.writeLong(mood.date);
+                }));
+                records++;
+            }
+            for (JournalRecord entry : journals.values()) {
+                writeRecord(out, encode(OP_JOURNAL_ADD, o -> {
+                    o.writeInt(entry.id);
+                    writeString(o, entry.content);
+                    o.writeLong(entry.date);
+                }));
+                records++;
+            }
+            for (MindMapItem item : mindmapCatalog.values()) {
+                writeRecord(out, encode(OP_MINDMAP_CATALOG_PUT, o -> writeMindMapItem(o, item)));
+                records++;
+            }
+            for (java.util.Map.Entry<Integer, LinkedHashMap<Long, NodeRecord>> map : mindmaps.entrySet()) {
+                writeRecord(out, encode(OP_MINDMAP_ENCODED, o -> writeEncodedMap(o, map.getKey(), toNodes(map.getValue().values()))));
+                records++;
+            }
+            out.flush();
+            tempChannel.force(true);
+        }
+        
+        log.flush();
+        log = null;
+        fileLock.release();
+        channel.close();
+        try {
+            Files.move(temp.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Reopen whichever log is in place now, so a failed move leaves the store running on the old one
+            reopenLog();
+        }
+        System.out.println("Compacted " + logFile + ": " + logRecords + " records down to " + records);
+        logRecords = records;
+    }
+    
+    // The file lock is dropped for the move; if another window took it in that moment, writing on
+    // alongside it would interleave records, so the store stays closed instead
+    private void reopenLog() throws IOException {
+        channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        fileLock = channel.tryLock();
+        if (fileLock == null) {
+            channel.close();
+            throw new IOException(logFile + " was locked by another CtrlYou window during compaction");
+        }
+        openAppender();
+    }
+    
+    private static byte[] encode(byte op, RecordWriter body) throws IOException {
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(op);
+        body.write(out);
+        return bytes.toByteArray();
+    }
+    
+    // Length-prefixed UTF-8 (writeUTF stops at 64 KB, too small for long notes); -1 means null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+    }
+    
+    private static void writeNote(DataOutputStream out, NoteRecord note) throws IOException {
+        out.writeInt(note.id);
+        writeString(out, note.title);
+        writeString(out, note.content == null ? null : note.content.toString());
+        out.writeLong(note.created);
+        out.writeLong(note.modified);
+    }
+    
+    private static void writeTask(DataOutputStream out, TaskRecord task) throws IOException {
+        out.writeInt(task.id);
+        writeString(out, task.name);
+        writeString(out, task.status);
+        out.writeLong(task.created);
+    }
+    
+    private static void writeNodes(DataOutputStream out, ArrayList<MindMapNode> nodes) throws IOException {
+        out.writeInt(nodes.size());
+        for (MindMapNode node : nodes) {
+            out.writeLong(node.uid);
+            writeString(out, node.text);
+            out.writeInt(node.x);
+            out.writeInt(node.y);
+            out.writeLong(node.parentUid);
+        }
+    }
+    
+    private static void writeEncodedMap(DataOutputStream out, int mindmapId, ArrayList<MindMapNode> nodes) throws IOException {
+        byte[] content = MindMapCodec.encode(nodes);
+        out.writeInt(mindmapId);
+        out.writeInt(content.length);
+        out.write(content);
+    }
+    
+    private static void writeMindMapItem(DataOutputStream out, MindMapItem item) throws IOException {
+        out.writeInt(item.id);
+        writeString(out, item.title);
+        out.writeInt(item.noteId);
+    }
+    
+    private static ArrayList<NodeRecord> readNodes(DataInputStream in, boolean withParents) throws IOException {
+        int count = in.readInt();
+        ArrayList<NodeRecord> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            nodes.add(new NodeRecord(in.readLong(), readString(in), in.readInt(), in.readInt(), withParents ? in.readLong() : 0));
+        }
+        return nodes;
+    }
+    
+    // Apply one record to the in-memory tables
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        switch (op) {
+            case OP_SEQUENCES:
+                nextNoteId = Math.max(nextNoteId, in.readInt());
+                nextTaskId = Math.max(nextTaskId, in.readInt());
+                nextMoodId = Math.max(nextMoodId, in.readInt());
+                nextJournalId = Math.max(nextJournalId, in.readInt());
+                // Added with the mind map catalog; older logs stop before it
+                if (in.available() > 0) {
+                    nextMindMapId = Math.max(nextMindMapId, in.readInt());
+                }
+                break;
+            case OP_NOTE_PUT: {
+                NoteRecord note = new NoteRecord(in.readInt(), readString(in), readString(in), in.readLong(), in.readLong());
+                NoteRecord old = notes.put(note.id, note);
+                if (old != null) {
+                    notesByModified.remove(old);
+                }
+                notesByModified.add(note);
+                nextNoteId = Math.max(nextNoteId, note.id + 1);
+                break;
+            }
+            case OP_NOTE_PATCH: {
+                NoteRecord old = notes.get(in.readInt());
+                int head = in.readInt();
+                int tail = in.readInt();
+                String inserted = readString(in);
+                long modified = in.readLong();
+                if (old != null) {
+                    NoteRecord note = new NoteRecord(old.id, old.title, old.content.splice(head, inserted, tail), old.created, modified);
+                    notes.put(note.id, note);
+                    notesByModified.remove(old);
+                    notesByModified.add(note);
+                }
+                break;
+            }
+            case OP_NOTE_DELETE: {
+                NoteRecord old = notes.remove(in.readInt());
+                if (old != null) {
+                    notesByModified.remove(old);
+                }
+                break;
+            }
+            case OP_TASK_PUT: {
+                TaskRecord task = new TaskRecord(in.readInt(), readString(in), readString(in), in.readLong());
+                tasks.put(task.id, task);
+                nextTaskId = Math.max(nextTaskId, task.id + 1);
+                break;
+            }
+            case OP_TASK_DELETE:
+                tasks.remove(in.readInt());
+                break;
+            case OP_MOOD_ADD: {
+                MoodRecord mood = new MoodRecord(in.readInt(), readString(in), in.readLong());
+                moods.put(mood.id, mood);
+                nextMoodId = Math.max(nextMoodId, mood.id + 1);
+                break;
+            }
+            case OP_JOURNAL_ADD: {
+                JournalRecord entry = new JournalRecord(in.readInt(), readString(in), in.readLong());
+                journals.put(entry.id, entry);
+                journalsByDate.add(entry);
+                nextJournalId = Math.max(nextJournalId, entry.id + 1);
+                break;
+            }
+            case OP_MINDMAP_REPLACE:
+            case OP_MINDMAP_REPLACE_EDGES: {
+                LinkedHashMap<Long, NodeRecord> map = new LinkedHashMap<>();
+                int mindmapId = in.readInt();
+                for (NodeRecord node : readNodes(in, op == OP_MINDMAP_REPLACE_EDGES)) {
+                    map.put(node.uid, node);
+                }
+                mindmaps.put(mindmapId, map);
+                nextMindMapId = Math.max(nextMindMapId, mindmapId + 1);
+                break;
+            }
+            case OP_MINDMAP_CHANGES:
+            case OP_MINDMAP_CHANGES_EDGES: {
+                int mindmapId = in.readInt();
+                LinkedHashMap<Long, NodeRecord> map = mindmaps.computeIfAbsent(mindmapId, id -> new LinkedHashMap<>());
+                nextMindMapId = Math.max(nextMindMapId, mindmapId + 1);
+                int deleted = in.readInt();
+                for (int i = 0; i < deleted; i++) {
+                    map.remove(in.readLong());
+                }
+                // Like ON DUPLICATE KEY UPDATE, an existing node keeps its place in the load order
+                for (NodeRecord node : readNodes(in, op == OP_MINDMAP_CHANGES_EDGES)) {
+                    map.put(node.uid, node);
+                }
+                break;
+            }
+            case OP_MINDMAP_ENCODED: {
+                LinkedHashMap<Long, NodeRecord> map = new LinkedHashMap<>();
+                int mindmapId = in.readInt();
+                byte[] content = new byte[in.readInt()];
+                in.readFully(content);
+                for (MindMapNode node : MindMapCodec.decode(new java.io.ByteArrayInputStream(content))) {
+                    map.put(node.uid, new NodeRecord(node.uid, node.text, node.x, node.y, node.parentUid));
+                }
+                mindmaps.put(mindmapId, map);
+                nextMindMapId = Math.max(nextMindMapId, mindmapId + 1);
+                break;
+            }
+            case OP_MINDMAP_CATALOG_PUT: {
+                MindMapItem item = new MindMapItem(in.readInt(), readString(in), in.readInt());
+                mindmapCatalog.put(item.id, item);
+                nextMindMapId = Math.max(nextMindMapId, item.id + 1);
+                break;
+            }
+            default:
+                throw new IOException("Unknown record type " + op + " in " + logFile);
+        }
+    }
+    
+    private static long today() {
+        return java.sql.Date.valueOf(java.time.LocalDate.now()).getTime();
+    }
+    
+    // NOTES OPERATIONS
+    public int insertNote(String title, String content) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            long now = System.currentTimeMillis();
+            NoteRecord note = new NoteRecord(nextNoteId, title, content, now, now);
+            append(OP_NOTE_PUT, out -> writeNote(out, note));
+            return note.id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public long updateNote(int noteId, CharSequence content) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            NoteRecord old = notes.get(noteId);
+            if (old == null) {
+                return -1;
+            }
+            NoteRecord note = new NoteRecord(noteId, old.title, content, old.created, Math.max(System.currentTimeMillis(), old.modified));
+            append(OP_NOTE_PUT, out -> writeNote(out, note));
+            return note.modified;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Logs just the changed range, so each save of a long note appends kilobytes rather than the note
+    public long updateNoteRange(int noteId, long expectedModified, NoteDocument.Edit edit) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            NoteRecord old = notes.get(noteId);
+            if (old == null || old.modified != expectedModified || old.content == null || old.content.length() != edit.baseLength) {
+                return -1;
+            }
+            int head = edit.head;
+            int tail = edit.tail;
+            String inserted = edit.text.subSequence(head, edit.text.length() - tail);
+            long modified = Math.max(System.currentTimeMillis(), old.modified);
+            append(OP_NOTE_PATCH, out -> {
+                out.writeInt(noteId);
+                out.writeInt(head);
+                out.writeInt(tail);
+                writeString(out, inserted);
+                out.writeLong(modified);
+            });
+            return modified;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public boolean deleteNote(int noteId) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            if (!notes.containsKey(noteId)) {
+                return false;
+            }
+            append(OP_NOTE_DELETE, out -> out.writeInt(noteId));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public ArrayList<NoteItem> getNotePage(Timestamp afterModified, int afterId, int limit) {
+        ArrayList<NoteItem> page = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            java.util.SortedSet<NoteRecord> rest = afterModified == null ? notesByModified
+                : notesByModified.tailSet(new NoteRecord(afterId, null, null, 0, afterModified.getTime()), false);
+            for (NoteRecord note : rest) {
+                if (page.size() == limit) {
+                    break;
+                }
+                page.add(note.toItem());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page;
+    }
+    
+    public ArrayList<NoteItem> getNotesModifiedSince(Timestamp since) {
+        ArrayList<NoteItem> changed = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            // Newest-first order, so everything at or after `since` sorts before this probe
+            NoteRecord probe = new NoteRecord(Integer.MIN_VALUE, null, null, 0, since.getTime());
+            for (NoteRecord note : notesByModified.headSet(probe, false).descendingSet()) {
+                changed.add(note.toItem());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return changed;
+    }
+    
+    public String getNoteContent(int noteId) {
+        lock.readLock().lock();
+        try {
+            NoteRecord note = notes.get(noteId);
+            return note == null || note.content == null ? null : note.content.toString();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public Object[] getNoteForIndex(int noteId) {
+        lock.readLock().lock();
+        try {
+            NoteRecord note = notes.get(noteId);
+            return note == null ? null : new Object[]{note.title, note.content == null ? null : note.content.toString(), note.modified};
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public Object[] readNoteText(int noteId) {
+        lock.readLock().lock();
+        try {
+            NoteRecord note = notes.get(noteId);
+            if (note == null) {
+                return null;
+            }
+            return new Object[]{note.content == null ? NoteText.EMPTY : note.content, note.modified};
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public long getNoteModified(int noteId) {
+        lock.readLock().lock();
+        try {
+            NoteRecord note = notes.get(noteId);
+            return note == null ? -1 : note.modified;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public HashMap<Integer, Long> getNoteStamps() {
+        HashMap<Integer, Long> stamps = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (NoteRecord note : notes.values()) {
+                stamps.put(note.id, note.modified);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return stamps;
+    }
+    
+    // Records are immutable, so the consumer runs on a snapshot without holding the lock
+    public void scanNotes(Consumer<Object[]> consumer) {
+        ArrayList<NoteRecord> snapshot;
+        lock.readLock().lock();
+        try {
+            snapshot = new ArrayList<>(notes.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (NoteRecord note : snapshot) {
+            consumer.accept(new Object[]{note.id, note.title, note.content == null ? null : note.content.toString(), note.modified});
+        }
+    }
+    
+    public int countNotes() {
+        lock.readLock().lock();
+        try {
+            return notes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // TASK OPERATIONS
+    public int insertTask(String taskName) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            TaskRecord task = new TaskRecord(nextTaskId, taskName, "Pending", System.currentTimeMillis());
+            append(OP_TASK_PUT, out -> writeTask(out, task));
+            return task.id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void updateTaskStatus(int taskId, String status) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            TaskRecord old = tasks.get(taskId);
+            if (old != null) {
+                TaskRecord task = new TaskRecord(taskId, old.name, status, old.created);
+                append(OP_TASK_PUT, out -> writeTask(out, task));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public boolean deleteTask(int taskId) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            if (!tasks.containsKey(taskId)) {
+                return false;
+            }
+            append(OP_TASK_DELETE, out -> out.writeInt(taskId));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // IDs increase with creation time, so descending ID order is newest first
+    public ArrayList<Object[]> getAllTasks() {
+        ArrayList<Object[]> rows = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (TaskRecord task : tasks.descendingMap().values()) {
+                rows.add(new Object[]{task.id, task.name, task.status});
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return rows;
+    }
+    
+    // MOOD OPERATIONS
+    public void insertMoodEntry(String mood) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            int id = nextMoodId;
+            append(OP_MOOD_ADD, out -> {
+                out.writeInt(id);
+                writeString(out, mood);
+                out.writeLong(today());
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public int countMoodEntries() {
+        lock.readLock().lock();
+        try {
+            return moods.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public DashboardStats countAll() {
+        lock.readLock().lock();
+        try {
+            return new DashboardStats(notes.size(), tasks.size(), moods.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // JOURNAL OPERATIONS
+    public int insertJournalEntry(String content) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            int id = nextJournalId;
+            append(OP_JOURNAL_ADD, out -> {
+                out.writeInt(id);
+                writeString(out, content);
+                out.writeLong(today());
+            });
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public ArrayList<Object[]> getJournalEntryPage(java.sql.Date afterDate, int afterId, int limit) {
+        ArrayList<Object[]> page = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            java.util.SortedSet<JournalRecord> rest = afterDate == null ? journalsByDate
+                : journalsByDate.tailSet(new JournalRecord(afterId, null, afterDate.getTime()), false);
+            for (JournalRecord entry : rest) {
+                if (page.size() == limit) {
+                    break;
+                }
+                String content = entry.content == null ? "" : entry.content;
+                page.add(new Object[]{
+                    entry.id,
+                    new java.sql.Date(entry.date),
+                    content.length() > 60 ? content.substring(0, 60) + "..." : content
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page;
+    }
+    
+    public String getJournalEntryContent(int entryId) {
+        lock.readLock().lock();
+        try {
+            JournalRecord entry = journals.get(entryId);
+            return entry == null ? null : entry.content;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public HashMap<Integer, Long> getJournalStamps() {
+        HashMap<Integer, Long> stamps = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (JournalRecord entry : journals.values()) {
+                stamps.put(entry.id, entry.date);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return stamps;
+    }
+    
+    public void scanJournalEntries(Consumer<Object[]> consumer) {
+        ArrayList<JournalRecord> snapshot;
+        lock.readLock().lock();
+        try {
+            snapshot = new ArrayList<>(journals.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (JournalRecord entry : snapshot) {
+            consumer.accept(new Object[]{entry.id, entry.date, entry.content});
+        }
+    }
+    
+    // MINDMAP OPERATIONS
+    // A single record per save, so a save is applied completely or (if torn) not at all
+    public void replaceMindMap(int mindmapId, ArrayList<MindMapNode> nodes) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            append(OP_MINDMAP_ENCODED, out -> writeEncodedMap(out, mindmapId, nodes));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void applyMindMapChanges(int mindmapId, ArrayList<MindMapNode> changedNodes, ArrayList<Long> deletedNodeIds) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            append(OP_MINDMAP_CHANGES_EDGES, out -> {
+                out.writeInt(mindmapId);
+                out.writeInt(deletedNodeIds.size());
+                for (Long uid : deletedNodeIds) {
+                    out.writeLong(uid);
+                }
+                writeNodes(out, changedNodes);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public ArrayList<MindMapNode> loadMindMap(int mindmapId) {
+        lock.readLock().lock();
+        try {
+            LinkedHashMap<Long, NodeRecord> map = mindmaps.get(mindmapId);
+            return map != null ? toNodes(map.values()) : new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private static ArrayList<MindMapNode> toNodes(java.util.Collection<NodeRecord> records) {
+        ArrayList<MindMapNode> nodes = new ArrayList<>(records.size());
+        for (NodeRecord record : records) {
+            MindMapNode node = new MindMapNode(record.uid, record.text, record.x, record.y);
+            node.parentUid = record.parentUid;
+            nodes.add(node);
+        }
+        return nodes;
+    }
+    
+    public int createMindMap(String title, int noteId) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            MindMapItem item = new MindMapItem(nextMindMapId, title, Math.max(noteId, 0));
+            append(OP_MINDMAP_CATALOG_PUT, out -> writeMindMapItem(out, item));
+            return item.id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Maps saved before the catalog existed are listed under a generated title
+    public ArrayList<MindMapItem> getMindMaps() {
+        ArrayList<MindMapItem> maps = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            TreeMap<Integer, MindMapItem> all = new TreeMap<>(mindmapCatalog);
+            for (Integer id : mindmaps.keySet()) {
+                all.putIfAbsent(id, new MindMapItem(id, "Mind Map " + id, 0));
+            }
+            for (MindMapItem item : all.values()) {
+                maps.add(notes.containsKey(item.noteId) || item.noteId == 0
+                    ? item : new MindMapItem(item.id, item.title, 0));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return maps;
+    }
+}
+
+// Note Item - A note's ID and title, as shown in the notes list
+class NoteItem {
+    final int id;
+    final String title;
+    final Timestamp created;
+    final Timestamp modified;
+    
+    NoteItem(int id, String title, Timestamp created, Timestamp modified) {
+        this.id = id;
+        this.title = title;
+        this.created = created;
+        this.modified = modified;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof NoteItem && ((NoteItem) other).id == id;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(id);
+    }
+    
+    @Override
+    public String toString() {
+        return title;
+    }
+}
+
+// Mind Map Item - A catalog entry: the map's ID, title and the note it belongs to (0 if none)
+class MindMapItem {
+    final int id;
+    final String title;
+    final int noteId;
+    
+    MindMapItem(int id, String title, int noteId) {
+        this.id = id;
+        this.title = title;
+        this.noteId = noteId;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof MindMapItem && ((MindMapItem) other).id == id;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(id);
+    }
+    
+    @Override
+    public String toString() {
+        return title;
+    }
+}
+
+// Dashboard Stats - Snapshot of the home screen counters
+class DashboardStats {
+    final int notes;
+    final int tasks;
+    final int moodEntries;
+    
+    DashboardStats(int notes, int tasks, int moodEntries) {
+        this.notes = notes;
+        this.tasks = tasks;
+        this.moodEntries = moodEntries;
+    }
+}
+
+// Connection Pool - Bounded pool of reusable JDBC connections
+class ConnectionPool {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+    
+    // One permit per connection that may be handed out; idle connections are kept most-recent-first
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService evictor;
+    
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    
+    public ConnectionPool(String url, String user, String password, int maxSize, long maxWaitMillis, long idleTimeoutMillis) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+        
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+    
+    // Borrow a connection; closing it hands it back to the pool
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + maxWaitMillis + " ms waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+        
+        try {
+            Connection raw = takeValidIdle();
+            if (raw == null) {
+                raw = DriverManager.getConnection(url, user, password);
+                created.incrementAndGet();
+            }
+            active.incrementAndGet();
+            return wrap(raw);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    private Connection takeValidIdle() {
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            if (isExpired(candidate, System.currentTimeMillis())) {
+                closeQuietly(candidate.connection);
+                continue;
+            }
+            try {
+                if (candidate.connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    return candidate.connection;
+                }
+            } catch (SQLException e) {
+                // Treat as broken and fall through to closing it
+            }
+            closeQuietly(candidate.connection);
+        }
+        return null;
+    }
+    
+    // The next borrower gets the connection as it was created: an unfinished transaction is rolled back
+    // and session settings the last borrower changed (null if it did not) are put back. A connection
+    // that cannot be reset is closed instead.
+    private void release(Connection raw, Boolean readOnly, Integer isolation) {
+        active.decrementAndGet();
+        try {
+            if (!raw.isClosed()) {
+                if (!raw.getAutoCommit()) {
+                    raw.rollback();
+                    raw.setAutoCommit(true);
+                }
+                if (isolation != null && raw.getTransactionIsolation() != isolation) {
+                    raw.setTransactionIsolation(isolation);
+                }
+                if (readOnly != null && raw.isReadOnly() != readOnly) {
+                    raw.setReadOnly(readOnly);
+                }
+                idle.offerFirst(new IdleConnection(raw, System.currentTimeMillis()));
+            }
+        } catch (SQLException e) {
+            closeQuietly(raw);
+        } finally {
+            permits.release();
+        }
+    }
+    
+    // Close connections that have sat unused longer than the idle timeout, oldest first
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+        IdleConnection oldest;
+        while ((oldest = idle.peekLast()) != null && isExpired(oldest, now)) {
+            if (idle.removeLastOccurrence(oldest)) {
+                closeQuietly(oldest.connection);
+            }
+        }
+    }
+    
+    private boolean isExpired(IdleConnection candidate, long now) {
+        return now - candidate.lastUsed > idleTimeoutMillis;
+    }
+    
+    public void shutdown() {
+        evictor.shutdownNow();
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            closeQuietly(candidate.connection);
+        }
+    }
+    
+    private void recordWait(long nanos) {
+        borrows.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+    
+    // POOL STATS
+    public int getActiveCount() {
+        return active.get();
+    }
+    
+    public int getIdleCount() {
+        return idle.size();
+    }
+    
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    public long getCreatedCount() {
+        return created.get();
+    }
+    
+    public long getBorrowCount() {
+        return borrows.get();
+    }
+    
+    public double getAverageWaitMillis() {
+        long count = borrows.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / count;
+    }
+    
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+    
+    public String getStats() {
+        return String.format("active=%d idle=%d max=%d created=%d borrows=%d avgWait=%.2fms maxWait=%.2fms",
+            getActiveCount(), getIdleCount(), maxSize, getCreatedCount(), getBorrowCount(),
+            getAverageWaitMillis(), getMaxWaitMillis());
+    }
+    
+    private Connection wrap(Connection raw) {
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[]{Connection.class},
+            new PooledConnectionHandler(raw));
+    }
+    
+    private static void closeQuietly(AutoCloseable resource) {
+        try {
+            resource.close();
+        } catch (Exception e) {
+            // Already broken, nothing left to clean up
+        }
+    }
+    
+    private static class IdleConnection {
+        final Connection connection;
+        final long lastUsed;
+        
+        IdleConnection(Connection connection, long lastUsed) {
+            this.connection = connection;
+            this.lastUsed = lastUsed;
+        }
+    }
+    
+    // Intercepts close() to return the connection, and closes any statements the caller left open
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final Connection raw;
+        private final ArrayList<Statement> statements = new ArrayList<>();
+        private boolean closed = false;
+        // Settings as they were before this borrower first changed them; null while unchanged
+        private Boolean originalReadOnly;
+        private Integer originalIsolation;
+        
+        PooledConnectionHandler(Connection raw) {
+            this.raw = raw;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                if (!closed) {
+                    closed = true;
+                    for (Statement statement : statements) {
+                        closeQuietly(statement);
+                    }
+                    statements.clear();
+                    release(raw, originalReadOnly, originalIsolation);
+                }
+                return null;
+            }
+            if (name.equals("isClosed")) {
+                return closed || raw.isClosed();
+            }
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (name.equals("toString")) {
+                return "Pooled" + raw;
+            }
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (name.equals("setReadOnly") && originalReadOnly == null) {
+                originalReadOnly = raw.isReadOnly();
+            } else if (name.equals("setTransactionIsolation") && originalIsolation == null) {
+                originalIsolation = raw.getTransactionIsolation();
+            }
+            
+            Object result;
+            try {
+                result = method.invoke(raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement) {
+                statements.add((Statement) result);
+            }
+            return result;
+        }
+    }
+}
+
+// Async Database - Runs DatabaseManager calls off the Event Dispatch Thread
+class AsyncDatabase {
+    // A single ordered worker keeps writes and the reads that follow them in submission order
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "database-worker");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Metrics.Histogram queueWait = Metrics.histogram("db.queueWait");
+    
+    // Let queued saves finish; DatabaseManager calls this on shutdown before closing the backend
+    public static void drain() {
+        worker.shutdown();
+        try {
+            worker.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Run a query on the worker; a request cancelled while still queued never touches the database
+    public static <T> CompletableFuture<T> supply(Supplier<T> query) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        worker.execute(() -> {
+            queueWait.recordSince(queuedAt);
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(query.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+    
+    public static CompletableFuture<Void> run(Runnable update) {
+        return supply(() -> {
+            update.run();
+            return null;
+        });
+    }
+    
+    // Run a query in the background and hand the result to onResult on the EDT
+    public static <T> CompletableFuture<T> load(Supplier<T> query, Consumer<T> onResult) {
+        CompletableFuture<T> future = supply(query);
+        deliver(future, onResult, () -> true);
+        return future;
+    }
+    
+    // Run an update in the background, then call onDone on the EDT
+    public static CompletableFuture<Void> execute(Runnable update, Runnable onDone) {
+        return load(() -> {
+            update.run();
+            return null;
+        }, ignored -> onDone.run());
+    }
+    
+    private static <T> void deliver(CompletableFuture<T> future, Consumer<T> onResult, BooleanSupplier stillWanted) {
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                if (!(error instanceof CancellationException)) {
+                    error.printStackTrace();
+                }
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (stillWanted.getAsBoolean()) {
+                    onResult.accept(result);
+                }
+            });
+        });
+    }
+    
+    // Keeps only the newest request alive, e.g. when clicking quickly through a list
+    static class LatestRequest {
+        private CompletableFuture<?> pending;
+        private int generation = 0;
+        
+        // Must be called on the EDT
+        public <T> void load(Supplier<T> query, Consumer<T> onResult) {
+            cancel();
+            int requestGeneration = generation;
+            CompletableFuture<T> future = supply(query);
+            pending = future;
+            deliver(future, onResult, () -> requestGeneration == generation);
+        }
+        
+        public void cancel() {
+            generation++;
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+        }
+    }
+}
+
+// Note Text - Immutable note content, held as slices of character arrays that are never written again.
+// Snapshots of the notes editor share those arrays with the live document (see PieceTableContent), so
+// handing a long note to the save worker, the content cache or a MySQL character stream copies nothing
+// until a String is actually asked for.
+class NoteText implements CharSequence {
+    static final NoteText EMPTY = new NoteText(new char[0][], new int[0], new int[0]);
+    private static final int READ_CHUNK = 1 << 16;
+    // A text spliced together from more slices than this is copied into one array instead
+    private static final int MAX_SLICES = 256;
+    
+    // Slice i is arrays[i][offsets[i] .. offsets[i] + counts[i]) and starts at starts[i] in the text
+    final char[][] arrays;
+    final int[] offsets;
+    final int[] counts;
+    private final int[] starts;
+    private final int length;
+    
+    // Takes ownership of the three arrays; no slice may be empty
+    NoteText(char[][] arrays, int[] offsets, int[] counts) {
+        this.arrays = arrays;
+        this.offsets = offsets;
+        this.counts = counts;
+        starts = new int[arrays.length];
+        int total = 0;
+        for (int i = 0; i < arrays.length; i++) {
+            starts[i] = total;
+            total += counts[i];
+        }
+        length = total;
+    }
+    
+    static NoteText wrap(char[] chars, int length) {
+        return length == 0 ? EMPTY : new NoteText(new char[][]{chars}, new int[]{0}, new int[]{length});
+    }
+    
+    static NoteText of(CharSequence text) {
+        if (text instanceof NoteText) {
+            return (NoteText) text;
+        }
+        String string = text.toString();
+        return wrap(string.toCharArray(), string.length());
+    }
+    
+    // Reads a character stream chunk by chunk into the one array the text keeps. sizeHint is the
+    // expected length; with it right the array is allocated once and never regrown.
+    static NoteText read(Reader reader, int sizeHint) throws IOException {
+        char[] chars = new char[Math.max(sizeHint, 16)];
+        int length = 0;
+        while (true) {
+            if (length == chars.length) {
+                int next = reader.read();
+                if (next < 0) {
+                    break;
+                }
+                chars = java.util.Arrays.copyOf(chars, chars.length + (chars.length >> 1) + READ_CHUNK);
+                chars[length++] = (char) next;
+            }
+            int read = reader.read(chars, length, Math.min(READ_CHUNK, chars.length - length));
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return wrap(chars, length);
+    }
+    
+    // A stream over the text for JDBC setCharacterStream, read straight from the slices
+    static Reader reader(CharSequence text) {
+        if (!(text instanceof NoteText)) {
+            return new java.io.StringReader(text.toString());
+        }
+        NoteText note = (NoteText) text;
+        return new Reader() {
+            private int position = 0;
+            
+            public int read(char[] buffer, int offset, int count) {
+                if (position >= note.length) {
+                    return -1;
+                }
+                int read = Math.min(count, note.length - position);
+                note.getChars(position, position + read, buffer, offset);
+                position += read;
+                return read;
+            }
+            
+            public void close() {
+            }
+        };
+    }
+    
+    public int length() {
+        return length;
+    }
+    
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside text of length " + length);
+        }
+        int slice = sliceAt(index);
+        return arrays[slice][offsets[slice] + index - starts[slice]];
+    }
+    
+    public String subSequence(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+    
+    public String toString() {
+        return subSequence(0, length);
+    }
+    
+    public void getChars(int start, int end, char[] dest, int destPos) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range " + start + "-" + end + " outside text of length " + length);
+        }
+        for (int slice = start < end ? sliceAt(start) : arrays.length; start < end; slice++) {
+            int from = start - starts[slice];
+            int count = Math.min(counts[slice] - from, end - start);
+            System.arraycopy(arrays[slice], offsets[slice] + from, dest, destPos, count);
+            start += count;
+            destPos += count;
+        }
+    }
+    
+    // This text with everything but its first `head` and last `tail` characters replaced by `middle`.
+    // The result shares this text's arrays, so the cost is O(slices) plus the middle, not O(length);
+    // every MAX_SLICES-th splice or so pays for one copy to keep lookups short.
+    NoteText splice(int head, String middle, int tail) {
+        if (head < 0 || tail < 0 || head + tail > length) {
+            throw new IndexOutOfBoundsException("Splice " + head + "+" + tail + " outside text of length " + length);
+        }
+        int total = head + middle.length() + tail;
+        if (total == 0) {
+            return EMPTY;
+        }
+        int tailStart = length - tail;
+        int headSlices = head == 0 ? 0 : sliceAt(head - 1) + 1;
+        int tailSlice = tail == 0 ? arrays.length : sliceAt(tailStart);
+        int sliceCount = headSlices + (middle.isEmpty() ? 0 : 1) + arrays.length - tailSlice;
+        if (sliceCount > MAX_SLICES) {
+            char[] chars = new char[total];
+            getChars(0, head, chars, 0);
+            middle.getChars(0, middle.length(), chars, head);
+            getChars(tailStart, length, chars, head + middle.length());
+            return wrap(chars, total);
+        }
+        char[][] newArrays = new char[sliceCount][];
+        int[] newOffsets = new int[sliceCount];
+        int[] newCounts = new int[sliceCount];
+        int n = 0;
+        for (int slice = 0; slice < headSlices; slice++, n++) {
+            newArrays[n] = arrays[slice];
+            newOffsets[n] = offsets[slice];
+            newCounts[n] = slice == headSlices - 1 ? head - starts[slice] : counts[slice];
+        }
+        if (!middle.isEmpty()) {
+            newArrays[n] = middle.toCharArray();
+            newCounts[n++] = middle.length();
+        }
+        for (int slice = tailSlice; slice < arrays.length; slice++, n++) {
+            int skip = slice == tailSlice ? tailStart - starts[slice] : 0;
+            newArrays[n] = arrays[slice];
+            newOffsets[n] = offsets[slice] + skip;
+            newCounts[n] = counts[slice] - skip;
+        }
+        return new NoteText(newArrays, newOffsets, newCounts);
+    }
+    
+    // Code points in [start, end); MySQL string functions count positions this way
+    int codePointCount(int start, int end) {
+        int codePoints = end - start;
+        boolean afterHigh = false;
+        for (int slice = start < end ? sliceAt(start) : arrays.length; start < end; slice++) {
+            int from = offsets[slice] + start - starts[slice];
+            int count = Math.min(counts[slice] - (start - starts[slice]), end - start);
+            for (int i = from; i < from + count; i++) {
+                char c = arrays[slice][i];
+                if (afterHigh && Character.isLowSurrogate(c)) {
+                    codePoints--;
+                }
+                afterHigh = Character.isHighSurrogate(c);
+            }
+            start += count;
+        }
+        return codePoints;
+    }
+    
+    // Whether any character is at or above `min`, checked slice by slice without copying
+    boolean hasCharAtLeast(char min) {
+        for (int slice = 0; slice < arrays.length; slice++) {
+            char[] chars = arrays[slice];
+            for (int i = offsets[slice], end = offsets[slice] + counts[slice]; i < end; i++) {
+                if (chars[i] >= min) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private int sliceAt(int index) {
+        int low = 0;
+        int high = arrays.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
+
+// Piece Table Content - Text storage for the notes editor's document. The text is a list of pieces, each
+// a slice of a read-only array: the note as it was loaded, or an append-only buffer that typed text goes
+// into. Loading adopts the loaded array instead of copying it, typing at one spot keeps extending the
+// same piece, and snapshot() copies the piece list rather than the text. GapContent, the Swing default,
+// copies the whole note for the first and last of those.
+class PieceTableContent implements AbstractDocument.Content {
+    private static final int ADD_BUFFER_CHARS = 1 << 16;
+    // Scattered edits leave many short pieces; past this many the text is copied into one array
+    private static final int MAX_PIECES = 4096;
+    // Document content always ends with a newline the user cannot remove
+    private static final char[] NEWLINE = {'\n'};
+    private static final char[] NO_CHARS = new char[0];
+    
+    private char[][] arrays = new char[16][];
+    private int[] offsets = new int[16];
+    private int[] counts = new int[16];
+    private int[] starts = new int[16];
+    private int pieces = 0;
+    private int length = 0;
+    
+    // Typed text is appended here; characters below addUsed may be shared and are never overwritten
+    private char[] addBuffer = NO_CHARS;
+    private int addUsed = 0;
+    
+    // Positions move with the text by StringContent's rules, but are stored the way GapContent stores
+    // them: marks before splitIndex count from the start of the text and the rest from its end, so an
+    // insert or remove only converts the marks between the split and the edit. Typing in one place leaves
+    // the split there and touches no marks at all, however many lines (two marks each) the note has.
+    // The list is sorted by offset. Marks whose Position was collected are dropped in one sweep once
+    // they are a tenth of the list, as GapContent does, so creating many positions stays linear.
+    private final MarkList marks = new MarkList();
+    private int splitIndex = 0;
+    private int collectedMarks = 0;
+    private final java.lang.ref.ReferenceQueue<MarkPosition> collectedPositions = new java.lang.ref.ReferenceQueue<>();
+    
+    private static final class Mark extends java.lang.ref.WeakReference<MarkPosition> {
+        int value;
+        boolean fromEnd;
+        
+        Mark(MarkPosition position, java.lang.ref.ReferenceQueue<MarkPosition> queue) {
+            super(position, queue);
+        }
+    }
+    
+    // Marks in offset order with a gap at the last insert, like GapContent's MarkVector: positions are
+    // mostly created in runs going forward (a line's element, search highlights), and each then costs
+    // a short move of the gap instead of shifting every mark after it.
+    private static final class MarkList {
+        private Mark[] items = new Mark[16];
+        private int gapStart = 0;
+        private int gapEnd = 16;
+        
+        int size() {
+            return items.length - (gapEnd - gapStart);
+        }
+        
+        Mark get(int index) {
+            return items[index < gapStart ? index : index + gapEnd - gapStart];
+        }
+        
+        void add(int index, Mark mark) {
+            if (gapStart == gapEnd) {
+                grow();
+            }
+            moveGap(index);
+            items[gapStart++] = mark;
+        }
+        
+        private void moveGap(int index) {
+            // Only the slots the moved marks left behind need clearing
+            if (index < gapStart) {
+                int count = gapStart - index;
+                System.arraycopy(items, index, items, gapEnd - count, count);
+                java.util.Arrays.fill(items, index, Math.min(gapStart, gapEnd - count), null);
+                gapStart -= count;
+                gapEnd -= count;
+            } else if (index > gapStart) {
+                int count = index - gapStart;
+                System.arraycopy(items, gapEnd, items, gapStart, count);
+                java.util.Arrays.fill(items, Math.max(gapEnd, index), gapEnd + count, null);
+                gapStart += count;
+                gapEnd += count;
+            }
+        }
+        
+        private void grow() {
+            int size = size();
+            Mark[] grown = new Mark[Math.max(16, size * 2)];
+            System.arraycopy(items, 0, grown, 0, gapStart);
+            int tail = items.length - gapEnd;
+            System.arraycopy(items, gapEnd, grown, grown.length - tail, tail);
+            gapEnd = grown.length - tail;
+            items = grown;
+        }
+        
+        // Drops marks whose Position was collected; leaves the gap at the end
+        void removeCollected() {
+            int size = size();
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                Mark mark = get(i);
+                if (mark.get() != null) {
+                    items[kept++] = mark;
+                }
+            }
+            java.util.Arrays.fill(items, kept, items.length, null);
+            gapStart = kept;
+            gapEnd = items.length;
+        }
+    }
+    
+    private final class MarkPosition implements Position {
+        Mark mark;
+        
+        public int getOffset() {
+            return offsetOf(mark);
+        }
+        
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+    
+    PieceTableContent() {
+        insertPieces(0, 1);
+        setPiece(0, NEWLINE, 0, 1);
+        length = 1;
+    }
+    
+    public Position createPosition(int offset) throws BadLocationException {
+        purgeMarks();
+        MarkPosition position = new MarkPosition();
+        Mark mark = new Mark(position, collectedPositions);
+        int index = firstMarkAtOrAfter(offset);
+        mark.fromEnd = index >= splitIndex;
+        mark.value = mark.fromEnd ? length - offset : offset;
+        if (!mark.fromEnd) {
+            splitIndex++;
+        }
+        position.mark = mark;
+        marks.add(index, mark);
+        return position;
+    }
+    
+    public int length() {
+        return length;
+    }
+    
+    // No undo support: the notes editor has none, and AbstractDocument accepts a null edit
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        if (where < 0 || where >= length) {
+            throw new BadLocationException("Invalid insert", length);
+        }
+        int count = str.length();
+        if (count == 0) {
+            return null;
+        }
+        int index = split(where);
+        if (addBuffer.length - addUsed < count) {
+            addBuffer = new char[Math.max(ADD_BUFFER_CHARS, count)];
+            addUsed = 0;
+        }
+        str.getChars(0, count, addBuffer, addUsed);
+        if (index > 0 && arrays[index - 1] == addBuffer && offsets[index - 1] + counts[index - 1] == addUsed) {
+            // Typing straight after the previous insert
+            counts[index - 1] += count;
+        } else {
+            insertPieces(index, 1);
+            setPiece(index, addBuffer, addUsed, count);
+        }
+        addUsed += count;
+        updateMarksForInsert(where);
+        length += count;
+        recomputeStarts(index - 1);
+        consolidateIfFragmented();
+        return null;
+    }
+    
+    // Splice in a whole NoteText, sharing its arrays
+    void insert(int where, NoteText text) throws BadLocationException {
+        if (where < 0 || where >= length) {
+            throw new BadLocationException("Invalid insert", length);
+        }
+        int count = text.arrays.length;
+        if (count == 0) {
+            return;
+        }
+        int index = split(where);
+        insertPieces(index, count);
+        for (int i = 0; i < count; i++) {
+            setPiece(index + i, text.arrays[i], text.offsets[i], text.counts[i]);
+        }
+        updateMarksForInsert(where);
+        length += text.length();
+        recomputeStarts(index);
+        consolidateIfFragmented();
+    }
+    
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        if (where < 0 || nitems < 0 || where + nitems >= length) {
+            throw new BadLocationException("Invalid remove", length);
+        }
+        if (nitems == 0) {
+            return null;
+        }
+        int first = split(where);
+        int last = split(where + nitems);
+        System.arraycopy(arrays, last, arrays, first, pieces - last);
+        System.arraycopy(offsets, last, offsets, first, pieces - last);
+        System.arraycopy(counts, last, counts, first, pieces - last);
+        java.util.Arrays.fill(arrays, pieces - (last - first), pieces, null);
+        pieces -= last - first;
+        updateMarksForRemove(where, nitems);
+        length -= nitems;
+        recomputeStarts(first);
+        return null;
+    }
+    
+    public String getString(int where, int len) throws BadLocationException {
+        checkRange(where, len);
+        char[] chars = new char[len];
+        copyChars(where, len, chars);
+        return new String(chars);
+    }
+    
+    // Points the segment into the piece's own array when the range lies in one piece (or the caller
+    // accepts a partial return); otherwise copies
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        checkRange(where, len);
+        if (len == 0) {
+            txt.array = NO_CHARS;
+            txt.offset = 0;
+            txt.count = 0;
+            return;
+        }
+        int index = pieceAt(where);
+        int inside = where - starts[index];
+        if (len <= counts[index] - inside || txt.isPartialReturn()) {
+            txt.array = arrays[index];
+            txt.offset = offsets[index] + inside;
+            txt.count = Math.min(len, counts[index] - inside);
+            return;
+        }
+        char[] chars = new char[len];
+        copyChars(where, len, chars);
+        txt.array = chars;
+        txt.offset = 0;
+        txt.count = len;
+    }
+    
+    // The text without the trailing newline, in O(pieces)
+    NoteText snapshot() {
+        int count = pieces - 1;
+        if (count == 0) {
+            return NoteText.EMPTY;
+        }
+        return new NoteText(java.util.Arrays.copyOf(arrays, count), java.util.Arrays.copyOf(offsets, count),
+            java.util.Arrays.copyOf(counts, count));
+    }
+    
+    int pieceCount() {
+        return pieces;
+    }
+    
+    private void checkRange(int where, int len) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length) {
+            throw new BadLocationException("Invalid range", length);
+        }
+    }
+    
+    private void copyChars(int where, int len, char[] dest) {
+        int copied = 0;
+        for (int index = pieceAt(where); copied < len; index++) {
+            int inside = where + copied - starts[index];
+            int count = Math.min(counts[index] - inside, len - copied);
+            System.arraycopy(arrays[index], offsets[index] + inside, dest, copied, count);
+            copied += count;
+        }
+    }
+    
+    // The piece containing offset (0 <= offset < length)
+    private int pieceAt(int offset) {
+        int low = 0;
+        int high = pieces - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+    
+    // Index of the piece that starts at offset, splitting the piece around it if needed
+    private int split(int offset) {
+        int index = pieceAt(offset);
+        int inside = offset - starts[index];
+        if (inside == 0) {
+            return index;
+        }
+        insertPieces(index + 1, 1);
+        setPiece(index + 1, arrays[index], offsets[index] + inside, counts[index] - inside);
+        counts[index] = inside;
+        starts[index + 1] = offset;
+        return index + 1;
+    }
+    
+    // Open a gap of `count` pieces at index; the caller fills them in. Starts after the gap stay valid
+    // until the text itself changes.
+    private void insertPieces(int index, int count) {
+        if (pieces + count > arrays.length) {
+            int capacity = Math.max(arrays.length * 2, pieces + count);
+            arrays = java.util.Arrays.copyOf(arrays, capacity);
+            offsets = java.util.Arrays.copyOf(offsets, capacity);
+            counts = java.util.Arrays.copyOf(counts, capacity);
+            starts = java.util.Arrays.copyOf(starts, capacity);
+        }
+        System.arraycopy(arrays, index, arrays, index + count, pieces - index);
+        System.arraycopy(offsets, index, offsets, index + count, pieces - index);
+        System.arraycopy(counts, index, counts, index + count, pieces - index);
+        System.arraycopy(starts, index, starts, index + count, pieces - index);
+        pieces += count;
+    }
+    
+    private void setPiece(int index, char[] array, int offset, int count) {
+        arrays[index] = array;
+        offsets[index] = offset;
+        counts[index] = count;
+    }
+    
+    private void recomputeStarts(int from) {
+        for (int i = Math.max(from, 0); i < pieces; i++) {
+            starts[i] = i == 0 ? 0 : starts[i - 1] + counts[i - 1];
+        }
+    }
+    
+    private void consolidateIfFragmented() {
+        if (pieces <= MAX_PIECES) {
+            return;
+        }
+        char[] chars = new char[length - 1];
+        copyChars(0, length - 1, chars);
+        java.util.Arrays.fill(arrays, null);
+        pieces = 0;
+        insertPieces(0, 2);
+        setPiece(0, chars, 0, chars.length);
+        setPiece(1, NEWLINE, 0, 1);
+        recomputeStarts(0);
+    }
+    
+    private int offsetOf(Mark mark) {
+        return mark.fromEnd ? length - mark.value : mark.value;
+    }
+    
+    // Marks at or after an insert move with the text, except at offset 0. Called before the length
+    // changes: moving the split leaves exactly those marks counting from the end, so the new length
+    // carries them along.
+    private void updateMarksForInsert(int where) {
+        purgeMarks();
+        moveSplit(firstMarkAtOrAfter(where == 0 ? 1 : where));
+    }
+    
+    // Marks inside the removed range collapse to its start. Also called before the length changes.
+    private void updateMarksForRemove(int where, int count) {
+        purgeMarks();
+        int first = firstMarkAtOrAfter(where);
+        int end = firstMarkAtOrAfter(where + count);
+        moveSplit(end);
+        for (int i = first; i < end; i++) {
+            marks.get(i).value = where;
+        }
+    }
+    
+    // Convert the marks between the old split and the new one; either way the new value is length - value
+    private void moveSplit(int index) {
+        while (splitIndex < index) {
+            Mark mark = marks.get(splitIndex++);
+            mark.value = length - mark.value;
+            mark.fromEnd = false;
+        }
+        while (splitIndex > index) {
+            Mark mark = marks.get(--splitIndex);
+            mark.value = length - mark.value;
+            mark.fromEnd = true;
+        }
+    }
+    
+    private int firstMarkAtOrAfter(int offset) {
+        int low = 0;
+        int high = marks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (offsetOf(marks.get(mid)) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private void purgeMarks() {
+        while (collectedPositions.poll() != null) {
+            collectedMarks++;
+        }
+        if (collectedMarks > Math.max(5, marks.size() / 10)) {
+            collectedMarks = 0;
+            marks.removeCollected();
+            splitIndex = 0;
+            while (splitIndex < marks.size() && !marks.get(splitIndex).fromEnd) {
+                splitIndex++;
+            }
+        }
+    }
+}
+
+// Note Document - The notes editor's document: a PlainDocument over PieceTableContent that also keeps
+// track of what changed since the last save, so autosave can write only the edited range of a long note.
+// Edits and takeEdit happen on the EDT.
+@SuppressWarnings("serial")
+class NoteDocument extends PlainDocument {
+    // Lowest character AbstractDocument checks for complex (bidi or combining) layout
+    private static final char FIRST_COMPLEX_CHAR = '\u0300';
+    
+    private final PieceTableContent text;
+    
+    // Leading and trailing characters unchanged since the last takeEdit; MAX_VALUE while nothing changed
+    private int head = Integer.MAX_VALUE;
+    private int tail = Integer.MAX_VALUE;
+    
+    // Surrogate pairs in the text, kept up to date from the few characters around each edit so the
+    // length in code points is known without scanning the note
+    private int surrogatePairs = 0;
+    // Length of the text at the last takeEdit or load, in chars and in code points
+    private int baseLength = 0;
+    private int baseCodePoints = 0;
+    
+    // The note's text after a round of edits, plus how many characters at each end are as they were at
+    // the previous save. Only the range between them needs writing. The base lengths are those of the
+    // previous save's text, so a store can check it still holds that text before splicing into it.
+    static final class Edit {
+        final NoteText text;
+        final int head;
+        final int tail;
+        final int baseLength;
+        final int baseCodePoints;
+        
+        Edit(NoteText text, int head, int tail, int baseLength, int baseCodePoints) {
+            this.text = text;
+            this.head = head;
+            this.tail = tail;
+            this.baseLength = baseLength;
+            this.baseCodePoints = baseCodePoints;
+        }
+        
+        boolean isWhole() {
+            return head == 0 && tail == 0;
+        }
+        
+        // The same text, to be written in full
+        Edit whole() {
+            return new Edit(text, 0, 0, baseLength, baseCodePoints);
+        }
+    }
+    
+    public NoteDocument() {
+        this(new PieceTableContent());
+    }
+    
+    private NoteDocument(PieceTableContent text) {
+        super(text);
+        this.text = text;
+    }
+    
+    public void insertString(int offs, String str, javax.swing.text.AttributeSet a) throws BadLocationException {
+        int before = getLength();
+        int pairsBefore = pairsAround(offs, 0);
+        super.insertString(offs, str, a);
+        if (getLength() != before) {
+            surrogatePairs += pairsAround(offs, getLength() - before) - pairsBefore;
+            changed(offs, getLength() - before);
+        }
+    }
+    
+    public void remove(int offs, int len) throws BadLocationException {
+        int pairsBefore = pairsAround(offs, len);
+        super.remove(offs, len);
+        if (len > 0) {
+            surrogatePairs += pairsAround(offs, 0) - pairsBefore;
+            changed(offs, 0);
+        }
+    }
+    
+    // Surrogate pairs lying wholly within [offset - 1, offset + count + 1). Pairs outside that window
+    // are the same before and after an edit of [offset, offset + count).
+    private int pairsAround(int offset, int count) throws BadLocationException {
+        int start = Math.max(0, offset - 1);
+        int end = Math.min(getLength(), offset + count + 1);
+        if (end - start < 2) {
+            return 0;
+        }
+        Segment window = new Segment();
+        getText(start, end - start, window);
+        int pairs = 0;
+        for (int i = window.offset, last = window.offset + window.count - 1; i < last; i++) {
+            if (Character.isHighSurrogate(window.array[i]) && Character.isLowSurrogate(window.array[i + 1])) {
+                pairs++;
+                i++;
+            }
+        }
+        return pairs;
+    }
+    
+    private void changed(int offset, int inserted) {
+        head = Math.min(head, offset);
+        tail = Math.min(tail, getLength() - offset - inserted);
+    }
+    
+    // Replace the whole text with a note's, adopting its arrays rather than copying them; the line map
+    // is built in the same pass. Listeners see one insert. Not counted as an edit.
+    public void load(NoteText note) {
+        try {
+            super.remove(0, getLength());
+            if (note.length() > 0) {
+                // handleInsertString would have switched on complex layout for such text
+                if (note.hasCharAtLeast(FIRST_COMPLEX_CHAR)) {
+                    putProperty("i18n", Boolean.TRUE);
+                }
+                writeLock();
+                try {
+                    text.insert(0, note);
+                    DefaultDocumentEvent event = new DefaultDocumentEvent(0, note.length(), DocumentEvent.EventType.INSERT);
+                    insertUpdate(event, null);
+                    event.end();
+                    fireInsertUpdate(event);
+                } finally {
+                    writeUnlock();
+                }
+            }
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        head = Integer.MAX_VALUE;
+        tail = Integer.MAX_VALUE;
+        surrogatePairs = note.length() - note.codePointCount(0, note.length());
+        baseLength = note.length();
+        baseCodePoints = note.length() - surrogatePairs;
+    }
+    
+    // Everything edited since the last call, or null if nothing was. Costs O(pieces), not O(length).
+    public Edit takeEdit() {
+        if (head == Integer.MAX_VALUE) {
+            return null;
+        }
+        NoteText snapshot = text.snapshot();
+        int unchangedHead = Math.min(head, snapshot.length());
+        Edit edit = new Edit(snapshot, unchangedHead, Math.min(tail, snapshot.length() - unchangedHead), baseLength, baseCodePoints);
+        head = Integer.MAX_VALUE;
+        tail = Integer.MAX_VALUE;
+        baseLength = snapshot.length();
+        baseCodePoints = snapshot.length() - surrogatePairs;
+        return edit;
+    }
+    
+    int pieceCount() {
+        return text.pieceCount();
+    }
+}
+
+// Note Content Cache - Recently opened note bodies, so flipping between notes does not re-read the content column.
+// Bounded by an estimate of the bytes held (ctrlyou.notes.cache.mb, default 16), least recently used out first.
+// Each entry remembers the note's modified time when it was read or written and is only used while that
+// is at least as new as the caller's, so a note changed from another instance is read again.
+class NoteContentCache {
+    private static final long MAX_BYTES = Long.parseLong(StorageConfig.get("ctrlyou.notes.cache.mb", "16")) << 20;
+    private static final int ENTRY_OVERHEAD = 80; // map entry, Entry and String headers
+    
+    private static final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private static long cachedBytes = 0;
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong staleReads = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+    
+    static {
+        Metrics.gauge("notes.cache.hits", hits::get);
+        Metrics.gauge("notes.cache.misses", misses::get);
+        Metrics.gauge("notes.cache.stale", staleReads::get);
+        Metrics.gauge("notes.cache.evictions", evictions::get);
+        Metrics.gauge("notes.cache.bytes", NoteContentCache::bytes);
+        Metrics.gauge("notes.cache.hitPercent", () -> {
+            long lookups = hits.get() + misses.get();
+            return lookups == 0 ? 0 : 100 * hits.get() / lookups;
+        });
+    }
+    
+    static final class Entry {
+        final NoteText content;
+        final long modified;
+        final long size;
+        
+        Entry(NoteText content, long modified) {
+            this.content = content;
+            this.modified = modified;
+            this.size = 2L * content.length() + ENTRY_OVERHEAD;
+        }
+    }
+    
+    // The cached entry, or null if it is missing or older than `modified`
+    public static synchronized Entry get(int noteId, long modified) {
+        Entry entry = entries.get(noteId);
+        if (entry != null && entry.modified >= modified) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        if (entry != null) {
+            staleReads.incrementAndGet();
+            removeLocked(noteId);
+        }
+        return null;
+    }
+    
+    public static synchronized void put(int noteId, CharSequence content, long modified) {
+        removeLocked(noteId);
+        Entry entry = new Entry(NoteText.of(content), modified);
+        if (entry.size > MAX_BYTES) {
+            return;
+        }
+        entries.put(noteId, entry);
+        cachedBytes += entry.size;
+        Iterator<Entry> it = entries.values().iterator();
+        while (cachedBytes > MAX_BYTES && it.hasNext()) {
+            cachedBytes -= it.next().size;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+    
+    public static synchronized void remove(int noteId) {
+        removeLocked(noteId);
+    }
+    
+    private static void removeLocked(int noteId) {
+        Entry old = entries.remove(noteId);
+        if (old != null) {
+            cachedBytes -= old.size;
+        }
+    }
+    
+    public static synchronized long bytes() {
+        return cachedBytes;
+    }
+    
+    public static synchronized String describe() {
+        long lookups = hits.get() + misses.get();
+        return String.format("Note cache: %d notes, %d KB, %d hits, %d misses (%d stale, %.0f%% hit rate), %d evictions",
+            entries.size(), cachedBytes >> 10, hits.get(), misses.get(), staleReads.get(),
+            lookups == 0 ? 0.0 : 100.0 * hits.get() / lookups, evictions.get());
+    }
+}
+
+// Note Autosave Queue - Debounced write-behind saving of note edits
+class NoteAutosaveQueue {
+    private final BiConsumer<Integer, NoteDocument.Edit> writer;
+    private final javax.swing.Timer idleTimer;
+    
+    // Edit waiting for the idle timer (EDT only)
+    private Integer editedNoteId;
+    private Supplier<NoteDocument.Edit> editSource;
+    
+    // Captured edits waiting for the database worker; a newer edit replaces an older one. Each edit's
+    // range is relative to the edit before it, so one that replaces an unwritten edit is written whole.
+    private final LinkedHashMap<Integer, NoteDocument.Edit> pendingWrites = new LinkedHashMap<>();
+    
+    public NoteAutosaveQueue(int idleMillis, BiConsumer<Integer, NoteDocument.Edit> writer) {
+        this.writer = writer;
+        idleTimer = new javax.swing.Timer(idleMillis, e -> flushNow());
+        idleTimer.setRepeats(false);
+    }
+    
+    // Called on the EDT for every edit; the edit is only taken once typing pauses
+    public void noteEdited(int noteId, Supplier<NoteDocument.Edit> edit) {
+        if (editedNoteId != null && editedNoteId != noteId) {
+            flushNow();
+        }
+        editedNoteId = noteId;
+        editSource = edit;
+        idleTimer.restart();
+    }
+    
+    // Hand the pending edit to the background writer without waiting for the idle timer (EDT only)
+    public void flushNow() {
+        idleTimer.stop();
+        if (editedNoteId == null) {
+            return;
+        }
+        int noteId = editedNoteId;
+        NoteDocument.Edit edit = editSource.get();
+        editedNoteId = null;
+        editSource = null;
+        if (edit == null) {
+            return;
+        }
+        
+        synchronized (pendingWrites) {
+            if (pendingWrites.put(noteId, edit) != null) {
+                pendingWrites.put(noteId, edit.whole());
+                return;
+            }
+        }
+        AsyncDatabase.run(() -> writePending(noteId));
+    }
+    
+    private void writePending(int noteId) {
+        NoteDocument.Edit edit;
+        synchronized (pendingWrites) {
+            edit = pendingWrites.remove(noteId);
+        }
+        if (edit != null) {
+            writer.accept(noteId, edit);
+        }
+    }
+    
+    // Forget unsaved edits to a note that is about to be deleted (EDT only)
+    public void discard(int noteId) {
+        if (editedNoteId != null && editedNoteId == noteId) {
+            idleTimer.stop();
+            editedNoteId = null;
+            editSource = null;
+        }
+        synchronized (pendingWrites) {
+            pendingWrites.remove(noteId);
+        }
+    }
+    
+    // Flush, completing once everything queued so far has reached the database (EDT only)
+    public CompletableFuture<Void> flush() {
+        flushNow();
+        return AsyncDatabase.run(() -> { });
+    }
+    
+    public boolean awaitFlushed(long timeout, TimeUnit unit) {
+        try {
+            flush().get(timeout, unit);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
+
+// Search Index - In-process full-text index over notes and journal entries
+class SearchIndex {
+    static final int NOTE = 0;
+    static final int JOURNAL = 1;
+    
+    private static final int FILE_MAGIC = 0x43595349; // "CYSI"
+    private static final int FILE_VERSION = 1;
+    private static final int TITLE_WEIGHT = 3;
+    private static final int MAX_PREFIX_EXPANSION = 64;
+    private static final int BULK_SYNC_THRESHOLD = 200;
+    private static final int HIGHLIGHT_CHUNK = 8192;
+    // One file per planner account, so switching ctrlyou.user never shows another account's documents
+    private static final File INDEX_FILE = new File(System.getProperty("user.home"),
+        ".ctrlyou/search-index-" + StorageConfig.currentUser().replaceAll("[^A-Za-z0-9._-]", "_") + ".bin");
+    
+    // term -> (document key -> term frequency); the sorted map doubles as the prefix lookup for type-ahead
+    private static final TreeMap<String, HashMap<Long, Integer>> postings = new TreeMap<>();
+    private static final HashMap<Long, IndexedDoc> docs = new HashMap<>();
+    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private static boolean dirty = false;
+    private static boolean syncing = false;
+    private static final HashSet<Long> changedWhileSyncing = new HashSet<>();
+    
+    // Notes saved from the editor, waiting to be reindexed. The first save schedules a pass
+    // REINDEX_DELAY_MILLIS later and further saves only replace the text it will read, so a run of
+    // autosaves on a long note is tokenized once rather than on every save. Until then queries see the
+    // note's previous text. Guarded by its own monitor, taken inside the index lock where both are held.
+    private static final long REINDEX_DELAY_MILLIS = 5000;
+    private static final HashMap<Integer, CharSequence> pendingNotes = new HashMap<>();
+    private static boolean reindexScheduled = false;
+    private static ScheduledExecutorService reindexer;
+    
+    // Type-ahead queries run here instead of on the EDT, which would stall while a sync or reindex
+    // holds the write lock
+    private static final ExecutorService queryThread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "search-query");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    static class IndexedDoc {
+        final int type;
+        final int id;
+        final String label;
+        final long stamp;      // notes: modified time (-1 when unknown); journals: entry date
+        final String[] terms;
+        
+        IndexedDoc(int type, int id, String label, long stamp, String[] terms) {
+            this.type = type;
+            this.id = id;
+            this.label = label;
+            this.stamp = stamp;
+            this.terms = terms;
+        }
+    }
+    
+    static class SearchHit {
+        final int type;
+        final int id;
+        final String label;
+        final long stamp;
+        final double score;
+        final String[] queryTerms;
+        final boolean prefixLast;
+        
+        SearchHit(IndexedDoc doc, double score, String[] queryTerms, boolean prefixLast) {
+            this.type = doc.type;
+            this.id = doc.id;
+            this.label = doc.label;
+            this.stamp = doc.stamp;
+            this.score = score;
+            this.queryTerms = queryTerms;
+            this.prefixLast = prefixLast;
+        }
+        
+        boolean matches(String token) {
+            for (int i = 0; i < queryTerms.length; i++) {
+                boolean prefix = prefixLast && i == queryTerms.length - 1;
+                if (prefix ? token.startsWith(queryTerms[i]) : token.equals(queryTerms[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        // The same test for a lowercased word of `length` chars of which only the first
+        // longestTerm() are in `word`; that is all any term can compare against
+        boolean matches(char[] word, int length) {
+            for (int i = 0; i < queryTerms.length; i++) {
+                String term = queryTerms[i];
+                boolean prefix = prefixLast && i == queryTerms.length - 1;
+                if (prefix ? length < term.length() : length != term.length()) {
+                    continue;
+                }
+                int j = 0;
+                while (j < term.length() && word[j] == term.charAt(j)) {
+                    j++;
+                }
+                if (j == term.length()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        int longestTerm() {
+            int longest = 0;
+            for (String term : queryTerms) {
+                longest = Math.max(longest, term.length());
+            }
+            return longest;
+        }
+    }
+    
+    // STARTUP
+    // Load the saved index, then catch up with whatever changed in the database since it was written
+    public static void start() {
+        Thread indexer = new Thread(() -> {
+            load();
+            sync();
+            save();
+        }, "search-indexer");
+        indexer.setDaemon(true);
+        indexer.setPriority(Thread.MIN_PRIORITY);
+        indexer.start();
+        
+        Runtime.getRuntime().addShutdownHook(new Thread(SearchIndex::save));
+    }
+    
+    private static void sync() {
+        lock.writeLock().lock();
+        try {
+            syncing = true;
+            changedWhileSyncing.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        
+        HashMap<Integer, Long> noteStamps = DatabaseManager.getNoteStamps();
+        HashMap<Integer, Long> journalStamps = DatabaseManager.getJournalStamps();
+        ArrayList<Integer> staleNotes = staleIds(NOTE, noteStamps);
+        ArrayList<Integer> staleJournals = staleIds(JOURNAL, journalStamps);
+        
+        if (staleNotes.size() + staleJournals.size() > BULK_SYNC_THRESHOLD) {
+            // Too far behind to fetch document by document: stream everything once
+            DatabaseManager.scanNotesForIndex(row -> indexFromSync(NOTE, (int) row[0], (String) row[1], (long) row[3], (String) row[2]));
+            DatabaseManager.scanJournalsForIndex(row -> indexFromSync(JOURNAL, (int) row[0], journalLabel((String) row[2]), (long) row[1], (String) row[2]));
+        } else {
+            for (int id : staleNotes) {
+                Object[] note = DatabaseManager.getNoteForIndex(id);
+                if (note != null) {
+                    indexFromSync(NOTE, id, (String) note[0], (long) note[2], (String) note[1]);
+                }
+            }
+            for (int id : staleJournals) {
+                String content = DatabaseManager.getJournalEntryContent(id);
+                indexFromSync(JOURNAL, id, journalLabel(content), journalStamps.get(id), content);
+            }
+        }
+        
+        lock.writeLock().lock();
+        try {
+            // Drop documents that no longer exist
+            for (IndexedDoc doc : new ArrayList<>(docs.values())) {
+                HashMap<Integer, Long> stamps = doc.type == NOTE ? noteStamps : journalStamps;
+                long key = key(doc.type, doc.id);
+                if (!stamps.containsKey(doc.id) && !changedWhileSyncing.contains(key)) {
+                    removeLocked(key);
+                }
+            }
+            syncing = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private static ArrayList<Integer> staleIds(int type, HashMap<Integer, Long> stamps) {
+        ArrayList<Integer> stale = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (java.util.Map.Entry<Integer, Long> entry : stamps.entrySet()) {
+                IndexedDoc doc = docs.get(key(type, entry.getKey()));
+                if (doc == null || doc.stamp != entry.getValue()) {
+                    stale.add(entry.getKey());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return stale;
+    }
+    
+    // A local write that happened while syncing is newer than what the sync read
+    private static void indexFromSync(int type, int id, String label, long stamp, String text) {
+        HashMap<String, Integer> frequencies = termFrequencies(type, label, text);
+        lock.writeLock().lock();
+        try {
+            if (!changedWhileSyncing.contains(key(type, id))) {
+                putLocked(type, id, label, stamp, frequencies);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // INCREMENTAL UPDATES (called by DatabaseManager after a successful write)
+    public static void indexNote(int id, String title, String content, long modified) {
+        put(NOTE, id, title, modified, content);
+    }
+    
+    // Content changed but the new modified time is not known here; the next startup re-checks it.
+    // Queued rather than indexed now (see pendingNotes); the text is read only when the pass runs.
+    public static void updateNoteContent(int id, CharSequence content) {
+        synchronized (pendingNotes) {
+            pendingNotes.put(id, content);
+            if (!reindexScheduled) {
+                if (reindexer == null) {
+                    reindexer = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread t = new Thread(r, "search-reindexer");
+                        t.setDaemon(true);
+                        t.setPriority(Thread.MIN_PRIORITY);
+                        return t;
+                    });
+                }
+                reindexer.schedule(SearchIndex::reindexPending, REINDEX_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                reindexScheduled = true;
+            }
+        }
+    }
+    
+    // Indexes every queued note. Tokenizing happens outside both locks; a note saved again or deleted
+    // meanwhile is skipped here, and a newer save has already scheduled the next pass.
+    static void reindexPending() {
+        HashMap<Integer, CharSequence> batch;
+        synchronized (pendingNotes) {
+            batch = new HashMap<>(pendingNotes);
+            reindexScheduled = false;
+        }
+        for (java.util.Map.Entry<Integer, CharSequence> entry : batch.entrySet()) {
+            int id = entry.getKey();
+            String title;
+            lock.readLock().lock();
+            try {
+                IndexedDoc existing = docs.get(key(NOTE, id));
+                title = existing == null ? "" : existing.label;
+            } finally {
+                lock.readLock().unlock();
+            }
+            HashMap<String, Integer> frequencies = termFrequencies(NOTE, title, entry.getValue().toString());
+            lock.writeLock().lock();
+            try {
+                synchronized (pendingNotes) {
+                    if (pendingNotes.get(id) != entry.getValue()) {
+                        continue;
+                    }
+                    pendingNotes.remove(id);
+                }
+                putLocked(NOTE, id, title, -1, frequencies);
+                if (syncing) {
+                    changedWhileSyncing.add(key(NOTE, id));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+    
+    public static void indexJournalEntry(int id, long entryDate, String content) {
+        put(JOURNAL, id, journalLabel(content), entryDate, content);
+    }
+    
+    public static void remove(int type, int id) {
+        lock.writeLock().lock();
+        try {
+            long key = key(type, id);
+            if (type == NOTE) {
+                synchronized (pendingNotes) {
+                    pendingNotes.remove(id);
+                }
+            }
+            removeLocked(key);
+            if (syncing) {
+                changedWhileSyncing.add(key);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // The text is tokenized before taking the lock, so searches are not held up by a long document
+    private static void put(int type, int id, String label, long stamp, String text) {
+        HashMap<String, Integer> frequencies = termFrequencies(type, label, text);
+        lock.writeLock().lock();
+        try {
+            putLocked(type, id, label, stamp, frequencies);
+            if (syncing) {
+                changedWhileSyncing.add(key(type, id));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private static HashMap<String, Integer> termFrequencies(int type, String label, String text) {
+        HashMap<String, Integer> frequencies = new HashMap<>();
+        countTerms(text, 1, frequencies);
+        if (type == NOTE) {
+            countTerms(label, TITLE_WEIGHT, frequencies);
+        }
+        return frequencies;
+    }
+    
+    private static void putLocked(int type, int id, String label, long stamp, HashMap<String, Integer> frequencies) {
+        long key = key(type, id);
+        removeLocked(key);
+        
+        String[] terms = new String[frequencies.size()];
+        int i = 0;
+        for (java.util.Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), t -> new HashMap<>()).put(key, entry.getValue());
+            terms[i++] = entry.getKey();
+        }
+        docs.put(key, new IndexedDoc(type, id, label, stamp, terms));
+        dirty = true;
+    }
+    
+    private static void removeLocked(long key) {
+        IndexedDoc old = docs.remove(key);
+        if (old == null) {
+            return;
+        }
+        for (String term : old.terms) {
+            HashMap<Long, Integer> list = postings.get(term);
+            if (list != null) {
+                list.remove(key);
+                if (list.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        dirty = true;
+    }
+    
+    // QUERIES
+    // Ranked by tf-idf; every query word must match, and the last one also matches as a prefix while typing
+    public static ArrayList<SearchHit> search(String query, int type, int limit) {
+        ArrayList<String> termList = tokenize(query);
+        ArrayList<SearchHit> hits = new ArrayList<>();
+        if (termList.isEmpty()) {
+            return hits;
+        }
+        String[] terms = termList.toArray(new String[0]);
+        boolean prefixLast = !Character.isWhitespace(query.charAt(query.length() - 1));
+        
+        lock.readLock().lock();
+        try {
+            int docCount = Math.max(1, docs.size());
+            
+            // Expand each query word to the index terms it matches, rarest word first
+            ArrayList<ArrayList<HashMap<Long, Integer>>> expanded = new ArrayList<>();
+            for (int i = 0; i < terms.length; i++) {
+                ArrayList<HashMap<Long, Integer>> lists = new ArrayList<>();
+                if (prefixLast && i == terms.length - 1) {
+                    for (HashMap<Long, Integer> list : postings.subMap(terms[i], terms[i] + Character.MAX_VALUE).values()) {
+                        lists.add(list);
+                        if (lists.size() == MAX_PREFIX_EXPANSION) {
+                            break;
+                        }
+                    }
+                } else if (postings.containsKey(terms[i])) {
+                    lists.add(postings.get(terms[i]));
+                }
+                if (lists.isEmpty()) {
+                    return hits;
+                }
+                expanded.add(lists);
+            }
+            expanded.sort(java.util.Comparator.comparingInt(SearchIndex::totalPostings));
+            if (expanded.size() == 1 && expanded.get(0).size() == 1) {
+                return topHits(expanded.get(0).get(0), type, limit, docCount, terms, prefixLast);
+            }
+            
+            // Candidates come from the rarest word; the others only probe those candidates
+            HashMap<Long, Double> scores = new HashMap<>();
+            for (HashMap<Long, Integer> list : expanded.get(0)) {
+                double idf = Math.log(1.0 + (double) docCount / list.size());
+                for (java.util.Map.Entry<Long, Integer> posting : list.entrySet()) {
+                    if (typeOf(posting.getKey()) == type) {
+                        scores.merge(posting.getKey(), (1 + Math.log(posting.getValue())) * idf, Double::sum);
+                    }
+                }
+            }
+            for (int w = 1; w < expanded.size() && !scores.isEmpty(); w++) {
+                Iterator<java.util.Map.Entry<Long, Double>> it = scores.entrySet().iterator();
+                while (it.hasNext()) {
+                    java.util.Map.Entry<Long, Double> candidate = it.next();
+                    double wordScore = 0;
+                    for (HashMap<Long, Integer> list : expanded.get(w)) {
+                        Integer tf = list.get(candidate.getKey());
+                        if (tf != null) {
+                            wordScore += (1 + Math.log(tf)) * Math.log(1.0 + (double) docCount / list.size());
+                        }
+                    }
+                    if (wordScore == 0) {
+                        it.remove();
+                    } else {
+                        candidate.setValue(candidate.getValue() + wordScore);
+                    }
+                }
+            }
+            
+            // Keep the best `limit` candidates
+            java.util.PriorityQueue<java.util.Map.Entry<Long, Double>> top =
+                new java.util.PriorityQueue<>(java.util.Map.Entry.comparingByValue());
+            for (java.util.Map.Entry<Long, Double> candidate : scores.entrySet()) {
+                top.add(candidate);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+            while (!top.isEmpty()) {
+                java.util.Map.Entry<Long, Double> best = top.poll();
+                hits.add(0, new SearchHit(docs.get(best.getKey()), best.getValue(), terms, prefixLast));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return hits;
+    }
+    
+    // One word matching one index term, e.g. a word in most notes: each posting's score is final as it
+    // is read, so the best `limit` go straight into a heap with no per-candidate map (called under the read lock)
+    private static ArrayList<SearchHit> topHits(HashMap<Long, Integer> list, int type, int limit, int docCount,
+                                                String[] terms, boolean prefixLast) {
+        double idf = Math.log(1.0 + (double) docCount / list.size());
+        // Ordered by tf, lowest first; the score only grows with tf
+        java.util.PriorityQueue<java.util.Map.Entry<Long, Integer>> top =
+            new java.util.PriorityQueue<>(limit + 1, java.util.Map.Entry.comparingByValue());
+        for (java.util.Map.Entry<Long, Integer> posting : list.entrySet()) {
+            if (typeOf(posting.getKey()) == type && (top.size() < limit || posting.getValue() > top.peek().getValue())) {
+                top.add(posting);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+        }
+        ArrayList<SearchHit> hits = new ArrayList<>();
+        while (!top.isEmpty()) {
+            java.util.Map.Entry<Long, Integer> best = top.poll();
+            hits.add(0, new SearchHit(docs.get(best.getKey()), (1 + Math.log(best.getValue())) * idf, terms, prefixLast));
+        }
+        return hits;
+    }
+    
+    // search() on the query thread. A query that is no longer wanted by the time its turn comes (the
+    // user kept typing) is skipped and completes with no hits.
+    public static CompletableFuture<ArrayList<SearchHit>> searchLater(String query, int type, int limit, BooleanSupplier stillWanted) {
+        return CompletableFuture.supplyAsync(() -> stillWanted.getAsBoolean() ? search(query, type, limit) : new ArrayList<>(), queryThread);
+    }
+    
+    private static int totalPostings(ArrayList<HashMap<Long, Integer>> lists) {
+        int total = 0;
+        for (HashMap<Long, Integer> list : lists) {
+            total += list.size();
+        }
+        return total;
+    }
+    
+    // Mark every occurrence of the hit's query words in a text component
+    // Runs on the EDT. The document is read a chunk at a time through a Segment and words are
+    // lowercased into one small buffer, so a long note is neither copied whole nor cut into strings.
+    public static void highlight(javax.swing.text.JTextComponent component, SearchHit hit) {
+        javax.swing.text.Highlighter highlighter = component.getHighlighter();
+        highlighter.removeAllHighlights();
+        javax.swing.text.Highlighter.HighlightPainter painter =
+            new javax.swing.text.DefaultHighlighter.DefaultHighlightPainter(ColorPalette.PALE_ROSE);
+        javax.swing.text.Document doc = component.getDocument();
+        Segment chunk = new Segment();
+        chunk.setPartialReturn(true);
+        char[] word = new char[hit.longestTerm()];
+        int wordLength = 0;
+        int first = -1;
+        int start = -1;
+        try {
+            int length = doc.getLength();
+            int offset = 0;
+            while (offset < length) {
+                doc.getText(offset, Math.min(HIGHLIGHT_CHUNK, length - offset), chunk);
+                for (int i = 0; i < chunk.count; i++) {
+                    char c = chunk.array[chunk.offset + i];
+                    if (Character.isLetterOrDigit(c)) {
+                        if (start < 0) {
+                            start = offset + i;
+                            wordLength = 0;
+                        }
+                        if (wordLength < word.length) {
+                            word[wordLength] = Character.toLowerCase(c);
+                        }
+                        wordLength++;
+                    } else if (start >= 0) {
+                        if (hit.matches(word, wordLength)) {
+                            highlighter.addHighlight(start, start + wordLength, painter);
+                            first = first < 0 ? start : first;
+                        }
+                        start = -1;
+                    }
+                }
+                offset += chunk.count;
+            }
+            if (start >= 0 && hit.matches(word, wordLength)) {
+                highlighter.addHighlight(start, start + wordLength, painter);
+                first = first < 0 ? start : first;
+            }
+        } catch (javax.swing.text.BadLocationException e) {
+            // Text changed underneath us; nothing more to mark
+        }
+        if (first >= 0) {
+            component.setCaretPosition(first);
+        }
+    }
+    
+    // The hit's label as HTML with the matching words in bold
+    public static String toHtml(SearchHit hit) {
+        StringBuilder html = new StringBuilder("<html>");
+        if (hit.type == JOURNAL) {
+            html.append(new SimpleDateFormat("MMM dd, yyyy").format(new Date(hit.stamp))).append(" - ");
+        }
+        String label = hit.label;
+        int start = -1;
+        for (int i = 0; i <= label.length(); i++) {
+            boolean wordChar = i < label.length() && Character.isLetterOrDigit(label.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar) {
+                if (start >= 0) {
+                    String word = label.substring(start, i);
+                    boolean match = hit.matches(word.toLowerCase());
+                    html.append(match ? "<b>" : "").append(escapeHtml(word)).append(match ? "</b>" : "");
+                    start = -1;
+                }
+                if (i < label.length()) {
+                    html.append(escapeHtml(String.valueOf(label.charAt(i))));
+                }
+            }
+        }
+        return html.append("</html>").toString();
+    }
+    
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+    
+    // TOKENIZER
+    static ArrayList<String> tokenize(String text) {
+        ArrayList<String> tokens = new ArrayList<>();
+        forEachToken(text, token -> {
+            if (!tokens.contains(token)) {
+                tokens.add(token);
+            }
+        });
+        return tokens;
+    }
+    
+    private static void countTerms(String text, int weight, HashMap<String, Integer> frequencies) {
+        forEachToken(text, token -> frequencies.merge(token, weight, Integer::sum));
+    }
+    
+    // Lower-cased runs of letters and digits, 2 to 40 characters long
+    private static void forEachToken(String text, Consumer<String> consumer) {
+        if (text == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start >= 2 && i - start <= 40) {
+                    consumer.accept(text.substring(start, i).toLowerCase());
+                }
+                start = -1;
+            }
+        }
+    }
+    
+    private static String journalLabel(String content) {
+        String preview = content == null ? "" : content.replace('\n', ' ').trim();
+        return preview.length() > 60 ? preview.substring(0, 60) + "..." : preview;
+    }
+    
+    private static long key(int type, int id) {
+        return ((long) type << 32) | (id & 0xFFFFFFFFL);
+    }
+    
+    private static int typeOf(long key) {
+        return (int) (key >>> 32);
+    }
+    
+    // PERSISTENCE
+    // Layout: magic, version, doc count, docs (type, id, stamp, label), term count, terms (term, postings (doc key, tf)).
+    // Read and written as buffered streams rather than memory-mapped: a mapping stays open until the
+    // buffer is garbage collected, and Windows will not replace a file that is still mapped.
+    private static void load() {
+        if (!INDEX_FILE.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new java.io.BufferedInputStream(new FileInputStream(INDEX_FILE), 1 << 16))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                HashMap<Long, ArrayList<String>> termsByDoc = new HashMap<>();
+                HashMap<Long, Object[]> docFields = new HashMap<>();
+                int docCount = in.readInt();
+                for (int i = 0; i < docCount; i++) {
+                    int type = in.readByte();
+                    int id = in.readInt();
+                    long stamp = in.readLong();
+                    String label = readString(in);
+                    docFields.put(key(type, id), new Object[]{type, id, stamp, label});
+                    termsByDoc.put(key(type, id), new ArrayList<>());
+                }
+                int termCount = in.readInt();
+                for (int i = 0; i < termCount; i++) {
+                    String term = readString(in);
+                    int size = in.readInt();
+                    HashMap<Long, Integer> list = new HashMap<>(size * 2);
+                    for (int j = 0; j < size; j++) {
+                        long docKey = in.readLong();
+                        list.put(docKey, in.readInt());
+                        termsByDoc.get(docKey).add(term);
+                    }
+                    postings.put(term, list);
+                }
+                for (java.util.Map.Entry<Long, Object[]> entry : docFields.entrySet()) {
+                    Object[] f = entry.getValue();
+                    docs.put(entry.getKey(), new IndexedDoc((int) f[0], (int) f[1], (String) f[3], (long) f[2],
+                        termsByDoc.get(entry.getKey()).toArray(new String[0])));
+                }
+                dirty = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            System.out.println("Search index could not be read, rebuilding: " + e.getMessage());
+            lock.writeLock().lock();
+            try {
+                postings.clear();
+                docs.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+    
+    public static void save() {
+        reindexPending();
+        lock.readLock().lock();
+        try {
+            if (!dirty) {
+                return;
+            }
+            INDEX_FILE.getParentFile().mkdirs();
+            File temp = new File(INDEX_FILE.getPath() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(java.nio.channels.Channels.newOutputStream(channel), 1 << 16));
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeInt(docs.size());
+                for (IndexedDoc doc : docs.values()) {
+                    out.writeByte(doc.type);
+                    out.writeInt(doc.id);
+                    out.writeLong(doc.stamp);
+                    writeString(out, doc.label);
+                }
+                out.writeInt(postings.size());
+                for (java.util.Map.Entry<String, HashMap<Long, Integer>> entry : postings.entrySet()) {
+                    writeString(out, entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (java.util.Map.Entry<Long, Integer> posting : entry.getValue().entrySet()) {
+                        out.writeLong(posting.getKey());
+                        out.writeInt(posting.getValue());
+                    }
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp.toPath(), INDEX_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            dirty = false;
+        } catch (Exception e) {
+            System.out.println("Search index could not be saved: " + e.getMessage());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+    }
+}
+
+// Search Box - Text field that shows ranked, highlighted search results as you type
+@SuppressWarnings("serial")
+class SearchBox extends JTextField {
+    private final int type;
+    private final Consumer<SearchIndex.SearchHit> onOpen;
+    private final DefaultListModel<SearchIndex.SearchHit> results = new DefaultListModel<>();
+    private final JList<SearchIndex.SearchHit> resultList = new JList<>(results);
+    private final JPopupMenu popup = new JPopupMenu();
+    // Bumped on every keystroke; results of an older query are dropped when they arrive
+    private volatile int generation = 0;
+    
+    public SearchBox(int type, Consumer<SearchIndex.SearchHit> onOpen) {
+        super(18);
+        this.type = type;
+        this.onOpen = onOpen;
+        setFont(new Font("Georgia", Font.PLAIN, 14));
+        setForeground(ColorPalette.TEXT_DARK);
+        setToolTipText("Search");
+        setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(ColorPalette.LAVENDER, 1),
+            new EmptyBorder(6, 10, 6, 10)));
+        
+        resultList.setFont(new Font("Georgia", Font.PLAIN, 14));
+        resultList.setForeground(ColorPalette.TEXT_DARK);
+        resultList.setSelectionBackground(ColorPalette.PALE_ROSE);
+        resultList.setFocusable(false);
+        resultList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean selected, boolean focused) {
+                return super.getListCellRendererComponent(list, SearchIndex.toHtml((SearchIndex.SearchHit) value), index, selected, focused);
+            }
+        });
+        resultList.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                openSelected();
+            }
+        });
+        JScrollPane scroll = new JScrollPane(resultList);
+        scroll.setBorder(null);
+        popup.add(scroll);
+        popup.setFocusable(false);
+        popup.setBorder(BorderFactory.createLineBorder(ColorPalette.LAVENDER, 1));
+        
+        getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                updateResults();
+            }
+            public void removeUpdate(DocumentEvent e) {
+                updateResults();
+            }
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        addKeyListener(new KeyAdapter() {
+            public void keyPressed(KeyEvent e) {
+                int index = resultList.getSelectedIndex();
+                if (e.getKeyCode() == KeyEvent.VK_DOWN && index < results.size() - 1) {
+                    resultList.setSelectedIndex(index + 1);
+                } else if (e.getKeyCode() == KeyEvent.VK_UP && index > 0) {
+                    resultList.setSelectedIndex(index - 1);
+                } else if (e.getKeyCode() == KeyEvent.VK_ENTER) {
+                    openSelected();
+                } else if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+                    popup.setVisible(false);
+                }
+            }
+        });
+    }
+    
+    // The query runs on the index's query thread; only showing the hits happens on the EDT
+    private void updateResults() {
+        int requestGeneration = ++generation;
+        SearchIndex.searchLater(getText(), type, 20, () -> requestGeneration == generation).thenAccept(hits ->
+            SwingUtilities.invokeLater(() -> {
+                if (requestGeneration == generation) {
+                    showResults(hits);
+                }
+            }));
+    }
+    
+    private void showResults(ArrayList<SearchIndex.SearchHit> hits) {
+        results.clear();
+        for (SearchIndex.SearchHit hit : hits) {
+            results.addElement(hit);
+        }
+        if (results.isEmpty()) {
+            popup.setVisible(false);
+            return;
+        }
+        resultList.setSelectedIndex(0);
+        resultList.setVisibleRowCount(Math.min(results.size(), 8));
+        popup.setPopupSize(Math.max(getWidth(), 360), popup.getPreferredSize().height);
+        if (!popup.isVisible() && isShowing()) {
+            popup.show(this, 0, getHeight());
+        }
+        popup.pack();
+    }
+    
+    private void openSelected() {
+        SearchIndex.SearchHit hit = resultList.getSelectedValue();
+        if (hit != null) {
+            popup.setVisible(false);
+            onOpen.accept(hit);
+        }
+    }
+}
+
+// Mood Gift Box - Provides tasks and playlists based on mood
+class MoodGiftBox {
     
     public static void showGiftBox(Component parent, String mood) {
         // Get recommendations based on mood
@@ -494,7 +5374,7 @@ class MoodGiftBox {
         return panel;
     }
     
-    private static String getTaskForMood(String mood) {
+    static String getTaskForMood(String mood) {
         switch (mood) {
             case "Happy & Energetic":
                 return "Channel this amazing energy! Try: Dance to your favorite song, start that project you've been excited about, or call a friend to spread the joy!";
@@ -513,7 +5393,7 @@ class MoodGiftBox {
         }
     }
     
-    private static String getPlaylistForMood(String mood) {
+    static String getPlaylistForMood(String mood) {
         switch (mood) {
             case "Happy & Energetic":
                 return "🎉 'Feel Good Vibes' - Upbeat pop and dance tracks to keep your energy high! Artists: Dua Lipa, Harry Styles, Lizzo";
@@ -532,7 +5412,7 @@ class MoodGiftBox {
         }
     }
     
-    private static String getEncouragementMessage(String mood) {
+    static String getEncouragementMessage(String mood) {
         switch (mood) {
             case "Happy & Energetic":
                 return "Your positive energy is contagious! This is a beautiful moment – savor it and use this momentum!";
@@ -567,9 +5447,15 @@ class ColorPalette {
 }
 
 // Dashboard Frame
+@SuppressWarnings("serial")
 class DashboardFrame extends JFrame {
     private JPanel contentPanel;
     private CardLayout cardLayout;
+    private NotesPanel notesPanel;
+    
+    // Cards are only built the first time they are shown; each panel starts its own loads when constructed
+    private final HashMap<String, Supplier<JPanel>> panelFactories = new HashMap<>();
+    private final HashSet<String> builtPanels = new HashSet<>();
     
     public DashboardFrame() {
         setTitle("Ctrl+You - Digital Planner");
@@ -587,16 +5473,42 @@ class DashboardFrame extends JFrame {
         contentPanel = new JPanel(cardLayout);
         contentPanel.setBackground(ColorPalette.CREAM);
         
-        contentPanel.add(new HomePanel(this), "home");
-        contentPanel.add(new NotesPanel(), "notes");
-        contentPanel.add(new ProductivityPanel(), "productivity");
-        contentPanel.add(new WellnessPanel(), "wellness");
+        panelFactories.put("home", () -> new HomePanel(this));
+        panelFactories.put("notes", () -> notesPanel = new NotesPanel());
+        panelFactories.put("productivity", ProductivityPanel::new);
+        panelFactories.put("wellness", WellnessPanel::new);
+        showPanel("home");
         
         mainPanel.add(contentPanel, BorderLayout.CENTER);
         add(mainPanel);
+        
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(
+            KeyStroke.getKeyStroke(KeyEvent.VK_D, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), "diagnostics");
+        getRootPane().getActionMap().put("diagnostics", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                new DiagnosticsFrame().setVisible(true);
+            }
+        });
+        
+        addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent e) {
+                if (notesPanel != null) {
+                    notesPanel.flushEdits();
+                }
+            }
+        });
+    }
+    
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        Startup.firstFrame();
     }
     
     public void showPanel(String panelName) {
+        if (builtPanels.add(panelName)) {
+            contentPanel.add(panelFactories.get(panelName).get(), panelName);
+        }
         cardLayout.show(contentPanel, panelName);
     }
     
@@ -654,7 +5566,7 @@ class DashboardFrame extends JFrame {
             new EmptyBorder(10, 20, 10, 20)));
         btn.setCursor(new Cursor(Cursor.HAND_CURSOR));
         btn.addActionListener(e -> {
-            cardLayout.show(contentPanel, cardName);
+            showPanel(cardName);
             updateButtonStyles(sidebar, btn);
         });
         
@@ -687,7 +5599,75 @@ class DashboardFrame extends JFrame {
     }
 }
 
+// Diagnostics Frame - Live view of the Metrics histograms, refreshed every second
+@SuppressWarnings("serial")
+class DiagnosticsFrame extends JFrame {
+    private final DefaultTableModel model = new DefaultTableModel(
+        new String[]{"Metric", "Count", "p50 (ms)", "p99 (ms)", "Max (ms)"}, 0) {
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    private final javax.swing.Timer refreshTimer = new javax.swing.Timer(1000, e -> refresh());
+    
+    public DiagnosticsFrame() {
+        setTitle("Diagnostics");
+        setSize(640, 420);
+        setLocationRelativeTo(null);
+        
+        JPanel mainPanel = new JPanel(new BorderLayout());
+        mainPanel.setBackground(ColorPalette.CREAM);
+        mainPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
+        
+        JTable table = new JTable(model);
+        table.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        table.setRowHeight(24);
+        table.getTableHeader().setBackground(ColorPalette.SOFT_PINK);
+        table.getTableHeader().setFont(new Font("Georgia", Font.BOLD, 13));
+        mainPanel.add(new JScrollPane(table), BorderLayout.CENTER);
+        
+        JButton resetBtn = new JButton("Reset");
+        resetBtn.addActionListener(e -> {
+            Metrics.resetAll();
+            refresh();
+        });
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.setBackground(ColorPalette.CREAM);
+        buttons.add(resetBtn);
+        mainPanel.add(buttons, BorderLayout.SOUTH);
+        
+        add(mainPanel);
+        
+        addWindowListener(new WindowAdapter() {
+            public void windowClosed(WindowEvent e) {
+                refreshTimer.stop();
+            }
+        });
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        
+        refresh();
+        refreshTimer.start();
+    }
+    
+    private void refresh() {
+        model.setRowCount(0);
+        for (Metrics.Histogram histogram : Metrics.snapshot()) {
+            model.addRow(new Object[]{
+                histogram.name,
+                histogram.getCount(),
+                String.format("%.2f", histogram.percentileMillis(0.50)),
+                String.format("%.2f", histogram.percentileMillis(0.99)),
+                String.format("%.2f", histogram.maxMillis())
+            });
+        }
+        for (java.util.Map.Entry<String, Long> gauge : Metrics.gaugeValues().entrySet()) {
+            model.addRow(new Object[]{gauge.getKey(), gauge.getValue(), "", "", ""});
+        }
+    }
+}
+
 // Home Panel - WITH ICONS
+@SuppressWarnings("serial")
 class HomePanel extends JPanel {
     private DashboardFrame parentFrame;
     
@@ -722,9 +5702,20 @@ class HomePanel extends JPanel {
         statsPanel.setMaximumSize(new Dimension(1000, 140));
         statsPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
         
-        statsPanel.add(createStatCard("Notes Created", String.valueOf(DatabaseManager.getNotesCount())));
-        statsPanel.add(createStatCard("Active Tasks", String.valueOf(DatabaseManager.getAllTasks().size())));
-        statsPanel.add(createStatCard("Mood Check-ins", String.valueOf(DatabaseManager.getMoodEntriesCount())));
+        JLabel notesValue = new JLabel("…");
+        JLabel tasksValue = new JLabel("…");
+        JLabel moodValue = new JLabel("…");
+        statsPanel.add(createStatCard("Notes Created", notesValue));
+        statsPanel.add(createStatCard("Active Tasks", tasksValue));
+        statsPanel.add(createStatCard("Mood Check-ins", moodValue));
+        
+        // Counters are cached after the first load, so re-reading them whenever Home is shown is cheap
+        addComponentListener(new ComponentAdapter() {
+            public void componentShown(ComponentEvent e) {
+                loadStats(notesValue, tasksValue, moodValue);
+            }
+        });
+        loadStats(notesValue, tasksValue, moodValue);
         
         contentPanel.add(statsPanel);
         
@@ -754,7 +5745,15 @@ class HomePanel extends JPanel {
         add(new JScrollPane(contentPanel), BorderLayout.CENTER);
     }
     
-    private JPanel createStatCard(String label, String value) {
+    private void loadStats(JLabel notesValue, JLabel tasksValue, JLabel moodValue) {
+        AsyncDatabase.load(DatabaseManager::getDashboardStats, stats -> {
+            notesValue.setText(String.valueOf(stats.notes));
+            tasksValue.setText(String.valueOf(stats.tasks));
+            moodValue.setText(String.valueOf(stats.moodEntries));
+        });
+    }
+    
+    private JPanel createStatCard(String label, JLabel valueLabel) {
         JPanel card = new JPanel();
         card.setLayout(new BoxLayout(card, BoxLayout.Y_AXIS));
         card.setBackground(ColorPalette.SOFT_PINK);
@@ -762,7 +5761,6 @@ class HomePanel extends JPanel {
             BorderFactory.createLineBorder(ColorPalette.LAVENDER, 2),
             new EmptyBorder(25, 25, 25, 25)));
         
-        JLabel valueLabel = new JLabel(value);
         valueLabel.setFont(new Font("Georgia", Font.BOLD, 42));
         valueLabel.setForeground(ColorPalette.MEDIUM_PURPLE);
         valueLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
@@ -826,11 +5824,21 @@ class HomePanel extends JPanel {
 }
 
 // Notes Panel (same as before)
+@SuppressWarnings("serial")
 class NotesPanel extends JPanel {
-    private DefaultListModel<String> notesListModel;
+    private NotesListModel notesListModel;
     private JTextArea noteContentArea;
-    private String currentNoteTitle = null;
-    private JList<String> notesList;
+    private NoteItem currentNote = null;
+    private JList<NoteItem> notesList;
+    private JScrollPane listScroll;
+    private TitledBorder listBorder;
+    private final AsyncDatabase.LatestRequest noteContentRequest = new AsyncDatabase.LatestRequest();
+    private boolean noteLoading = false;
+    private final NoteDocument noteDocument = new NoteDocument();
+    private final NoteAutosaveQueue autosave = new NoteAutosaveQueue(1500, DatabaseManager::saveNoteEdit);
+    
+    // Wrapping measures every line of the note when it is shown, which stalls on very long notes
+    private static final int WRAP_LIMIT_CHARS = 1 << 20;
     
     public NotesPanel() {
         setLayout(new BorderLayout(20, 20));
@@ -852,7 +5860,12 @@ class NotesPanel extends JPanel {
         newNoteBtn.setBorderPainted(false);
         newNoteBtn.setFont(new Font("Georgia", Font.BOLD, 15));
         newNoteBtn.addActionListener(e -> createNewNote());
-        headerPanel.add(newNoteBtn, BorderLayout.EAST);
+        
+        JPanel headerActions = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 0));
+        headerActions.setBackground(ColorPalette.CREAM);
+        headerActions.add(new SearchBox(SearchIndex.NOTE, this::openSearchHit));
+        headerActions.add(newNoteBtn);
+        headerPanel.add(headerActions, BorderLayout.EAST);
         
         add(headerPanel, BorderLayout.NORTH);
         
@@ -860,8 +5873,7 @@ class NotesPanel extends JPanel {
         splitPane.setDividerLocation(320);
         splitPane.setBackground(ColorPalette.CREAM);
         
-        notesListModel = new DefaultListModel<>();
-        loadNotesFromDatabase();
+        notesListModel = new NotesListModel();
         
         notesList = new JList<>(notesListModel);
         notesList.setFont(new Font("Georgia", Font.PLAIN, 16));
@@ -869,27 +5881,41 @@ class NotesPanel extends JPanel {
         notesList.setForeground(ColorPalette.TEXT_DARK);
         notesList.setSelectionBackground(ColorPalette.LAVENDER);
         notesList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // Fixed cell sizes keep the JList from measuring rows that have not been fetched yet
+        notesList.setFixedCellHeight(28);
+        notesList.setFixedCellWidth(100);
         notesList.addListSelectionListener(e -> {
-            if (!e.getValueIsAdjusting()) {
-                loadNoteContent(notesList.getSelectedValue());
+            NoteItem selected = notesList.getSelectedValue();
+            if (!e.getValueIsAdjusting() && selected != null && !selected.equals(currentNote)) {
+                loadNoteContent(selected);
             }
         });
         
-        JScrollPane listScroll = new JScrollPane(notesList);
-        listScroll.setBorder(BorderFactory.createTitledBorder(
+        listScroll = new JScrollPane(notesList);
+        listBorder = BorderFactory.createTitledBorder(
             BorderFactory.createLineBorder(ColorPalette.LAVENDER, 2),
             "My Notes",
             TitledBorder.DEFAULT_JUSTIFICATION,
             TitledBorder.DEFAULT_POSITION,
             new Font("Georgia", Font.BOLD, 14),
-            ColorPalette.TEXT_DARK));
+            ColorPalette.TEXT_DARK);
+        listScroll.setBorder(listBorder);
+        listScroll.getViewport().addChangeListener(e -> notesListModel.ensureLoaded(notesList::getLastVisibleIndex));
+        loadNotesFromDatabase();
+        
+        // Pick up changes made elsewhere whenever the notes screen is shown again
+        addComponentListener(new ComponentAdapter() {
+            public void componentShown(ComponentEvent e) {
+                notesListModel.refresh(NotesPanel.this::reselectCurrentNote);
+            }
+        });
         splitPane.setLeftComponent(listScroll);
         
         JPanel editorPanel = new JPanel(new BorderLayout(10, 10));
         editorPanel.setBackground(ColorPalette.LILAC);
         editorPanel.setBorder(new EmptyBorder(15, 15, 15, 15));
         
-        noteContentArea = new JTextArea();
+        noteContentArea = new JTextArea(noteDocument);
         noteContentArea.setFont(new Font("Georgia", Font.PLAIN, 16));
         noteContentArea.setLineWrap(true);
         noteContentArea.setWrapStyleWord(true);
@@ -897,6 +5923,16 @@ class NotesPanel extends JPanel {
         noteContentArea.setForeground(ColorPalette.TEXT_DARK);
         noteContentArea.setText("Select a note to view or edit...");
         noteContentArea.setCaretColor(ColorPalette.MEDIUM_PURPLE);
+        noteContentArea.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                noteEdited();
+            }
+            public void removeUpdate(DocumentEvent e) {
+                noteEdited();
+            }
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
         
         JScrollPane editorScroll = new JScrollPane(noteContentArea);
         editorScroll.setBorder(BorderFactory.createLineBorder(ColorPalette.LAVENDER, 2));
@@ -923,11 +5959,38 @@ class NotesPanel extends JPanel {
         add(splitPane, BorderLayout.CENTER);
     }
     
+    // Typing is saved automatically once the user pauses
+    private void noteEdited() {
+        if (currentNote != null && !noteLoading) {
+            autosave.noteEdited(currentNote.id, noteDocument::takeEdit);
+        }
+    }
+    
+    public void flushEdits() {
+        autosave.flushNow();
+    }
+    
     private void loadNotesFromDatabase() {
-        notesListModel.clear();
-        ArrayList<String> notes = DatabaseManager.getAllNotes();
-        for (String note : notes) {
-            notesListModel.addElement(note);
+        listBorder.setTitle("My Notes (loading...)");
+        notesListModel.reload(() -> {
+            listBorder.setTitle("My Notes");
+            listScroll.repaint();
+            reselectCurrentNote();
+        });
+    }
+    
+    // Rows may have moved after a refresh; keep the open note highlighted without reloading it
+    private void reselectCurrentNote() {
+        if (currentNote != null && !currentNote.equals(notesList.getSelectedValue())) {
+            int index = -1;
+            for (int i = 0; i < notesListModel.getSize() && index < 0; i++) {
+                if (currentNote.equals(notesListModel.getElementAt(i))) {
+                    index = i;
+                }
+            }
+            if (index >= 0) {
+                notesList.setSelectedIndex(index);
+            }
         }
     }
     
@@ -947,61 +6010,295 @@ class NotesPanel extends JPanel {
     private void createNewNote() {
         String noteName = JOptionPane.showInputDialog(this, "Enter note name:");
         if (noteName != null && !noteName.trim().isEmpty()) {
-            DatabaseManager.saveNote(noteName, "");
-            notesListModel.addElement(noteName);
-            currentNoteTitle = noteName;
-            noteContentArea.setText("");
+            // The note is listed once the database has assigned its ID; selecting it opens the editor
+            AsyncDatabase.load(() -> DatabaseManager.saveNote(noteName, ""), id -> {
+                if (id < 0) {
+                    JOptionPane.showMessageDialog(this, "Note could not be created. Please try again.", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                NoteItem note = new NoteItem(id, noteName, null, null);
+                notesListModel.noteAdded(note);
+                notesList.setSelectedIndex(0);
+                notesList.ensureIndexIsVisible(0);
+            });
+        }
+    }
+    
+    private void loadNoteContent(NoteItem note) {
+        loadNoteContent(note, null);
+    }
+    
+    // Marks the search hit's words once the content has arrived (pass null for no highlighting)
+    private void loadNoteContent(NoteItem note, SearchIndex.SearchHit hit) {
+        if (note != null) {
+            autosave.flushNow();
+            currentNote = note;
+            noteLoading = true;
+            noteContentArea.getHighlighter().removeAllHighlights();
+            noteContentArea.setEditable(false);
+            noteContentArea.setText("Loading note...");
+            noteContentRequest.load(() -> DatabaseManager.openNote(note.id), content -> {
+                noteContentArea.setLineWrap(content.length() < WRAP_LIMIT_CHARS);
+                noteDocument.load(content);
+                noteLoading = false;
+                noteContentArea.setEditable(true);
+                noteContentArea.setCaretPosition(0);
+                if (hit != null) {
+                    SearchIndex.highlight(noteContentArea, hit);
+                }
+            });
         }
     }
     
-    private void loadNoteContent(String noteName) {
-        if (noteName != null) {
-            currentNoteTitle = noteName;
-            String content = DatabaseManager.getNoteContent(noteName);
-            noteContentArea.setText(content);
+    private void openSearchHit(SearchIndex.SearchHit hit) {
+        NoteItem note = new NoteItem(hit.id, hit.label, null, null);
+        if (note.equals(currentNote) && !noteLoading) {
+            SearchIndex.highlight(noteContentArea, hit);
+        } else {
+            loadNoteContent(note, hit);
         }
+        reselectCurrentNote();
+        noteContentArea.requestFocusInWindow();
     }
     
     private void saveCurrentNote() {
-        if (currentNoteTitle != null) {
-            String content = noteContentArea.getText();
-            DatabaseManager.updateNote(currentNoteTitle, currentNoteTitle, content);
-            JOptionPane.showMessageDialog(this, "Note saved successfully!", "Saved", JOptionPane.INFORMATION_MESSAGE);
+        if (noteLoading) {
+            JOptionPane.showMessageDialog(this, "Please wait for the note to finish loading.", "Loading", JOptionPane.INFORMATION_MESSAGE);
+        } else if (currentNote != null) {
+            autosave.noteEdited(currentNote.id, noteDocument::takeEdit);
+            autosave.flush().thenRun(() -> SwingUtilities.invokeLater(() ->
+                JOptionPane.showMessageDialog(this, "Note saved successfully!", "Saved", JOptionPane.INFORMATION_MESSAGE)));
         } else {
             JOptionPane.showMessageDialog(this, "Please select or create a note first!", "Error", JOptionPane.WARNING_MESSAGE);
         }
     }
     
     private void deleteCurrentNote() {
-        if (currentNoteTitle != null) {
+        if (currentNote != null) {
             int confirm = JOptionPane.showConfirmDialog(this, 
-                "Are you sure you want to delete the note '" + currentNoteTitle + "'?", 
+                "Are you sure you want to delete the note '" + currentNote.title + "'?", 
                 "Confirm Delete", 
                 JOptionPane.YES_NO_OPTION);
             
             if (confirm == JOptionPane.YES_OPTION) {
-                DatabaseManager.deleteNote(currentNoteTitle);
-                notesListModel.removeElement(currentNoteTitle);
-                currentNoteTitle = null;
+                NoteItem note = currentNote;
+                autosave.discard(note.id);
+                noteContentRequest.cancel();
+                noteLoading = false;
+                currentNote = null;
+                notesListModel.noteRemoved(note);
                 noteContentArea.setText("Select a note to view or edit...");
-                JOptionPane.showMessageDialog(this, "Note deleted successfully!", "Deleted", JOptionPane.INFORMATION_MESSAGE);
+                AsyncDatabase.execute(() -> DatabaseManager.deleteNote(note.id), () ->
+                    JOptionPane.showMessageDialog(this, "Note deleted successfully!", "Deleted", JOptionPane.INFORMATION_MESSAGE));
             }
         } else {
             JOptionPane.showMessageDialog(this, "Please select a note to delete!", "Error", JOptionPane.WARNING_MESSAGE);
         }
     }
     
+    // Opens the map belonging to the selected note, creating it the first time
     private void openMindMapEditor() {
-        new MindMapFrame().setVisible(true);
+        new MindMapFrame(currentNote).setVisible(true);
+    }
+}
+
+// Notes List Model - Loads (id, title, modified) rows page by page and applies refreshes as a diff
+@SuppressWarnings("serial")
+class NotesListModel extends AbstractListModel<NoteItem> {
+    private static final int PAGE_SIZE = 100;
+    private static final int PREFETCH_ROWS = 20;
+    
+    // Rows loaded so far, newest first; rows past the end are counted in totalCount but not fetched yet
+    private final ArrayList<NoteItem> loaded = new ArrayList<>();
+    private int totalCount = 0;
+    private boolean hasMore = false;
+    private boolean loading = false;
+    
+    // Newest modified_date seen so far; refresh() asks only for notes changed since then
+    private Timestamp watermark;
+    
+    @Override
+    public int getSize() {
+        return totalCount;
+    }
+    
+    // Rows that have not been fetched yet render as blank until their page arrives
+    @Override
+    public NoteItem getElementAt(int index) {
+        return index < loaded.size() ? loaded.get(index) : null;
+    }
+    
+    // Full load: the count and the first page in one trip to the worker
+    public void reload(Runnable onDone) {
+        loading = true;
+        AsyncDatabase.load(() -> new Object[]{
+            DatabaseManager.getNotesCount(),
+            DatabaseManager.getNotePage(null, 0, PAGE_SIZE)
+        }, result -> {
+            int oldSize = totalCount;
+            loaded.clear();
+            totalCount = 0;
+            watermark = null;
+            if (oldSize > 0) {
+                fireIntervalRemoved(this, 0, oldSize - 1);
+            }
+            
+            @SuppressWarnings("unchecked")
+            ArrayList<NoteItem> page = (ArrayList<NoteItem>) result[1];
+            appendPage(page);
+            totalCount = Math.max((int) result[0], loaded.size());
+            loading = false;
+            if (totalCount > 0) {
+                fireIntervalAdded(this, 0, totalCount - 1);
+            }
+            onDone.run();
+        });
+    }
+    
+    // Fetch the next page once the visible rows get close to the end of what is loaded. The list is
+    // asked again when a page arrives, so a jump past several pages (dragging the scroll bar to the
+    // bottom) keeps fetching until the rows on screen are covered rather than waiting for the next scroll.
+    public void ensureLoaded(IntSupplier lastVisibleIndex) {
+        if (!hasMore || loading || lastVisibleIndex.getAsInt() < loaded.size() - PREFETCH_ROWS) {
+            return;
+        }
+        loading = true;
+        NoteItem last = loaded.get(loaded.size() - 1);
+        AsyncDatabase.load(() -> DatabaseManager.getNotePage(last.modified, last.id, PAGE_SIZE), page -> {
+            int from = loaded.size();
+            appendPage(page);
+            loading = false;
+            if (loaded.size() > totalCount) {
+                int oldSize = totalCount;
+                totalCount = loaded.size();
+                fireIntervalAdded(this, oldSize, totalCount - 1);
+            }
+            if (loaded.size() > from) {
+                fireContentsChanged(this, from, loaded.size() - 1);
+            }
+            if (!hasMore && totalCount > loaded.size()) {
+                // Notes deleted elsewhere shrank the tail
+                int oldSize = totalCount;
+                totalCount = loaded.size();
+                fireIntervalRemoved(this, totalCount, oldSize - 1);
+            }
+            ensureLoaded(lastVisibleIndex);
+        });
+    }
+    
+    private void appendPage(ArrayList<NoteItem> page) {
+        for (NoteItem note : page) {
+            if (indexOf(note.id) < 0) {
+                loaded.add(note);
+                advanceWatermark(note);
+            }
+        }
+        hasMore = page.size() == PAGE_SIZE;
+    }
+    
+    // Incremental refresh: notes changed since the watermark move to the top, new ones are inserted there.
+    // If the count still disagrees with the server (e.g. a note was deleted elsewhere), fall back to a reload.
+    public void refresh(Runnable onDone) {
+        if (loading) {
+            return;
+        }
+        if (watermark == null) {
+            reload(onDone);
+            return;
+        }
+        Timestamp since = watermark;
+        AsyncDatabase.load(() -> new Object[]{
+            DatabaseManager.getNotesModifiedSince(since),
+            DatabaseManager.getNotesCount()
+        }, result -> {
+            @SuppressWarnings("unchecked")
+            ArrayList<NoteItem> changed = (ArrayList<NoteItem>) result[0];
+            // Oldest first, so the most recently modified note ends up on top
+            for (NoteItem note : changed) {
+                moveToTop(note, note.created != null && note.created.after(since));
+                advanceWatermark(note);
+            }
+            if ((int) result[1] != totalCount) {
+                reload(onDone);
+            } else {
+                onDone.run();
+            }
+        });
+    }
+    
+    public void noteAdded(NoteItem note) {
+        moveToTop(note, true);
+    }
+    
+    public void noteRemoved(NoteItem note) {
+        int index = indexOf(note.id);
+        if (index >= 0) {
+            loaded.remove(index);
+            totalCount--;
+            fireIntervalRemoved(this, index, index);
+        }
+    }
+    
+    private void moveToTop(NoteItem note, boolean isNew) {
+        int index = indexOf(note.id);
+        if (index == 0) {
+            loaded.set(0, note);
+            fireContentsChanged(this, 0, 0);
+            return;
+        }
+        if (index > 0) {
+            loaded.remove(index);
+            fireIntervalRemoved(this, index, index);
+        } else if (!isNew && totalCount > loaded.size()) {
+            // The note was in the part of the list that has not been fetched yet
+            totalCount--;
+            fireIntervalRemoved(this, totalCount, totalCount);
+        }
+        loaded.add(0, note);
+        totalCount++;
+        fireIntervalAdded(this, 0, 0);
+    }
+    
+    private void advanceWatermark(NoteItem note) {
+        if (note.modified != null && (watermark == null || note.modified.after(watermark))) {
+            watermark = note.modified;
+        }
+    }
+    
+    private int indexOf(int noteId) {
+        for (int i = 0; i < loaded.size(); i++) {
+            if (loaded.get(i).id == noteId) {
+                return i;
+            }
+        }
+        return -1;
     }
 }
 
 // Mind Map Frame
+@SuppressWarnings("serial")
 class MindMapFrame extends JFrame {
     private MindMapCanvas canvas;
-    private int currentMindMapId = 1;
+    private int currentMindMapId = -1;      // -1 until the catalog has loaded
+    private boolean mapLoaded = false;      // the canvas shows the current map (not a load in flight)
+    private final NoteItem note;            // note the editor was opened from, or null
+    private JComboBox<MindMapItem> mapSelector;
+    private JLabel statusLabel;
+    private boolean updatingSelector = false;
+    private final AsyncDatabase.LatestRequest mapRequest = new AsyncDatabase.LatestRequest();
+    
+    // A save has already taken the canvas's changes, so until it is answered the map is neither clean
+    // nor dirty. Switching maps and closing wait for it (see saveFinished).
+    private int savesInFlight = 0;
+    private MindMapItem switchAfterSave = null;
+    private boolean closedDuringSave = false;
     
     public MindMapFrame() {
+        this(null);
+    }
+    
+    public MindMapFrame(NoteItem note) {
+        this.note = note;
         setTitle("Mind Map Editor");
         setSize(1000, 700);
         setLocationRelativeTo(null);
@@ -1014,30 +6311,63 @@ class MindMapFrame extends JFrame {
         toolbar.setBackground(ColorPalette.LILAC);
         toolbar.setBorder(new EmptyBorder(10, 10, 10, 10));
         
+        mapSelector = new JComboBox<>();
+        mapSelector.setFont(new Font("Georgia", Font.PLAIN, 13));
+        mapSelector.setPrototypeDisplayValue(new MindMapItem(0, "A fairly long mind map title", 0));
+        mapSelector.addActionListener(e -> {
+            MindMapItem item = (MindMapItem) mapSelector.getSelectedItem();
+            if (!updatingSelector && item != null && item.id != currentMindMapId) {
+                switchTo(item);
+            }
+        });
+        
+        JButton newMapBtn = createToolbarButton("New Map");
         JButton addNodeBtn = createToolbarButton("Add Node");
         JButton deleteBtn = createToolbarButton("Delete");
         JButton clearBtn = createToolbarButton("Clear All");
+        JButton layoutBtn = createToolbarButton("Auto Layout");
+        JButton undoBtn = createToolbarButton("Undo");
+        JButton redoBtn = createToolbarButton("Redo");
         JButton saveBtn = createToolbarButton("Save");
+        undoBtn.setToolTipText("Undo (Ctrl+Z)");
+        redoBtn.setToolTipText("Redo (Ctrl+Y)");
+        undoBtn.setEnabled(false);
+        redoBtn.setEnabled(false);
+        
+        statusLabel = new JLabel("Loading mind maps...");
+        statusLabel.setFont(new Font("Georgia", Font.ITALIC, 12));
+        statusLabel.setForeground(ColorPalette.MEDIUM_PURPLE);
         
         canvas = new MindMapCanvas();
         
+        newMapBtn.addActionListener(e -> createMap());
         addNodeBtn.addActionListener(e -> canvas.addNode());
         deleteBtn.addActionListener(e -> canvas.deleteSelectedNode());
         clearBtn.addActionListener(e -> canvas.clearAll());
-        saveBtn.addActionListener(e -> {
-            DatabaseManager.saveMindMap(currentMindMapId, canvas.getNodes());
-            JOptionPane.showMessageDialog(this, "Mind map saved!", "Success", JOptionPane.INFORMATION_MESSAGE);
+        layoutBtn.addActionListener(e -> canvas.autoLayout(false));
+        undoBtn.addActionListener(e -> canvas.undo());
+        redoBtn.addActionListener(e -> canvas.redo());
+        saveBtn.addActionListener(e -> saveMindMap(null));
+        canvas.setHistoryListener(() -> {
+            undoBtn.setEnabled(canvas.canUndo());
+            redoBtn.setEnabled(canvas.canRedo());
         });
         
+        toolbar.add(mapSelector);
+        toolbar.add(newMapBtn);
         toolbar.add(addNodeBtn);
         toolbar.add(deleteBtn);
         toolbar.add(clearBtn);
+        toolbar.add(layoutBtn);
+        toolbar.add(undoBtn);
+        toolbar.add(redoBtn);
         toolbar.add(saveBtn);
+        toolbar.add(statusLabel);
         
         mainPanel.add(toolbar, BorderLayout.NORTH);
         mainPanel.add(canvas, BorderLayout.CENTER);
         
-        JLabel instructions = new JLabel("Click 'Add Node' to create nodes - Drag nodes to move - Click to select - Double-click to edit text");
+        JLabel instructions = new JLabel("Click 'Add Node' to add a child to the selected node - Drag nodes to move - Click to select - Double-click to edit text");
         instructions.setFont(new Font("Georgia", Font.ITALIC, 12));
         instructions.setForeground(ColorPalette.MEDIUM_PURPLE);
         instructions.setBorder(new EmptyBorder(10, 10, 10, 10));
@@ -1045,35 +6375,324 @@ class MindMapFrame extends JFrame {
         mainPanel.add(instructions, BorderLayout.SOUTH);
         
         add(mainPanel);
+        
+        // A cleanly saved map goes back into the cache so reopening it is instant
+        addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent e) {
+                mapRequest.cancel();
+                canvas.cancelLayout();
+                if (savesInFlight > 0) {
+                    closedDuringSave = true;
+                } else {
+                    cacheIfClean();
+                }
+            }
+        });
+        
+        loadCatalog();
+    }
+    
+    // Opens the note's map if it has one (creating it otherwise), else the first map
+    private void loadCatalog() {
+        AsyncDatabase.load(DatabaseManager::getMindMaps, maps -> {
+            updatingSelector = true;
+            for (MindMapItem item : maps) {
+                mapSelector.addItem(item);
+            }
+            updatingSelector = false;
+            
+            MindMapItem initial = note == null && !maps.isEmpty() ? maps.get(0) : null;
+            if (note != null) {
+                for (MindMapItem item : maps) {
+                    if (item.noteId == note.id) {
+                        initial = item;
+                        break;
+                    }
+                }
+            }
+            if (initial != null) {
+                openMap(initial);
+            } else {
+                createMap(note != null ? note.title : "My Mind Map");
+            }
+        });
+    }
+    
+    private void createMap() {
+        String title = JOptionPane.showInputDialog(this, "Mind map title:");
+        if (title != null && !title.trim().isEmpty()) {
+            createMap(title.trim());
+        }
+    }
+    
+    // New maps belong to the note the editor was opened from
+    private void createMap(String title) {
+        int noteId = note != null ? note.id : 0;
+        AsyncDatabase.load(() -> DatabaseManager.createMindMap(title, noteId), id -> {
+            if (id < 0) {
+                statusLabel.setText("Could not create the mind map");
+                return;
+            }
+            MindMapItem item = new MindMapItem(id, title, noteId);
+            updatingSelector = true;
+            mapSelector.addItem(item);
+            updatingSelector = false;
+            switchTo(item);
+        });
+    }
+    
+    // Unsaved changes are written before leaving a map; if that fails the current map stays open
+    private void switchTo(MindMapItem item) {
+        if (savesInFlight > 0) {
+            switchAfterSave = item;
+            statusLabel.setText("Saving...");
+            return;
+        }
+        if (mapLoaded && canvas.hasUnsavedChanges()) {
+            saveMindMap(saved -> {
+                if (closedDuringSave) {
+                    return;
+                }
+                if (saved) {
+                    openMap(item);
+                } else {
+                    selectInSelector(currentMindMapId);
+                }
+            });
+        } else {
+            openMap(item);
+        }
+    }
+    
+    private void openMap(MindMapItem item) {
+        if (mapLoaded) {
+            MindMapCache.put(currentMindMapId, canvas.getNodes());
+        }
+        currentMindMapId = item.id;
+        mapLoaded = false;
+        selectInSelector(item.id);
+        setTitle("Mind Map Editor - " + item.title);
+        
+        ArrayList<MindMapNode> cached = MindMapCache.take(item.id);
+        if (cached != null) {
+            mapRequest.cancel();
+            showMap(cached);
+            statusLabel.setText("Opened from cache");
+            return;
+        }
+        canvas.setNodes(new ArrayList<>());
+        statusLabel.setText("Loading...");
+        long start = System.nanoTime();
+        mapRequest.load(() -> DatabaseManager.loadMindMap(item.id), nodes -> {
+            if (nodes.isEmpty()) {
+                nodes.add(new MindMapNode(item.title, 450, 300));
+            }
+            showMap(nodes);
+            statusLabel.setText("Loaded " + nodes.size() + " nodes in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        });
+    }
+    
+    private void showMap(ArrayList<MindMapNode> nodes) {
+        canvas.setNodes(nodes);
+        mapLoaded = true;
+    }
+    
+    private void cacheIfClean() {
+        if (mapLoaded && !canvas.hasUnsavedChanges()) {
+            MindMapCache.put(currentMindMapId, canvas.getNodes());
+        }
+    }
+    
+    private void selectInSelector(int mindmapId) {
+        updatingSelector = true;
+        for (int i = 0; i < mapSelector.getItemCount(); i++) {
+            if (mapSelector.getItemAt(i).id == mindmapId) {
+                mapSelector.setSelectedIndex(i);
+                break;
+            }
+        }
+        updatingSelector = false;
+    }
+    
+    // The first save of a map replaces whatever is stored; after that only the changes are written.
+    // With no callback the outcome is reported in a dialog.
+    private void saveMindMap(Consumer<Boolean> onSaved) {
+        if (!mapLoaded) {
+            return;
+        }
+        boolean fullSave = !canvas.hasSavedBaseline();
+        ArrayList<MindMapNode> changedNodes = canvas.takeChangedNodes(fullSave);
+        ArrayList<Long> deletedNodeIds = canvas.takeDeletedNodeIds();
+        int mindmapId = currentMindMapId;
+        savesInFlight++;
+        
+        // The canvas still shows mindmapId when this runs, as switching waits for the save
+        AsyncDatabase.load(() -> fullSave
+            ? DatabaseManager.saveMindMap(mindmapId, changedNodes)
+            : DatabaseManager.saveMindMapChanges(mindmapId, changedNodes, deletedNodeIds), saved -> {
+            savesInFlight--;
+            if (saved) {
+                canvas.markBaselineSaved();
+                if (onSaved == null && !closedDuringSave) {
+                    JOptionPane.showMessageDialog(this, "Mind map saved!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                }
+            } else {
+                canvas.restoreChanges(changedNodes, deletedNodeIds);
+                JOptionPane.showMessageDialog(this, "Mind map could not be saved. Please try again.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            if (onSaved != null) {
+                onSaved.accept(saved);
+            }
+            if (savesInFlight == 0) {
+                saveFinished(saved);
+            }
+        });
+    }
+    
+    // Runs what waited for the last save: the map is cached only once its save is acknowledged, and
+    // a switch made during a failed save is dropped so the unsaved map stays open
+    private void saveFinished(boolean saved) {
+        MindMapItem next = switchAfterSave;
+        switchAfterSave = null;
+        if (closedDuringSave) {
+            cacheIfClean();
+        } else if (next != null && saved) {
+            switchTo(next);
+        } else if (next != null) {
+            selectInSelector(currentMindMapId);
+            statusLabel.setText("Not saved");
+        }
+    }
+    
+    private JButton createToolbarButton(String text) {
+        JButton btn = new JButton(text);
+        btn.setBackground(ColorPalette.SOFT_PINK);
+        btn.setForeground(ColorPalette.TEXT_DARK);
+        btn.setFocusPainted(false);
+        btn.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(ColorPalette.LAVENDER, 1),
+            new EmptyBorder(8, 15, 8, 15)));
+        btn.setFont(new Font("Georgia", Font.PLAIN, 13));
+        btn.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        return btn;
+    }
+}
+
+// Mind Map Cache - Node graphs of recently closed mind maps, so switching back to one skips the
+// database. Only cleanly saved maps are put here, and a map is taken out while it is open, so
+// a cached graph always matches what is stored. Bounded by total node count (nodes are by far
+// the bulk of a map's memory); the least recently used maps are dropped first.
+class MindMapCache {
+    private static final int MAX_NODES = 20000;
+    
+    private static final LinkedHashMap<Integer, ArrayList<MindMapNode>> maps = new LinkedHashMap<>(16, 0.75f, true);
+    private static int cachedNodes = 0;
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+    
+    static {
+        Metrics.gauge("mindmap.cache.hits", hits::get);
+        Metrics.gauge("mindmap.cache.misses", misses::get);
+        Metrics.gauge("mindmap.cache.evictions", evictions::get);
+        Metrics.gauge("mindmap.cache.nodes", MindMapCache::nodes);
+        Metrics.gauge("mindmap.cache.hitPercent", () -> {
+            long lookups = hits.get() + misses.get();
+            return lookups == 0 ? 0 : 100 * hits.get() / lookups;
+        });
+    }
+    
+    // Removes and returns the map's nodes, or null if it is not cached
+    public static synchronized ArrayList<MindMapNode> take(int mindmapId) {
+        ArrayList<MindMapNode> nodes = maps.remove(mindmapId);
+        if (nodes == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        cachedNodes -= nodes.size();
+        return nodes;
+    }
+    
+    public static synchronized void put(int mindmapId, ArrayList<MindMapNode> nodes) {
+        ArrayList<MindMapNode> old = maps.remove(mindmapId);
+        if (old != null) {
+            cachedNodes -= old.size();
+        }
+        if (nodes.size() > MAX_NODES) {
+            return;
+        }
+        maps.put(mindmapId, nodes);
+        cachedNodes += nodes.size();
+        Iterator<ArrayList<MindMapNode>> it = maps.values().iterator();
+        while (cachedNodes > MAX_NODES && it.hasNext()) {
+            cachedNodes -= it.next().size();
+            it.remove();
+            evictions.incrementAndGet();
+        }
     }
     
-    private JButton createToolbarButton(String text) {
-        JButton btn = new JButton(text);
-        btn.setBackground(ColorPalette.SOFT_PINK);
-        btn.setForeground(ColorPalette.TEXT_DARK);
-        btn.setFocusPainted(false);
-        btn.setBorder(BorderFactory.createCompoundBorder(
-            BorderFactory.createLineBorder(ColorPalette.LAVENDER, 1),
-            new EmptyBorder(8, 15, 8, 15)));
-        btn.setFont(new Font("Georgia", Font.PLAIN, 13));
-        btn.setCursor(new Cursor(Cursor.HAND_CURSOR));
-        return btn;
+    public static synchronized long nodes() {
+        return cachedNodes;
     }
 }
 
 // Mind Map Canvas
+@SuppressWarnings("serial")
 class MindMapCanvas extends JPanel {
+    private static final Metrics.Histogram PAINT_TIME = Metrics.histogram("mindmap.paint");
+    
     private ArrayList<MindMapNode> nodes;
     private MindMapNode selectedNode;
     private MindMapNode draggingNode;
     private Point dragOffset;
     
+    // Spatial index over the nodes; every change to the node list or a node's position goes through it
+    private final NodeGrid grid = new NodeGrid();
+    private int nextSeq = 0;
+    private final ArrayList<MindMapNode> visibleNodes = new ArrayList<>();
+    private final ArrayList<MindMapNode> visibleEdges = new ArrayList<>();
+    
+    // Retained rendering: everything except the node being dragged is rasterized into cached tiles,
+    // and a drag frame blits tiles and draws just the live node and its edge on top.
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_TILES = 96;
+    private final HashMap<Long, java.awt.image.BufferedImage> tiles = new HashMap<>();
+    private double tileScale = 1;
+    private boolean retainedRendering = true;
+    private MindMapNode liveNode;
+    private final Rectangle regionBefore = new Rectangle();
+    private final Rectangle regionAfter = new Rectangle();
+    
+    // Nodes with more children than this have edges all over the canvas; moving one repaints everything
+    private static final int WIDE_NODE_CHILDREN = 32;
+    
+    // Background layout currently streaming positions in, if any, and where its nodes started
+    private MindMapLayout layout;
+    private ArrayList<MindMapNode> layoutNodes;
+    private int[] layoutStartX;
+    private int[] layoutStartY;
+    
+    // Change tracking for diff saves: dirty flags live on the nodes, removals are kept here
+    private ArrayList<Long> deletedNodeIds = new ArrayList<>();
+    private boolean savedBaseline = false;
+    
+    // Undo history. Each edit records only what it changed and points at the live node objects
+    // (a cleared map keeps its old node list), so a step never copies the map; the depth bounds
+    // how many removed nodes stay reachable.
+    private static final int HISTORY_DEPTH = Integer.parseInt(StorageConfig.get("ctrlyou.mindmap.undo.depth", "200"));
+    private final java.util.ArrayDeque<Edit> undoStack = new java.util.ArrayDeque<>();
+    private final java.util.ArrayDeque<Edit> redoStack = new java.util.ArrayDeque<>();
+    private Runnable historyListener;
+    private int dragStartX;
+    private int dragStartY;
+    
     public MindMapCanvas() {
         setBackground(Color.WHITE);
         setBorder(BorderFactory.createLineBorder(ColorPalette.LAVENDER, 2));
         nodes = new ArrayList<>();
         
-        nodes.add(new MindMapNode("Main Idea", 450, 300));
+        appendNode(new MindMapNode("Main Idea", 450, 300));
         
         addMouseListener(new MouseAdapter() {
             public void mousePressed(MouseEvent e) {
@@ -1081,7 +6700,13 @@ class MindMapCanvas extends JPanel {
             }
             
             public void mouseReleased(MouseEvent e) {
+                // A whole drag is one undo step
+                if (draggingNode != null && (draggingNode.x != dragStartX || draggingNode.y != dragStartY)) {
+                    record(new MoveEdit(new MindMapNode[]{draggingNode},
+                        new int[]{dragStartX}, new int[]{dragStartY}, new int[]{draggingNode.x}, new int[]{draggingNode.y}));
+                }
                 draggingNode = null;
+                setLiveNode(null);
             }
             
             public void mouseClicked(MouseEvent e) {
@@ -1094,12 +6719,25 @@ class MindMapCanvas extends JPanel {
         addMouseMotionListener(new MouseAdapter() {
             public void mouseDragged(MouseEvent e) {
                 if (draggingNode != null) {
-                    draggingNode.x = e.getX() - dragOffset.x;
-                    draggingNode.y = e.getY() - dragOffset.y;
-                    repaint();
+                    moveNode(draggingNode, e.getX() - dragOffset.x, e.getY() - dragOffset.y);
                 }
             }
         });
+        
+        InputMap keys = getInputMap(WHEN_IN_FOCUSED_WINDOW);
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo");
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo");
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), "redo");
+        getActionMap().put("undo", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                undo();
+            }
+        });
+        getActionMap().put("redo", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                redo();
+            }
+        });
     }
     
     public ArrayList<MindMapNode> getNodes() {
@@ -1107,50 +6745,476 @@ class MindMapCanvas extends JPanel {
     }
     
     public void setNodes(ArrayList<MindMapNode> newNodes) {
-        this.nodes = newNodes;
+        cancelLayout();
+        linkNodes(newNodes);
+        installNodes(newNodes);
+        selectedNode = null;
+        deletedNodeIds.clear();
+        savedBaseline = true;
+        undoStack.clear();
+        redoStack.clear();
+        fireHistoryChanged();
         repaint();
     }
     
-    private void handleMousePress(MouseEvent e) {
-        selectedNode = null;
+    // Makes the list's (already linked) nodes the canvas' nodes; the list itself is left alone
+    private void installNodes(ArrayList<MindMapNode> newNodes) {
+        this.nodes = new ArrayList<>();
+        grid.clear();
+        tiles.clear();
+        nextSeq = 0;
+        for (MindMapNode node : newNodes) {
+            appendNode(node);
+        }
+    }
+    
+    public boolean hasSavedBaseline() {
+        return savedBaseline;
+    }
+    
+    public void markBaselineSaved() {
+        savedBaseline = true;
+    }
+    
+    public boolean hasUnsavedChanges() {
+        if (!deletedNodeIds.isEmpty()) {
+            return true;
+        }
+        for (MindMapNode node : nodes) {
+            if (node.dirty) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Copies of the nodes to write (all of them for a full save); their dirty flags are cleared
+    public ArrayList<MindMapNode> takeChangedNodes(boolean all) {
+        ArrayList<MindMapNode> changed = new ArrayList<>();
+        for (MindMapNode node : nodes) {
+            if (all || node.dirty) {
+                changed.add(node.copy());
+                node.dirty = false;
+            }
+        }
+        return changed;
+    }
+    
+    public ArrayList<Long> takeDeletedNodeIds() {
+        ArrayList<Long> deleted = deletedNodeIds;
+        deletedNodeIds = new ArrayList<>();
+        return deleted;
+    }
+    
+    // Put back changes from a save that failed so the next save retries them
+    public void restoreChanges(ArrayList<MindMapNode> changedNodes, ArrayList<Long> deleted) {
+        HashSet<Long> changedIds = new HashSet<>();
+        for (MindMapNode node : changedNodes) {
+            changedIds.add(node.uid);
+        }
         for (MindMapNode node : nodes) {
-            if (node.contains(e.getPoint())) {
-                selectedNode = node;
-                draggingNode = node;
-                dragOffset = new Point(e.getX() - node.x, e.getY() - node.y);
+            if (changedIds.contains(node.uid)) {
+                node.dirty = true;
+            }
+        }
+        deletedNodeIds.addAll(deleted);
+    }
+    
+    // Rebuilds parent/children links from the stored parent IDs. The root is the first node without a
+    // parent, which need not be the first in the list: a diff save appends a node whose deletion was
+    // undone, the old root included. A node whose parent is missing or that sits on a cycle is hung off
+    // the root (maps saved before edges existed were drawn as a star around the first node, so this
+    // keeps them looking the same).
+    private static void linkNodes(ArrayList<MindMapNode> list) {
+        if (list.isEmpty()) {
+            return;
+        }
+        HashMap<Long, MindMapNode> byUid = new HashMap<>();
+        for (MindMapNode node : list) {
+            node.parent = null;
+            node.children.clear();
+            byUid.put(node.uid, node);
+        }
+        MindMapNode root = list.get(0);
+        for (MindMapNode node : list) {
+            if (node.parentUid == 0) {
+                root = node;
                 break;
             }
         }
+        if (root.parentUid != 0) {
+            root.parentUid = 0;
+            root.dirty = true;
+        }
+        for (MindMapNode node : list) {
+            MindMapNode parent = node == root ? null : byUid.get(node.parentUid);
+            if (parent != null && parent != node) {
+                node.parent = parent;
+                parent.children.add(node);
+            }
+        }
+        
+        HashSet<MindMapNode> reached = new HashSet<>();
+        ArrayList<MindMapNode> pending = new ArrayList<>();
+        markReachable(root, reached, pending);
+        for (MindMapNode node : list) {
+            if (!reached.contains(node)) {
+                link(node, root);
+                node.dirty = true;
+                markReachable(node, reached, pending);
+            }
+        }
+    }
+    
+    private static void markReachable(MindMapNode from, HashSet<MindMapNode> reached, ArrayList<MindMapNode> pending) {
+        reached.add(from);
+        pending.add(from);
+        while (!pending.isEmpty()) {
+            MindMapNode node = pending.remove(pending.size() - 1);
+            for (MindMapNode child : node.children) {
+                if (reached.add(child)) {
+                    pending.add(child);
+                }
+            }
+        }
+    }
+    
+    private static void link(MindMapNode child, MindMapNode parent) {
+        if (child.parent != null) {
+            child.parent.children.remove(child);
+        }
+        child.parent = parent;
+        child.parentUid = parent != null ? parent.uid : 0;
+        if (parent != null) {
+            parent.children.add(child);
+        }
+    }
+    
+    // link() for a node on the canvas, keeping the grid's edge index in step
+    private void relink(MindMapNode child, MindMapNode parent) {
+        link(child, parent);
+        grid.updateEdge(child);
+    }
+    
+    private static boolean isWide(MindMapNode node) {
+        return node.children.size() > WIDE_NODE_CHILDREN;
+    }
+    
+    // seq follows list order, so the grid can answer in the same order as a scan of the list would
+    private void appendNode(MindMapNode node) {
+        node.seq = nextSeq++;
+        nodes.add(node);
+        grid.add(node);
+        invalidateNode(node);
+    }
+    
+    private void removeNode(MindMapNode node) {
+        invalidateNode(node);
+        nodes.remove(node);
+        grid.remove(node);
+    }
+    
+    // Puts a node back at its old place in the list (undo); later nodes are renumbered
+    private void insertNode(MindMapNode node, int index) {
+        if (index >= nodes.size()) {
+            appendNode(node);
+            return;
+        }
+        nodes.add(index, node);
+        for (int i = index; i < nodes.size(); i++) {
+            nodes.get(i).seq = i;
+        }
+        nextSeq = nodes.size();
+        grid.add(node);
+        tiles.clear();
+    }
+    
+    MindMapNode nodeAt(Point p) {
+        return grid.nodeAt(p);
+    }
+    
+    // The drag hot path: keep it free of allocations. Only the node's old and new footprint
+    // (box, shadow and the edges to its parent and children) is repainted.
+    void moveNode(MindMapNode node, int x, int y) {
+        regionOf(node, regionBefore);
+        if (node != liveNode) {
+            invalidateNode(node);
+        }
+        node.x = x;
+        node.y = y;
+        node.dirty = true;
+        grid.update(node);
+        if (node != liveNode) {
+            invalidateNode(node);
+        }
+        if (isWide(node)) {
+            repaint();
+            return;
+        }
+        regionOf(node, regionAfter);
+        regionBefore.add(regionAfter);
+        repaint(regionBefore.x, regionBefore.y, regionBefore.width, regionBefore.height);
+    }
+    
+    // The node being dragged is kept out of the tiles and drawn live on top of them
+    private void setLiveNode(MindMapNode node) {
+        if (liveNode == node) {
+            return;
+        }
+        MindMapNode previous = liveNode;
+        liveNode = node;
+        if (previous != null) {
+            invalidateNode(previous);
+        }
+        if (node != null) {
+            invalidateNode(node);
+        }
+    }
+    
+    void setRetainedRendering(boolean retained) {
+        retainedRendering = retained;
+        tiles.clear();
+        repaint();
+    }
+    
+    // Everything drawing the node touches: its box and shadow, and the edges to its parent and children
+    private void regionOf(MindMapNode node, Rectangle region) {
+        region.setBounds(node.x - 2, node.y - 2, node.width + 7, node.height + 7);
+        if (node.parent != null) {
+            addEdgeEnd(region, node.parent);
+        }
+        for (int i = 0; i < node.children.size(); i++) {
+            addEdgeEnd(region, node.children.get(i));
+        }
+    }
+    
+    private static void addEdgeEnd(Rectangle region, MindMapNode end) {
+        region.add(end.x + 60 - 2, end.y + 30 - 2);
+        region.add(end.x + 60 + 2, end.y + 30 + 2);
+    }
+    
+    // Drop cached tiles the node or its edges pass through; a wide node's edges reach everywhere
+    private void invalidateNode(MindMapNode node) {
+        if (tiles.isEmpty()) {
+            return;
+        }
+        if (isWide(node)) {
+            tiles.clear();
+            return;
+        }
+        int nx = node.x + 60;
+        int ny = node.y + 30;
+        Rectangle box = new Rectangle(node.x - 2, node.y - 2, node.width + 7, node.height + 7);
+        Rectangle tileArea = new Rectangle();
+        Iterator<Long> it = tiles.keySet().iterator();
+        while (it.hasNext()) {
+            long key = it.next();
+            tileArea.setBounds((int) (key >> 32) * TILE_SIZE - 2, (int) key * TILE_SIZE - 2, TILE_SIZE + 4, TILE_SIZE + 4);
+            boolean touched = tileArea.intersects(box)
+                || (node.parent != null && tileArea.intersectsLine(node.parent.x + 60, node.parent.y + 30, nx, ny));
+            for (int i = 0; !touched && i < node.children.size(); i++) {
+                MindMapNode child = node.children.get(i);
+                touched = tileArea.intersectsLine(nx, ny, child.x + 60, child.y + 30);
+            }
+            if (touched) {
+                it.remove();
+            }
+        }
+    }
+    
+    // Runs a force-directed layout in the background and streams positions in as it settles.
+    // An incremental layout starts cool, so existing nodes only shift to make room.
+    public void autoLayout(boolean incremental) {
+        cancelLayout();
+        int n = nodes.size();
+        if (n < 2) {
+            return;
+        }
+        HashMap<MindMapNode, Integer> index = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            index.put(nodes.get(i), i);
+        }
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        int[] parents = new int[n];
+        boolean[] pinned = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            MindMapNode node = nodes.get(i);
+            xs[i] = node.x + node.width / 2;
+            ys[i] = node.y + node.height / 2;
+            parents[i] = node.parent != null ? index.get(node.parent) : -1;
+            pinned[i] = node.parent == null || node == liveNode;
+        }
+        ArrayList<MindMapNode> laidOut = new ArrayList<>(nodes);
+        layoutNodes = laidOut;
+        layoutStartX = new int[n];
+        layoutStartY = new int[n];
+        for (int i = 0; i < n; i++) {
+            layoutStartX[i] = laidOut.get(i).x;
+            layoutStartY[i] = laidOut.get(i).y;
+        }
+        layout = new MindMapLayout(xs, ys, parents, pinned, incremental,
+            (lx, ly, finished) -> applyLayout(laidOut, lx, ly, finished));
+        layout.start();
+    }
+    
+    // Whatever the layout moved so far stays, as one undo step
+    public void cancelLayout() {
+        if (layout != null) {
+            layout.cancel();
+            layout = null;
+            recordLayout();
+        }
+    }
+    
+    private void recordLayout() {
+        ArrayList<Integer> moved = new ArrayList<>();
+        for (int i = 0; i < layoutNodes.size(); i++) {
+            MindMapNode node = layoutNodes.get(i);
+            if (node.x != layoutStartX[i] || node.y != layoutStartY[i]) {
+                moved.add(i);
+            }
+        }
+        if (!moved.isEmpty()) {
+            MindMapNode[] movedNodes = new MindMapNode[moved.size()];
+            int[] fromX = new int[moved.size()];
+            int[] fromY = new int[moved.size()];
+            int[] toX = new int[moved.size()];
+            int[] toY = new int[moved.size()];
+            for (int k = 0; k < moved.size(); k++) {
+                int i = moved.get(k);
+                movedNodes[k] = layoutNodes.get(i);
+                fromX[k] = layoutStartX[i];
+                fromY[k] = layoutStartY[i];
+                toX[k] = movedNodes[k].x;
+                toY[k] = movedNodes[k].y;
+            }
+            record(new MoveEdit(movedNodes, fromX, fromY, toX, toY));
+        }
+        layoutNodes = null;
+        layoutStartX = null;
+        layoutStartY = null;
+    }
+    
+    // Called on the EDT with centre positions for the nodes as they were when the layout started
+    private void applyLayout(ArrayList<MindMapNode> laidOut, int[] xs, int[] ys, boolean finished) {
+        for (int i = 0; i < laidOut.size(); i++) {
+            MindMapNode node = laidOut.get(i);
+            int x = xs[i] - node.width / 2;
+            int y = ys[i] - node.height / 2;
+            if (node != liveNode && (node.x != x || node.y != y)) {
+                node.x = x;
+                node.y = y;
+                node.dirty = true;
+                grid.update(node);
+            }
+        }
+        tiles.clear();
+        if (finished) {
+            layout = null;
+            recordLayout();
+        }
+        repaint();
+    }
+    
+    private void handleMousePress(MouseEvent e) {
+        if (selectedNode != null) {
+            invalidateNode(selectedNode);
+        }
+        selectedNode = nodeAt(e.getPoint());
+        if (selectedNode != null) {
+            // The user takes over from the layout
+            cancelLayout();
+            draggingNode = selectedNode;
+            dragStartX = selectedNode.x;
+            dragStartY = selectedNode.y;
+            dragOffset = new Point(e.getX() - selectedNode.x, e.getY() - selectedNode.y);
+            setLiveNode(selectedNode);
+        }
         repaint();
     }
     
     public void addNode() {
+        if (nodes.isEmpty()) {
+            // Still loading
+            return;
+        }
         String text = JOptionPane.showInputDialog(this, "Enter node text:");
         if (text != null && !text.trim().isEmpty()) {
-            Random rand = new Random();
-            int x = 200 + rand.nextInt(600);
-            int y = 100 + rand.nextInt(400);
-            nodes.add(new MindMapNode(text, x, y));
+            MindMapNode parent = selectedNode != null ? selectedNode : root();
+            double angle = ThreadLocalRandom.current().nextDouble(2 * Math.PI);
+            int x = parent.x + (int) (Math.cos(angle) * MindMapLayout.EDGE_LENGTH);
+            int y = parent.y + (int) (Math.sin(angle) * MindMapLayout.EDGE_LENGTH);
+            MindMapNode node = new MindMapNode(text, x, y);
+            AddEdit edit = new AddEdit(node, parent);
+            edit.redo();
+            record(edit);
             repaint();
+            autoLayout(true);
+        }
+    }
+    
+    // Not always nodes.get(0); see linkNodes
+    private MindMapNode root() {
+        for (MindMapNode node : nodes) {
+            if (node.parent == null) {
+                return node;
+            }
         }
+        return nodes.get(0);
     }
     
     public void deleteSelectedNode() {
         if (selectedNode != null && nodes.size() > 1) {
-            nodes.remove(selectedNode);
+            cancelLayout();
+            record(deleteNode(selectedNode));
             selectedNode = null;
             repaint();
         }
     }
     
+    // Children of the deleted node move up to its parent; deleting the root promotes the next node
+    private DeleteEdit deleteNode(MindMapNode removed) {
+        int index = nodes.indexOf(removed);
+        MindMapNode parent = removed.parent;
+        MindMapNode newParent = parent;
+        MindMapNode promoted = null;
+        MindMapNode promotedParent = null;
+        removeNode(removed);
+        if (newParent == null) {
+            promoted = newParent = nodes.get(0);
+            promotedParent = promoted.parent;
+            relink(promoted, null);
+            promoted.dirty = true;
+        } else {
+            relink(removed, null);
+        }
+        ArrayList<MindMapNode> children = new ArrayList<>(removed.children);
+        for (MindMapNode child : children) {
+            if (child != newParent) {
+                relink(child, newParent);
+                child.dirty = true;
+            }
+        }
+        removed.children.clear();
+        tiles.clear();
+        deletedNodeIds.add(removed.uid);
+        return new DeleteEdit(removed, index, parent, children, promoted, promotedParent);
+    }
+    
     public void clearAll() {
+        if (nodes.isEmpty()) {
+            return;
+        }
         int confirm = JOptionPane.showConfirmDialog(this, 
             "Clear all nodes?", 
             "Confirm", 
             JOptionPane.YES_NO_OPTION);
         if (confirm == JOptionPane.YES_OPTION) {
-            nodes.clear();
-            nodes.add(new MindMapNode("Main Idea", 450, 300));
+            cancelLayout();
+            ClearEdit edit = new ClearEdit(nodes, new MindMapNode("Main Idea", 450, 300));
+            edit.redo();
+            record(edit);
             selectedNode = null;
             repaint();
         }
@@ -1158,75 +7222,467 @@ class MindMapCanvas extends JPanel {
     
     private void editNode() {
         String newText = JOptionPane.showInputDialog(this, "Edit node text:", selectedNode.text);
-        if (newText != null && !newText.trim().isEmpty()) {
-            selectedNode.text = newText;
+        if (newText != null && !newText.trim().isEmpty() && !newText.equals(selectedNode.text)) {
+            TextEdit edit = new TextEdit(selectedNode, selectedNode.text, newText);
+            edit.redo();
+            record(edit);
             repaint();
         }
     }
     
+    // UNDO HISTORY
+    public void undo() {
+        if (draggingNode != null) {
+            return;
+        }
+        cancelLayout();
+        Edit edit = undoStack.poll();
+        if (edit != null) {
+            edit.undo();
+            redoStack.push(edit);
+            afterHistoryStep();
+        }
+    }
+    
+    public void redo() {
+        if (draggingNode != null) {
+            return;
+        }
+        cancelLayout();
+        Edit edit = redoStack.poll();
+        if (edit != null) {
+            edit.redo();
+            undoStack.push(edit);
+            afterHistoryStep();
+        }
+    }
+    
+    public boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+    
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+    
+    // Called after every change to the history, e.g. to enable the toolbar's undo and redo buttons
+    public void setHistoryListener(Runnable listener) {
+        historyListener = listener;
+    }
+    
+    private void record(Edit edit) {
+        undoStack.push(edit);
+        if (undoStack.size() > HISTORY_DEPTH) {
+            undoStack.removeLast();
+        }
+        redoStack.clear();
+        fireHistoryChanged();
+    }
+    
+    private void afterHistoryStep() {
+        selectedNode = null;
+        tiles.clear();
+        fireHistoryChanged();
+        repaint();
+    }
+    
+    private void fireHistoryChanged() {
+        if (historyListener != null) {
+            historyListener.run();
+        }
+    }
+    
+    // Undone and redone changes are marked dirty like any other edit, so the next diff save writes them
+    private void placeNode(MindMapNode node, int x, int y) {
+        node.x = x;
+        node.y = y;
+        node.dirty = true;
+        grid.update(node);
+    }
+    
+    private void forgetDeletion(long uid) {
+        deletedNodeIds.remove(Long.valueOf(uid));
+    }
+    
+    private interface Edit {
+        void undo();
+        
+        void redo();
+    }
+    
+    // One or more nodes moved: a whole drag, or everything a layout run moved
+    private class MoveEdit implements Edit {
+        private final MindMapNode[] moved;
+        private final int[] fromX;
+        private final int[] fromY;
+        private final int[] toX;
+        private final int[] toY;
+        
+        MoveEdit(MindMapNode[] moved, int[] fromX, int[] fromY, int[] toX, int[] toY) {
+            this.moved = moved;
+            this.fromX = fromX;
+            this.fromY = fromY;
+            this.toX = toX;
+            this.toY = toY;
+        }
+        
+        public void undo() {
+            for (int i = 0; i < moved.length; i++) {
+                placeNode(moved[i], fromX[i], fromY[i]);
+            }
+        }
+        
+        public void redo() {
+            for (int i = 0; i < moved.length; i++) {
+                placeNode(moved[i], toX[i], toY[i]);
+            }
+        }
+    }
+    
+    private class AddEdit implements Edit {
+        private final MindMapNode node;
+        private final MindMapNode parent;
+        
+        AddEdit(MindMapNode node, MindMapNode parent) {
+            this.node = node;
+            this.parent = parent;
+        }
+        
+        // Everything added after this node has been undone already, so it is a leaf again
+        public void undo() {
+            removeNode(node);
+            relink(node, null);
+            deletedNodeIds.add(node.uid);
+        }
+        
+        public void redo() {
+            relink(node, parent);
+            invalidateNode(parent);
+            appendNode(node);
+            node.dirty = true;
+            forgetDeletion(node.uid);
+        }
+    }
+    
+    private class DeleteEdit implements Edit {
+        private final MindMapNode node;
+        private final int index;
+        private final MindMapNode parent;
+        private final ArrayList<MindMapNode> children;
+        private final MindMapNode promoted;         // new root when the root was deleted, else null
+        private final MindMapNode promotedParent;
+        
+        DeleteEdit(MindMapNode node, int index, MindMapNode parent, ArrayList<MindMapNode> children,
+                   MindMapNode promoted, MindMapNode promotedParent) {
+            this.node = node;
+            this.index = index;
+            this.parent = parent;
+            this.children = children;
+            this.promoted = promoted;
+            this.promotedParent = promotedParent;
+        }
+        
+        public void undo() {
+            insertNode(node, index);
+            relink(node, parent);
+            for (MindMapNode child : children) {
+                relink(child, node);
+                child.dirty = true;
+            }
+            if (promoted != null) {
+                relink(promoted, promotedParent);
+                promoted.dirty = true;
+            }
+            node.dirty = true;
+            forgetDeletion(node.uid);
+        }
+        
+        public void redo() {
+            deleteNode(node);
+        }
+    }
+    
+    private class TextEdit implements Edit {
+        private final MindMapNode node;
+        private final String before;
+        private final String after;
+        
+        TextEdit(MindMapNode node, String before, String after) {
+            this.node = node;
+            this.before = before;
+            this.after = after;
+        }
+        
+        public void undo() {
+            node.text = before;
+            node.dirty = true;
+        }
+        
+        public void redo() {
+            node.text = after;
+            node.dirty = true;
+            invalidateNode(node);
+        }
+    }
+    
+    // Keeps the cleared node list as it was; its nodes are still linked to each other
+    private class ClearEdit implements Edit {
+        private final ArrayList<MindMapNode> before;
+        private final MindMapNode root;
+        
+        ClearEdit(ArrayList<MindMapNode> before, MindMapNode root) {
+            this.before = before;
+            this.root = root;
+        }
+        
+        public void undo() {
+            deletedNodeIds.add(root.uid);
+            HashSet<Long> restored = new HashSet<>();
+            for (MindMapNode node : before) {
+                restored.add(node.uid);
+                node.dirty = true;
+            }
+            deletedNodeIds.removeIf(restored::contains);
+            installNodes(before);
+        }
+        
+        public void redo() {
+            for (MindMapNode node : before) {
+                deletedNodeIds.add(node.uid);
+            }
+            ArrayList<MindMapNode> cleared = new ArrayList<>();
+            cleared.add(root);
+            installNodes(cleared);
+            root.dirty = true;
+            forgetDeletion(root.uid);
+        }
+    }
+    
     @Override
     protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        try {
+            paintCanvas(g);
+        } finally {
+            PAINT_TIME.recordSince(start);
+        }
+    }
+    
+    private void paintCanvas(Graphics g) {
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g;
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        
+        // Dragging a wide node moves edges all over the canvas, so tiles would be redrawn each frame anyway
+        if (!retainedRendering || nodes.isEmpty() || (liveNode != null && isWide(liveNode))) {
+            paintNodes(g2d, clip, null);
+            return;
+        }
+        paintTiles(g2d, clip);
+        if (liveNode != null) {
+            int nx = liveNode.x + 60;
+            int ny = liveNode.y + 30;
+            g2d.setColor(ColorPalette.LAVENDER);
+            g2d.setStroke(MindMapNode.EDGE_STROKE);
+            if (liveNode.parent != null) {
+                g2d.drawLine(liveNode.parent.x + 60, liveNode.parent.y + 30, nx, ny);
+            }
+            for (int i = 0; i < liveNode.children.size(); i++) {
+                MindMapNode child = liveNode.children.get(i);
+                g2d.drawLine(nx, ny, child.x + 60, child.y + 30);
+            }
+            liveNode.draw(g2d, liveNode == selectedNode);
+        }
+    }
+    
+    // Draws the edges and nodes intersecting the clip, leaving out `skip` and its edges
+    private void paintNodes(Graphics2D g2d, Rectangle clip, MindMapNode skip) {
+        // The margin covers line width and node shadows
+        Rectangle area = new Rectangle(clip.x - 4, clip.y - 4, clip.width + 8, clip.height + 8);
+        
         g2d.setColor(ColorPalette.LAVENDER);
-        g2d.setStroke(new BasicStroke(2));
-        if (nodes.size() > 1) {
-            MindMapNode center = nodes.get(0);
-            for (int i = 1; i < nodes.size(); i++) {
-                MindMapNode node = nodes.get(i);
-                g2d.drawLine(center.x + 60, center.y + 30, node.x + 60, node.y + 30);
+        g2d.setStroke(MindMapNode.EDGE_STROKE);
+        grid.queryEdges(area, visibleEdges);
+        for (int i = 0; i < visibleEdges.size(); i++) {
+            MindMapNode node = visibleEdges.get(i);
+            MindMapNode parent = node.parent;
+            if (node == skip || parent == skip) {
+                continue;
+            }
+            int px = parent.x + 60;
+            int py = parent.y + 30;
+            int nx = node.x + 60;
+            int ny = node.y + 30;
+            if (area.intersectsLine(px, py, nx, ny)) {
+                g2d.drawLine(px, py, nx, ny);
+            }
+        }
+        visibleEdges.clear();
+        
+        grid.query(area, visibleNodes);
+        for (int i = 0; i < visibleNodes.size(); i++) {
+            MindMapNode node = visibleNodes.get(i);
+            if (node != skip) {
+                node.draw(g2d, node == selectedNode);
+            }
+        }
+        visibleNodes.clear();
+    }
+    
+    private void paintTiles(Graphics2D g2d, Rectangle clip) {
+        // Tiles are rendered at device resolution so HiDPI screens stay sharp
+        double scale = g2d.getTransform().getScaleX();
+        if (scale != tileScale) {
+            tiles.clear();
+            tileScale = scale;
+        }
+        int tx0 = Math.floorDiv(clip.x, TILE_SIZE);
+        int ty0 = Math.floorDiv(clip.y, TILE_SIZE);
+        int tx1 = Math.floorDiv(clip.x + clip.width - 1, TILE_SIZE);
+        int ty1 = Math.floorDiv(clip.y + clip.height - 1, TILE_SIZE);
+        for (int tx = tx0; tx <= tx1; tx++) {
+            for (int ty = ty0; ty <= ty1; ty++) {
+                long key = ((long) tx << 32) | (ty & 0xFFFFFFFFL);
+                java.awt.image.BufferedImage tile = tiles.get(key);
+                if (tile == null) {
+                    tile = renderTile(tx, ty);
+                    tiles.put(key, tile);
+                }
+                g2d.drawImage(tile, tx * TILE_SIZE, ty * TILE_SIZE, TILE_SIZE, TILE_SIZE, null);
+            }
+        }
+        if (tiles.size() > MAX_TILES) {
+            evictTiles();
+        }
+    }
+    
+    private java.awt.image.BufferedImage renderTile(int tx, int ty) {
+        int pixels = (int) Math.ceil(TILE_SIZE * tileScale);
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        java.awt.image.BufferedImage tile = config != null
+            ? config.createCompatibleImage(pixels, pixels)
+            : new java.awt.image.BufferedImage(pixels, pixels, java.awt.image.BufferedImage.TYPE_INT_RGB);
+        Graphics2D tg = tile.createGraphics();
+        tg.setColor(getBackground());
+        tg.fillRect(0, 0, pixels, pixels);
+        tg.scale(tileScale, tileScale);
+        tg.translate(-tx * TILE_SIZE, -ty * TILE_SIZE);
+        Rectangle area = new Rectangle(tx * TILE_SIZE, ty * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+        tg.setClip(area);
+        tg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        paintNodes(tg, area, liveNode);
+        tg.dispose();
+        return tile;
+    }
+    
+    // Keep the tiles covering the canvas; anything beyond it is rebuilt if it ever comes into view
+    private void evictTiles() {
+        Rectangle visible = new Rectangle(0, 0, getWidth(), getHeight());
+        Rectangle tileArea = new Rectangle();
+        Iterator<Long> it = tiles.keySet().iterator();
+        while (it.hasNext()) {
+            long key = it.next();
+            tileArea.setBounds((int) (key >> 32) * TILE_SIZE, (int) key * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+            if (!tileArea.intersects(visible)) {
+                it.remove();
             }
         }
-        
-        for (MindMapNode node : nodes) {
-            node.draw(g2d, node == selectedNode);
-        }
     }
 }
 
 // Mind Map Node
 class MindMapNode {
+    long uid;
     String text;
     int x, y;
     int width = 120;
     int height = 60;
+    boolean dirty;
+    int seq;    // position in the canvas' node order, kept by MindMapCanvas
     
+    // Tree structure: parentUid is what gets stored (0 for the root), parent/children are
+    // linked up by MindMapCanvas once the whole map is loaded
+    long parentUid;
+    MindMapNode parent;
+    final ArrayList<MindMapNode> children = new ArrayList<>();
+    
+    // Shared by every node so painting allocates nothing
+    static final Font TEXT_FONT = new Font("Georgia", Font.BOLD, 12);
+    static final Color SHADOW_COLOR = new Color(0, 0, 0, 30);
+    static final BasicStroke EDGE_STROKE = new BasicStroke(2);
+    static final BasicStroke BORDER_STROKE = new BasicStroke(2);
+    static final BasicStroke SELECTED_BORDER_STROKE = new BasicStroke(3);
+    
+    // Wrapped lines of `text`, rebuilt only when the text or width changes (text is compared by identity)
+    private String layoutText;
+    private int layoutWidth;
+    private String[] lines;
+    private int[] lineX;
+    private int[] lineY;
+    
+    // New node: gets a fresh stable ID and is written on the next save
     public MindMapNode(String text, int x, int y) {
+        this(ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE), text, x, y);
+        this.dirty = true;
+    }
+    
+    // Node as stored in the database
+    public MindMapNode(long uid, String text, int x, int y) {
+        this.uid = uid;
         this.text = text;
         this.x = x;
         this.y = y;
     }
     
+    public MindMapNode copy() {
+        MindMapNode copy = new MindMapNode(uid, text, x, y);
+        copy.width = width;
+        copy.height = height;
+        copy.parentUid = parentUid;
+        return copy;
+    }
+    
     public boolean contains(Point p) {
         return p.x >= x && p.x <= x + width && p.y >= y && p.y <= y + height;
     }
     
     public void draw(Graphics2D g, boolean selected) {
-        g.setColor(new Color(0, 0, 0, 30));
+        g.setColor(SHADOW_COLOR);
         g.fillRoundRect(x + 3, y + 3, width, height, 15, 15);
         
         g.setColor(selected ? ColorPalette.PALE_ROSE : ColorPalette.SOFT_PINK);
         g.fillRoundRect(x, y, width, height, 15, 15);
         
         g.setColor(selected ? ColorPalette.MEDIUM_PURPLE : ColorPalette.LAVENDER);
-        g.setStroke(new BasicStroke(selected ? 3 : 2));
+        g.setStroke(selected ? SELECTED_BORDER_STROKE : BORDER_STROKE);
         g.drawRoundRect(x, y, width, height, 15, 15);
         
         g.setColor(ColorPalette.TEXT_DARK);
-        g.setFont(new Font("Georgia", Font.BOLD, 12));
-        FontMetrics fm = g.getFontMetrics();
-        
+        g.setFont(TEXT_FONT);
+        if (layoutText != text || layoutWidth != width) {
+            layoutText(g.getFontMetrics());
+        }
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], x + lineX[i], y + lineY[i]);
+        }
+    }
+    
+    // Word-wrap the text once and keep each line's offset inside the node
+    private void layoutText(FontMetrics fm) {
         String[] words = text.split(" ");
-        ArrayList<String> lines = new ArrayList<>();
+        ArrayList<String> wrapped = new ArrayList<>();
         String currentLine = "";
         
         for (String word : words) {
             String testLine = currentLine.isEmpty() ? word : currentLine + " " + word;
             if (fm.stringWidth(testLine) > width - 20) {
                 if (!currentLine.isEmpty()) {
-                    lines.add(currentLine);
+                    wrapped.add(currentLine);
                 }
                 currentLine = word;
             } else {
@@ -1234,29 +7690,818 @@ class MindMapNode {
             }
         }
         if (!currentLine.isEmpty()) {
-            lines.add(currentLine);
+            wrapped.add(currentLine);
         }
         
         int lineHeight = fm.getHeight();
-        int totalHeight = lines.size() * lineHeight;
-        int startY = y + (height - totalHeight) / 2 + fm.getAscent();
+        int totalHeight = wrapped.size() * lineHeight;
+        int startY = (height - totalHeight) / 2 + fm.getAscent();
+        
+        lines = wrapped.toArray(new String[0]);
+        lineX = new int[lines.length];
+        lineY = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            lineX[i] = (width - fm.stringWidth(lines[i])) / 2;
+            lineY[i] = startY + i * lineHeight;
+        }
+        layoutText = text;
+        layoutWidth = width;
+    }
+}
+
+// Mind Map Codec - Compact, versioned binary form of a whole mind map, stored as one blob.
+//
+//   int    magic "CYMM"
+//   byte   format version (1)
+//   byte   flags: 1 = the rest is Deflate-compressed
+//   varint string count, then each distinct node text as varint length + UTF-8 bytes
+//   varint node count, then per node in load order:
+//          long uid, zigzag varint x and y as deltas from the previous node,
+//          varint index into the string table, zigzag varint (own index - parent index), 0 for no parent
+//
+// Text repeats a lot in real maps and neighbouring nodes sit close together, so most nodes
+// come to around a dozen bytes before compression, of which 8 are the uid.
+//
+// A diff save is a separate, uncompressed change record:
+//
+//   byte   change format version (1)
+//   varint deleted count, then each deleted uid as a long
+//   varint node count, then per changed node:
+//          long uid, zigzag varint x and y, varint length + UTF-8 text, long parent uid (0 for none)
+//
+// Parents are written as uids because they are usually not among the changed nodes.
+class MindMapCodec {
+    private static final int MAGIC = 0x43594D4D; // "CYMM"
+    private static final int VERSION = 1;
+    private static final int FLAG_DEFLATE = 1;
+    // Below this the Deflate header costs more than it saves
+    private static final int COMPRESS_MIN_NODES = 16;
+    private static final int CHANGES_VERSION = 1;
+    
+    public static byte[] encode(ArrayList<MindMapNode> nodes) {
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream(64 + nodes.size() * 12);
+        try {
+            encode(nodes, bytes);
+        } catch (IOException e) {
+            // Memory streams do not fail
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    public static void encode(ArrayList<MindMapNode> nodes, java.io.OutputStream target) throws IOException {
+        boolean compress = nodes.size() >= COMPRESS_MIN_NODES;
+        DataOutputStream header = new DataOutputStream(target);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte(compress ? FLAG_DEFLATE : 0);
+        if (!compress) {
+            writeBody(nodes, new DataOutputStream(new BufferedOutputStream(target, 1 << 13)));
+            return;
+        }
+        java.util.zip.Deflater deflater = new java.util.zip.Deflater(java.util.zip.Deflater.BEST_SPEED);
+        try {
+            java.util.zip.DeflaterOutputStream compressed = new java.util.zip.DeflaterOutputStream(target, deflater, 1 << 13);
+            writeBody(nodes, new DataOutputStream(new BufferedOutputStream(compressed, 1 << 13)));
+            compressed.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    private static void writeBody(ArrayList<MindMapNode> nodes, DataOutputStream out) throws IOException {
+        HashMap<String, Integer> stringIds = new HashMap<>();
+        ArrayList<String> strings = new ArrayList<>();
+        HashMap<Long, Integer> indexOfUid = new HashMap<>(nodes.size() * 2);
+        for (int i = 0; i < nodes.size(); i++) {
+            MindMapNode node = nodes.get(i);
+            String text = node.text != null ? node.text : "";
+            if (!stringIds.containsKey(text)) {
+                stringIds.put(text, strings.size());
+                strings.add(text);
+            }
+            indexOfUid.put(node.uid, i);
+        }
+        writeVarint(out, strings.size());
+        for (String text : strings) {
+            byte[] utf8 = text.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            writeVarint(out, utf8.length);
+            out.write(utf8);
+        }
+        
+        writeVarint(out, nodes.size());
+        int previousX = 0;
+        int previousY = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            MindMapNode node = nodes.get(i);
+            out.writeLong(node.uid);
+            writeVarint(out, zigzag(node.x - previousX));
+            writeVarint(out, zigzag(node.y - previousY));
+            previousX = node.x;
+            previousY = node.y;
+            writeVarint(out, stringIds.get(node.text != null ? node.text : ""));
+            // A parent that is not in the map is dropped; the canvas hangs such nodes off the root
+            Integer parentIndex = node.parentUid != 0 ? indexOfUid.get(node.parentUid) : null;
+            writeVarint(out, parentIndex != null ? zigzag(i - parentIndex) : 0);
+        }
+        out.flush();
+    }
+    
+    public static ArrayList<MindMapNode> decode(java.io.InputStream source) throws IOException {
+        DataInputStream header = new DataInputStream(source);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("Not a mind map");
+        }
+        int version = header.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported mind map format version " + version);
+        }
+        int flags = header.readUnsignedByte();
+        if ((flags & FLAG_DEFLATE) == 0) {
+            return readBody(new DataInputStream(new java.io.BufferedInputStream(source, 1 << 13)));
+        }
+        java.util.zip.Inflater inflater = new java.util.zip.Inflater();
+        try {
+            return readBody(new DataInputStream(new java.io.BufferedInputStream(
+                new java.util.zip.InflaterInputStream(source, inflater, 1 << 13), 1 << 13)));
+        } finally {
+            inflater.end();
+        }
+    }
+    
+    private static ArrayList<MindMapNode> readBody(DataInputStream in) throws IOException {
+        String[] strings = new String[readCount(in)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] utf8 = new byte[readCount(in)];
+            in.readFully(utf8);
+            strings[i] = new String(utf8, java.nio.charset.StandardCharsets.UTF_8);
+        }
+        
+        int count = readCount(in);
+        ArrayList<MindMapNode> nodes = new ArrayList<>(count);
+        int[] parentIndex = new int[count];
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < count; i++) {
+            long uid = in.readLong();
+            x += unzigzag(readVarint(in));
+            y += unzigzag(readVarint(in));
+            int text = readVarint(in);
+            if (text < 0 || text >= strings.length) {
+                throw new IOException("Bad text reference " + text);
+            }
+            int parentDelta = unzigzag(readVarint(in));
+            parentIndex[i] = parentDelta != 0 ? i - parentDelta : -1;
+            nodes.add(new MindMapNode(uid, strings[text], x, y));
+        }
+        for (int i = 0; i < count; i++) {
+            int p = parentIndex[i];
+            if (p >= 0 && p < count) {
+                nodes.get(i).parentUid = nodes.get(p).uid;
+            }
+        }
+        return nodes;
+    }
+    
+    public static byte[] encodeChanges(ArrayList<MindMapNode> changedNodes, ArrayList<Long> deletedNodeIds) {
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream(16 + deletedNodeIds.size() * 8 + changedNodes.size() * 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(CHANGES_VERSION);
+            writeVarint(out, deletedNodeIds.size());
+            for (Long uid : deletedNodeIds) {
+                out.writeLong(uid);
+            }
+            writeVarint(out, changedNodes.size());
+            for (MindMapNode node : changedNodes) {
+                out.writeLong(node.uid);
+                writeVarint(out, zigzag(node.x));
+                writeVarint(out, zigzag(node.y));
+                byte[] utf8 = (node.text != null ? node.text : "").getBytes(java.nio.charset.StandardCharsets.UTF_8);
+                writeVarint(out, utf8.length);
+                out.write(utf8);
+                out.writeLong(node.parentUid);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Memory streams do not fail
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    // The stored map with its change records applied oldest first, in one pass. Each record drops its
+    // deleted nodes, replaces changed nodes in place (as ON DUPLICATE KEY UPDATE would) and appends new ones.
+    public static ArrayList<MindMapNode> applyChangeRecords(ArrayList<MindMapNode> stored, ArrayList<byte[]> records) throws IOException {
+        if (records.isEmpty()) {
+            return stored;
+        }
+        LinkedHashMap<Long, MindMapNode> byUid = new LinkedHashMap<>();
+        for (MindMapNode node : stored) {
+            byUid.put(node.uid, node);
+        }
+        for (byte[] record : records) {
+            DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(record));
+            int version = in.readUnsignedByte();
+            if (version != CHANGES_VERSION) {
+                throw new IOException("Unsupported mind map change format version " + version);
+            }
+            for (int i = readCount(in); i > 0; i--) {
+                byUid.remove(in.readLong());
+            }
+            for (int i = readCount(in); i > 0; i--) {
+                long uid = in.readLong();
+                int x = unzigzag(readVarint(in));
+                int y = unzigzag(readVarint(in));
+                byte[] utf8 = new byte[readCount(in)];
+                in.readFully(utf8);
+                MindMapNode node = new MindMapNode(uid, new String(utf8, java.nio.charset.StandardCharsets.UTF_8), x, y);
+                node.parentUid = in.readLong();
+                byUid.put(uid, node);
+            }
+        }
+        return new ArrayList<>(byUid.values());
+    }
+    
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+    
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    // Counts size arrays up front, so a corrupt one must not ask for gigabytes
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = readVarint(in);
+        if (count < 0 || count > 1 << 24) {
+            throw new IOException("Bad count " + count);
+        }
+        return count;
+    }
+    
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+    
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
+
+// Mind Map Layout - Force-directed layout (Fruchterman-Reingold) for a mind map tree, run on a
+// background thread. Repulsion only looks at the neighbouring cells of a uniform grid (found by
+// binary search over the sorted cell keys), and a crowded cell acts as one body at its centre of
+// mass, Barnes-Hut style, so a pass stays O(n log n) even when everything starts piled up.
+// Positions are streamed to the listener on the EDT every few passes while the layout cools down.
+class MindMapLayout {
+    interface Listener {
+        void positionsUpdated(int[] xs, int[] ys, boolean finished);
+    }
+    
+    static final int EDGE_LENGTH = 170;
+    private static final double CUTOFF = 2.0 * EDGE_LENGTH;
+    private static final int MAX_ITERATIONS = 300;
+    private static final int PUBLISH_EVERY = 5;
+    private static final double COOLING = 0.95;
+    private static final double SETTLED = 0.5;
+    private static final int CROWDED_CELL = 16;
+    private static final int INDEX_BITS = 23;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+    
+    // One layout at a time; a new one cancels the old, so a single thread is enough
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "mindmap-layout");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    private final double[] x;
+    private final double[] y;
+    private final int[] parent;
+    private final boolean[] pinned;
+    private final Listener listener;
+    private double temperature;
+    private volatile boolean cancelled;
+    private final AtomicBoolean publishPending = new AtomicBoolean();
+    
+    // Per-pass scratch, reused across passes: node keys sorted by cell, then one entry per occupied cell
+    private final double[] dx;
+    private final double[] dy;
+    private final long[] keys;
+    private final long[] cellKeys;
+    private final int[] cellStart;
+    private final int[] cellCount;
+    private final double[] cellX;
+    private final double[] cellY;
+    private int cellTotal;
+    
+    // Positions are node centres; nodes with parent -1 have no edge, pinned nodes never move
+    MindMapLayout(int[] xs, int[] ys, int[] parent, boolean[] pinned, boolean incremental, Listener listener) {
+        int n = xs.length;
+        if (n > INDEX_MASK) {
+            throw new IllegalArgumentException("Too many nodes to lay out: " + n);
+        }
+        this.x = new double[n];
+        this.y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = xs[i];
+            y[i] = ys[i];
+        }
+        this.parent = parent;
+        this.pinned = pinned;
+        this.listener = listener;
+        this.temperature = incremental ? EDGE_LENGTH / 4.0 : EDGE_LENGTH;
+        this.dx = new double[n];
+        this.dy = new double[n];
+        this.keys = new long[n];
+        this.cellKeys = new long[n];
+        this.cellStart = new int[n];
+        this.cellCount = new int[n];
+        this.cellX = new double[n];
+        this.cellY = new double[n];
+    }
+    
+    void start() {
+        worker.execute(() -> {
+            try {
+                run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+    
+    // Checked on both threads: a cancelled layout never touches the canvas again
+    void cancel() {
+        cancelled = true;
+    }
+    
+    // Runs to completion on the calling thread; returns the number of passes made
+    int run() {
+        int iteration = 0;
+        while (iteration < MAX_ITERATIONS && !cancelled) {
+            double moved = step();
+            iteration++;
+            if (moved < SETTLED) {
+                break;
+            }
+            if (iteration % PUBLISH_EVERY == 0 && publishPending.compareAndSet(false, true)) {
+                publish(false);
+            }
+        }
+        if (!cancelled) {
+            publish(true);
+        }
+        return iteration;
+    }
+    
+    // One cooling pass; returns the largest distance any node moved
+    double step() {
+        int n = x.length;
+        for (int i = 0; i < n; i++) {
+            dx[i] = 0;
+            dy[i] = 0;
+            keys[i] = (cellKey(cell(x[i]), cell(y[i])) << INDEX_BITS) | i;
+        }
+        java.util.Arrays.sort(keys);
+        buildCells();
+        
+        double k = EDGE_LENGTH;
+        double k2 = k * k;
+        for (int i = 0; i < n; i++) {
+            int cx = cell(x[i]);
+            int cy = cell(y[i]);
+            for (int ox = -1; ox <= 1; ox++) {
+                for (int oy = -1; oy <= 1; oy++) {
+                    int c = findCell(cellKey(cx + ox, cy + oy));
+                    if (c < 0) {
+                        continue;
+                    }
+                    int count = cellCount[c];
+                    if (count > CROWDED_CELL) {
+                        // Far enough apart on average that the cell's centre of mass will do
+                        double mx = cellX[c] * count;
+                        double my = cellY[c] * count;
+                        if (ox == 0 && oy == 0) {
+                            mx -= x[i];
+                            my -= y[i];
+                            count--;
+                        }
+                        repel(i, -1, mx / count, my / count, count * k2);
+                        continue;
+                    }
+                    int end = cellStart[c] + count;
+                    for (int p = cellStart[c]; p < end; p++) {
+                        int j = (int) (keys[p] & INDEX_MASK);
+                        if (j != i) {
+                            repel(i, j, x[j], y[j], k2);
+                        }
+                    }
+                }
+            }
+        }
+        
+        for (int i = 0; i < n; i++) {
+            int p = parent[i];
+            if (p < 0) {
+                continue;
+            }
+            double ddx = x[i] - x[p];
+            double ddy = y[i] - y[p];
+            double d = Math.sqrt(ddx * ddx + ddy * ddy);
+            double force = d / k;
+            dx[i] -= ddx * force;
+            dy[i] -= ddy * force;
+            dx[p] += ddx * force;
+            dy[p] += ddy * force;
+        }
         
-        for (String line : lines) {
-            int lineWidth = fm.stringWidth(line);
-            int lineX = x + (width - lineWidth) / 2;
-            g.drawString(line, lineX, startY);
-            startY += lineHeight;
+        double maxMove = 0;
+        for (int i = 0; i < n; i++) {
+            if (pinned[i]) {
+                continue;
+            }
+            double length = Math.sqrt(dx[i] * dx[i] + dy[i] * dy[i]);
+            if (length == 0) {
+                continue;
+            }
+            double move = Math.min(length, temperature);
+            x[i] += dx[i] / length * move;
+            y[i] += dy[i] / length * move;
+            maxMove = Math.max(maxMove, move);
+        }
+        temperature *= COOLING;
+        return maxMove;
+    }
+    
+    // Pushes node i away from a body at (bx, by); j (or -1 for a cell) only picks a direction for stacked nodes
+    private void repel(int i, int j, double bx, double by, double strength) {
+        double ddx = x[i] - bx;
+        double ddy = y[i] - by;
+        double d2 = ddx * ddx + ddy * ddy;
+        if (d2 < 0.01) {
+            ddx = (i < j ? 1 : -1) * (1 + (j & 7));
+            ddy = (i < j ? 1 : -1) * (1 + (i & 3));
+            d2 = ddx * ddx + ddy * ddy;
+        }
+        if (d2 < CUTOFF * CUTOFF) {
+            double force = strength / d2;
+            dx[i] += ddx * force;
+            dy[i] += ddy * force;
+        }
+    }
+    
+    // Groups the sorted keys into cells and works out each cell's centre of mass
+    private void buildCells() {
+        cellTotal = 0;
+        for (int p = 0; p < keys.length; p++) {
+            long key = keys[p] >>> INDEX_BITS;
+            int i = (int) (keys[p] & INDEX_MASK);
+            if (cellTotal == 0 || cellKeys[cellTotal - 1] != key) {
+                cellKeys[cellTotal] = key;
+                cellStart[cellTotal] = p;
+                cellCount[cellTotal] = 0;
+                cellX[cellTotal] = 0;
+                cellY[cellTotal] = 0;
+                cellTotal++;
+            }
+            int c = cellTotal - 1;
+            cellCount[c]++;
+            cellX[c] += x[i];
+            cellY[c] += y[i];
+        }
+        for (int c = 0; c < cellTotal; c++) {
+            cellX[c] /= cellCount[c];
+            cellY[c] /= cellCount[c];
+        }
+    }
+    
+    private int findCell(long key) {
+        int lo = 0;
+        int hi = cellTotal - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cellKeys[mid] < key) {
+                lo = mid + 1;
+            } else if (cellKeys[mid] > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
         }
+        return -1;
+    }
+    
+    private static int cell(double v) {
+        return (int) Math.floor(v / CUTOFF);
+    }
+    
+    // 20 bits per axis; cells a million apart share a key, which only costs a few distance checks
+    private static long cellKey(int cx, int cy) {
+        return ((long) (cx & 0xFFFFF) << 20) | (cy & 0xFFFFF);
+    }
+    
+    int positionX(int i) {
+        return (int) Math.round(x[i]);
+    }
+    
+    int positionY(int i) {
+        return (int) Math.round(y[i]);
+    }
+    
+    private void publish(boolean finished) {
+        int n = x.length;
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = positionX(i);
+            ys[i] = positionY(i);
+        }
+        SwingUtilities.invokeLater(() -> {
+            publishPending.set(false);
+            if (!cancelled) {
+                listener.positionsUpdated(xs, ys, finished);
+            }
+        });
+    }
+}
+
+// Node Grid - Uniform grid over mind map node bounds, used for hit-testing and paint culling.
+// Each node is filed under the cell holding its top-left corner, so moving a node touches at most
+// two cells; lookups widen the search area by the largest node size to catch nodes reaching in.
+// The edge from each node to its parent is filed separately, under every cell its bounding box
+// covers. Edges whose box spans more than LONG_EDGE_CELLS cells (a root with children all over the
+// map) are kept in one list instead and checked on every query.
+class NodeGrid {
+    private static final int CELL_SIZE = 128;
+    private static final int LONG_EDGE_CELLS = 256;
+    
+    private final HashMap<Long, ArrayList<MindMapNode>> cells = new HashMap<>();
+    private final HashMap<MindMapNode, Long> cellOf = new HashMap<>();
+    private int maxWidth = 0;
+    private int maxHeight = 0;
+    
+    // Edges are keyed by their child node; the span is {cx0, cy0, cx1, cy1} of the cells filed under
+    private final HashMap<Long, ArrayList<MindMapNode>> edgeCells = new HashMap<>();
+    private final HashMap<MindMapNode, int[]> edgeSpan = new HashMap<>();
+    private final java.util.LinkedHashSet<MindMapNode> longEdges = new java.util.LinkedHashSet<>();
+    
+    public void clear() {
+        cells.clear();
+        cellOf.clear();
+        edgeCells.clear();
+        edgeSpan.clear();
+        longEdges.clear();
+    }
+    
+    public int size() {
+        return cellOf.size();
+    }
+    
+    public void add(MindMapNode node) {
+        long key = cellKey(node.x, node.y);
+        cells.computeIfAbsent(key, k -> new ArrayList<>()).add(node);
+        cellOf.put(node, key);
+        maxWidth = Math.max(maxWidth, node.width);
+        maxHeight = Math.max(maxHeight, node.height);
+        updateEdge(node);
+    }
+    
+    public void remove(MindMapNode node) {
+        Long key = cellOf.remove(node);
+        if (key != null) {
+            ArrayList<MindMapNode> cell = cells.get(key);
+            cell.remove(node);
+            if (cell.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+        int[] span = edgeSpan.remove(node);
+        if (span != null) {
+            unfileEdge(node, span);
+        }
+    }
+    
+    // Call after a node's position or size changed; its own edge and its children's move with it
+    public void update(MindMapNode node) {
+        Long key = cellOf.get(node);
+        if (key == null || key != cellKey(node.x, node.y) || node.width > maxWidth || node.height > maxHeight) {
+            remove(node);
+            add(node);
+        } else {
+            updateEdge(node);
+        }
+        for (int i = 0; i < node.children.size(); i++) {
+            updateEdge(node.children.get(i));
+        }
+    }
+    
+    // Call after a node's parent changed
+    public void updateEdge(MindMapNode node) {
+        int[] span = edgeSpan.get(node);
+        if (node.parent == null || !cellOf.containsKey(node)) {
+            if (span != null) {
+                edgeSpan.remove(node);
+                unfileEdge(node, span);
+            }
+            return;
+        }
+        // Edges run between node centres, as MindMapCanvas draws them
+        int px = node.parent.x + 60;
+        int py = node.parent.y + 30;
+        int nx = node.x + 60;
+        int ny = node.y + 30;
+        int cx0 = Math.floorDiv(Math.min(px, nx), CELL_SIZE);
+        int cy0 = Math.floorDiv(Math.min(py, ny), CELL_SIZE);
+        int cx1 = Math.floorDiv(Math.max(px, nx), CELL_SIZE);
+        int cy1 = Math.floorDiv(Math.max(py, ny), CELL_SIZE);
+        if (span != null) {
+            if (span[0] == cx0 && span[1] == cy0 && span[2] == cx1 && span[3] == cy1) {
+                return;
+            }
+            unfileEdge(node, span);
+        } else {
+            span = new int[4];
+            edgeSpan.put(node, span);
+        }
+        span[0] = cx0;
+        span[1] = cy0;
+        span[2] = cx1;
+        span[3] = cy1;
+        if (isLong(span)) {
+            longEdges.add(node);
+            return;
+        }
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                edgeCells.computeIfAbsent(key(cx, cy), k -> new ArrayList<>()).add(node);
+            }
+        }
+    }
+    
+    private void unfileEdge(MindMapNode node, int[] span) {
+        if (isLong(span)) {
+            longEdges.remove(node);
+            return;
+        }
+        for (int cx = span[0]; cx <= span[2]; cx++) {
+            for (int cy = span[1]; cy <= span[3]; cy++) {
+                long key = key(cx, cy);
+                ArrayList<MindMapNode> cell = edgeCells.get(key);
+                cell.remove(node);
+                if (cell.isEmpty()) {
+                    edgeCells.remove(key);
+                }
+            }
+        }
+    }
+    
+    private static boolean isLong(int[] span) {
+        return (long) (span[2] - span[0] + 1) * (span[3] - span[1] + 1) > LONG_EDGE_CELLS;
+    }
+    
+    // The node under the point that comes first in the canvas' node order, or null
+    public MindMapNode nodeAt(Point p) {
+        MindMapNode hit = null;
+        int cx0 = Math.floorDiv(p.x - maxWidth, CELL_SIZE);
+        int cy0 = Math.floorDiv(p.y - maxHeight, CELL_SIZE);
+        int cx1 = Math.floorDiv(p.x, CELL_SIZE);
+        int cy1 = Math.floorDiv(p.y, CELL_SIZE);
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                ArrayList<MindMapNode> cell = cells.get(key(cx, cy));
+                if (cell != null) {
+                    for (MindMapNode node : cell) {
+                        if (node.contains(p) && (hit == null || node.seq < hit.seq)) {
+                            hit = node;
+                        }
+                    }
+                }
+            }
+        }
+        return hit;
+    }
+    
+    private static final java.util.Comparator<MindMapNode> BY_SEQ = (a, b) -> Integer.compare(a.seq, b.seq);
+    
+    // Nodes whose bounds intersect the area, in the canvas' node (painting) order
+    public ArrayList<MindMapNode> query(Rectangle area) {
+        ArrayList<MindMapNode> found = new ArrayList<>();
+        query(area, found);
+        return found;
+    }
+    
+    // Same, appending to a list the caller reuses between paints
+    public void query(Rectangle area, ArrayList<MindMapNode> found) {
+        int cx0 = Math.floorDiv(area.x - maxWidth, CELL_SIZE);
+        int cy0 = Math.floorDiv(area.y - maxHeight, CELL_SIZE);
+        int cx1 = Math.floorDiv(area.x + area.width, CELL_SIZE);
+        int cy1 = Math.floorDiv(area.y + area.height, CELL_SIZE);
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > cells.size()) {
+            // Area covers more cells than are occupied: walk the occupied ones instead
+            cells.forEach((key, cell) -> collect(cell, area, found));
+        } else {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                for (int cy = cy0; cy <= cy1; cy++) {
+                    ArrayList<MindMapNode> cell = cells.get(key(cx, cy));
+                    if (cell != null) {
+                        collect(cell, area, found);
+                    }
+                }
+            }
+        }
+        found.sort(BY_SEQ);
+    }
+    
+    // Nodes whose edge to their parent may cross the area (its bounding box does), in node order.
+    // An edge is filed under many cells, so it is only reported from the first of them the query visits.
+    public void queryEdges(Rectangle area, ArrayList<MindMapNode> found) {
+        int cx0 = Math.floorDiv(area.x, CELL_SIZE);
+        int cy0 = Math.floorDiv(area.y, CELL_SIZE);
+        int cx1 = Math.floorDiv(area.x + area.width, CELL_SIZE);
+        int cy1 = Math.floorDiv(area.y + area.height, CELL_SIZE);
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > edgeCells.size()) {
+            edgeCells.forEach((key, cell) -> collectEdges(cell, (int) (key >> 32), (int) (long) key, cx0, cy0, cx1, cy1, found));
+        } else {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                for (int cy = cy0; cy <= cy1; cy++) {
+                    ArrayList<MindMapNode> cell = edgeCells.get(key(cx, cy));
+                    if (cell != null) {
+                        collectEdges(cell, cx, cy, cx0, cy0, cx1, cy1, found);
+                    }
+                }
+            }
+        }
+        // Long edges are tested on their coordinates; looking up their spans would cost more
+        int right = area.x + area.width;
+        int bottom = area.y + area.height;
+        for (MindMapNode node : longEdges) {
+            int px = node.parent.x + 60;
+            int py = node.parent.y + 30;
+            int nx = node.x + 60;
+            int ny = node.y + 30;
+            if (Math.min(px, nx) <= right && Math.max(px, nx) >= area.x && Math.min(py, ny) <= bottom && Math.max(py, ny) >= area.y) {
+                found.add(node);
+            }
+        }
+        found.sort(BY_SEQ);
+    }
+    
+    private void collectEdges(ArrayList<MindMapNode> cell, int cx, int cy, int cx0, int cy0, int cx1, int cy1,
+                              ArrayList<MindMapNode> found) {
+        if (cx < cx0 || cx > cx1 || cy < cy0 || cy > cy1) {
+            return;
+        }
+        for (int i = 0; i < cell.size(); i++) {
+            MindMapNode node = cell.get(i);
+            int[] span = edgeSpan.get(node);
+            if (cx == Math.max(span[0], cx0) && cy == Math.max(span[1], cy0)) {
+                found.add(node);
+            }
+        }
+    }
+    
+    private static void collect(ArrayList<MindMapNode> cell, Rectangle area, ArrayList<MindMapNode> found) {
+        for (int i = 0; i < cell.size(); i++) {
+            MindMapNode node = cell.get(i);
+            if (node.x < area.x + area.width && node.x + node.width > area.x
+                && node.y < area.y + area.height && node.y + node.height > area.y) {
+                found.add(node);
+            }
+        }
+    }
+    
+    private static long cellKey(int x, int y) {
+        return key(Math.floorDiv(x, CELL_SIZE), Math.floorDiv(y, CELL_SIZE));
+    }
+    
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
     }
 }
 
 // Productivity Panel (same as before)
+@SuppressWarnings("serial")
 class ProductivityPanel extends JPanel {
     private JLabel timerLabel;
     private javax.swing.Timer timer;
     private int secondsLeft = 1500;
     private boolean isRunning = false;
     private DefaultTableModel taskTableModel;
+    private JLabel taskHeading;
     
     public ProductivityPanel() {
         setLayout(new BorderLayout(20, 20));
@@ -1386,17 +8631,19 @@ class ProductivityPanel extends JPanel {
             BorderFactory.createLineBorder(ColorPalette.LAVENDER, 2),
             new EmptyBorder(30, 30, 30, 30)));
         
-        JLabel heading = new JLabel("Task Checklist");
-        heading.setFont(new Font("Georgia", Font.BOLD, 24));
-        heading.setForeground(ColorPalette.TEXT_DARK);
-        panel.add(heading, BorderLayout.NORTH);
+        taskHeading = new JLabel("Task Checklist");
+        taskHeading.setFont(new Font("Georgia", Font.BOLD, 24));
+        taskHeading.setForeground(ColorPalette.TEXT_DARK);
+        panel.add(taskHeading, BorderLayout.NORTH);
         
-        String[] columns = {"Task", "Status"};
+        // The ID column stays in the model so updates can target the row by primary key
+        String[] columns = {"ID", "Task", "Status"};
         taskTableModel = new DefaultTableModel(columns, 0);
         
         loadTasksFromDatabase();
         
         JTable taskTable = new JTable(taskTableModel);
+        taskTable.removeColumn(taskTable.getColumnModel().getColumn(0));
         taskTable.setFont(new Font("Georgia", Font.PLAIN, 15));
         taskTable.setRowHeight(35);
         taskTable.setBackground(Color.WHITE);
@@ -1420,25 +8667,28 @@ class ProductivityPanel extends JPanel {
         addBtn.addActionListener(e -> {
             String task = JOptionPane.showInputDialog(this, "Enter new task:");
             if (task != null && !task.trim().isEmpty()) {
-                DatabaseManager.addTask(task);
-                taskTableModel.addRow(new Object[]{task, "Pending"});
+                AsyncDatabase.load(() -> DatabaseManager.addTask(task), id -> {
+                    if (id >= 0) {
+                        taskTableModel.addRow(new Object[]{id, task, "Pending"});
+                    }
+                });
             }
         });
         
         completeBtn.addActionListener(e -> {
             int row = taskTable.getSelectedRow();
             if (row >= 0) {
-                String taskName = (String) taskTableModel.getValueAt(row, 0);
-                DatabaseManager.updateTaskStatus(taskName, "Completed");
-                taskTableModel.setValueAt("Completed", row, 1);
+                int taskId = (int) taskTableModel.getValueAt(row, 0);
+                AsyncDatabase.run(() -> DatabaseManager.updateTaskStatus(taskId, "Completed"));
+                taskTableModel.setValueAt("Completed", row, 2);
             }
         });
         
         deleteBtn.addActionListener(e -> {
             int row = taskTable.getSelectedRow();
             if (row >= 0) {
-                String taskName = (String) taskTableModel.getValueAt(row, 0);
-                DatabaseManager.deleteTask(taskName);
+                int taskId = (int) taskTableModel.getValueAt(row, 0);
+                AsyncDatabase.run(() -> DatabaseManager.deleteTask(taskId));
                 taskTableModel.removeRow(row);
             }
         });
@@ -1453,10 +8703,13 @@ class ProductivityPanel extends JPanel {
     }
     
     private void loadTasksFromDatabase() {
-        ArrayList<Object[]> tasks = DatabaseManager.getAllTasks();
-        for (Object[] task : tasks) {
-            taskTableModel.addRow(task);
-        }
+        taskHeading.setText("Task Checklist (loading...)");
+        AsyncDatabase.load(DatabaseManager::getAllTasks, tasks -> {
+            for (Object[] task : tasks) {
+                taskTableModel.addRow(task);
+            }
+            taskHeading.setText("Task Checklist");
+        });
     }
     
     private JButton createTaskButton(String text) {
@@ -1473,7 +8726,72 @@ class ProductivityPanel extends JPanel {
     }
 }
 
+// Journal History List Model - Loads journal previews a page at a time as the list is scrolled
+@SuppressWarnings("serial")
+class JournalHistoryListModel extends AbstractListModel<String> {
+    private static final int PAGE_SIZE = 50;
+    private static final int PREFETCH_ROWS = 10;
+    
+    // Each row is {id, entry_date, preview}
+    private final ArrayList<Object[]> rows = new ArrayList<>();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd, yyyy");
+    private boolean hasMore = true;
+    private boolean loading = false;
+    
+    // One extra row at the end shows the loading / empty message
+    @Override
+    public int getSize() {
+        return rows.size() + (hasMore || rows.isEmpty() ? 1 : 0);
+    }
+    
+    @Override
+    public String getElementAt(int index) {
+        if (index >= rows.size()) {
+            return hasMore ? "Loading entries..." : "No journal entries yet. Start writing!";
+        }
+        Object[] row = rows.get(index);
+        return dateFormat.format((Date) row[1]) + " - " + row[2];
+    }
+    
+    public Object[] getEntry(int index) {
+        return index >= 0 && index < rows.size() ? rows.get(index) : null;
+    }
+    
+    // Fetch the next page once the last visible row gets close to the end of what is loaded
+    public void ensureLoaded(int lastVisibleIndex) {
+        if (hasMore && !loading && lastVisibleIndex >= rows.size() - PREFETCH_ROWS) {
+            loadNextPage();
+        }
+    }
+    
+    private void loadNextPage() {
+        loading = true;
+        Object[] last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        java.sql.Date afterDate = last == null ? null : (java.sql.Date) last[1];
+        int afterId = last == null ? 0 : (int) last[0];
+        
+        AsyncDatabase.load(() -> DatabaseManager.getJournalEntryPage(afterDate, afterId, PAGE_SIZE), page -> {
+            int oldRowCount = rows.size();
+            int oldSize = getSize();
+            rows.addAll(page);
+            hasMore = page.size() == PAGE_SIZE;
+            loading = false;
+            int newSize = getSize();
+            
+            if (Math.min(oldSize, newSize) > oldRowCount) {
+                fireContentsChanged(this, oldRowCount, Math.min(oldSize, newSize) - 1);
+            }
+            if (newSize > oldSize) {
+                fireIntervalAdded(this, oldSize, newSize - 1);
+            } else if (newSize < oldSize) {
+                fireIntervalRemoved(this, newSize, oldSize - 1);
+            }
+        });
+    }
+}
+
 // Wellness Panel - WITH GIFT BOX FEATURE
+@SuppressWarnings("serial")
 class WellnessPanel extends JPanel {
     private JComboBox<String> moodCombo;
     private JTextArea journalArea;
@@ -1560,7 +8878,7 @@ class WellnessPanel extends JPanel {
         submitBtn.setCursor(new Cursor(Cursor.HAND_CURSOR));
         submitBtn.addActionListener(e -> {
             String mood = (String) moodCombo.getSelectedItem();
-            DatabaseManager.saveMoodEntry(mood);
+            AsyncDatabase.run(() -> DatabaseManager.saveMoodEntry(mood));
             
             // Show the gift box with tasks and playlists!
             MoodGiftBox.showGiftBox(this, mood);
@@ -1620,7 +8938,13 @@ class WellnessPanel extends JPanel {
         JLabel heading = new JLabel("Reflection Journal");
         heading.setFont(new Font("Georgia", Font.BOLD, 24));
         heading.setForeground(ColorPalette.TEXT_DARK);
-        panel.add(heading, BorderLayout.NORTH);
+        
+        JPanel headingPanel = new JPanel(new BorderLayout());
+        headingPanel.setBackground(ColorPalette.LILAC);
+        headingPanel.add(heading, BorderLayout.WEST);
+        headingPanel.add(new SearchBox(SearchIndex.JOURNAL,
+            hit -> showJournalEntry(this, hit.id, new Date(hit.stamp), hit)), BorderLayout.EAST);
+        panel.add(headingPanel, BorderLayout.NORTH);
         
         journalArea = new JTextArea(10, 50);
         journalArea.setFont(new Font("Georgia", Font.PLAIN, 15));
@@ -1647,8 +8971,8 @@ class WellnessPanel extends JPanel {
         saveBtn.setCursor(new Cursor(Cursor.HAND_CURSOR));
         saveBtn.addActionListener(e -> {
             String content = journalArea.getText();
-            DatabaseManager.saveJournalEntry(content);
-            JOptionPane.showMessageDialog(this, "Journal entry saved!", "Saved", JOptionPane.INFORMATION_MESSAGE);
+            AsyncDatabase.execute(() -> DatabaseManager.saveJournalEntry(content), () ->
+                JOptionPane.showMessageDialog(this, "Journal entry saved!", "Saved", JOptionPane.INFORMATION_MESSAGE));
         });
         
         JButton clearBtn = new JButton("New Entry");
@@ -1696,55 +9020,29 @@ class WellnessPanel extends JPanel {
         titleLabel.setForeground(ColorPalette.TEXT_DARK);
         mainPanel.add(titleLabel, BorderLayout.NORTH);
         
-        DefaultListModel<String> listModel = new DefaultListModel<>();
-        ArrayList<Object[]> entries = DatabaseManager.getAllJournalEntries();
-        
-        if (entries.isEmpty()) {
-            listModel.addElement("No journal entries yet. Start writing!");
-        } else {
-            SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy");
-            for (Object[] entry : entries) {
-                int id = (int) entry[0];
-                String content = (String) entry[1];
-                Date date = (Date) entry[2];
-                String preview = content.length() > 60 ? content.substring(0, 60) + "..." : content;
-                listModel.addElement(sdf.format(date) + " - " + preview);
-            }
-        }
+        JournalHistoryListModel listModel = new JournalHistoryListModel();
         
         JList<String> entryList = new JList<>(listModel);
         entryList.setFont(new Font("Georgia", Font.PLAIN, 14));
         entryList.setBackground(Color.WHITE);
         entryList.setForeground(ColorPalette.TEXT_DARK);
         entryList.setSelectionBackground(ColorPalette.PALE_ROSE);
+        entryList.setFixedCellHeight(24);
         
         entryList.addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
-                int selectedIndex = entryList.getSelectedIndex();
-                if (selectedIndex >= 0 && selectedIndex < entries.size()) {
-                    String fullContent = (String) entries.get(selectedIndex)[1];
-                    Date date = (Date) entries.get(selectedIndex)[2];
-                    SimpleDateFormat sdf = new SimpleDateFormat("MMMM dd, yyyy");
-                    
-                    JTextArea displayArea = new JTextArea(fullContent);
-                    displayArea.setFont(new Font("Georgia", Font.PLAIN, 14));
-                    displayArea.setLineWrap(true);
-                    displayArea.setWrapStyleWord(true);
-                    displayArea.setEditable(false);
-                    displayArea.setBackground(ColorPalette.CREAM);
-                    displayArea.setForeground(ColorPalette.TEXT_DARK);
-                    
-                    JScrollPane scrollPane = new JScrollPane(displayArea);
-                    scrollPane.setPreferredSize(new Dimension(500, 300));
-                    
-                    JOptionPane.showMessageDialog(dialog, scrollPane, "Entry from " + sdf.format(date), JOptionPane.PLAIN_MESSAGE);
+                Object[] entry = listModel.getEntry(entryList.getSelectedIndex());
+                if (entry != null) {
+                    showJournalEntry(dialog, (int) entry[0], (Date) entry[1]);
                 }
             }
         });
         
         JScrollPane scrollPane = new JScrollPane(entryList);
         scrollPane.setBorder(BorderFactory.createLineBorder(ColorPalette.LAVENDER, 2));
+        scrollPane.getViewport().addChangeListener(e -> listModel.ensureLoaded(entryList.getLastVisibleIndex()));
         mainPanel.add(scrollPane, BorderLayout.CENTER);
+        listModel.ensureLoaded(0);
         
         JButton closeBtn = new JButton("Close");
         closeBtn.setBackground(ColorPalette.MEDIUM_PURPLE);
@@ -1762,4 +9060,31 @@ class WellnessPanel extends JPanel {
         dialog.add(mainPanel);
         dialog.setVisible(true);
     }
+    
+    // The full entry is only fetched when it is opened
+    private void showJournalEntry(Component parent, int entryId, Date date) {
+        showJournalEntry(parent, entryId, date, null);
+    }
+    
+    private void showJournalEntry(Component parent, int entryId, Date date, SearchIndex.SearchHit hit) {
+        AsyncDatabase.load(() -> DatabaseManager.getJournalEntryContent(entryId), fullContent -> {
+            SimpleDateFormat sdf = new SimpleDateFormat("MMMM dd, yyyy");
+            
+            JTextArea displayArea = new JTextArea(fullContent);
+            displayArea.setFont(new Font("Georgia", Font.PLAIN, 14));
+            displayArea.setLineWrap(true);
+            displayArea.setWrapStyleWord(true);
+            displayArea.setEditable(false);
+            displayArea.setBackground(ColorPalette.CREAM);
+            displayArea.setForeground(ColorPalette.TEXT_DARK);
+            if (hit != null) {
+                SearchIndex.highlight(displayArea, hit);
+            }
+            
+            JScrollPane scrollPane = new JScrollPane(displayArea);
+            scrollPane.setPreferredSize(new Dimension(500, 300));
+            
+            JOptionPane.showMessageDialog(parent, scrollPane, "Entry from " + sdf.format(date), JOptionPane.PLAIN_MESSAGE);
+        });
+    }
 }
\ No newline at end of file
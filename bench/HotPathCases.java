@@ -0,0 +1,186 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+// Hot Path Cases - The operations HotPathBenchmark (bench/src/main/java/ctrlyou/bench) times, one
+// factory per case. JMH will not generate code for benchmarks in the default package, and a class in a
+// named package cannot refer to the app's default-package classes, so the benchmark looks these up by
+// reflection once per trial and then only calls the returned LongSupplier. Each op returns something
+// derived from its work for the benchmark to hand to JMH's Blackhole.
+//
+// The database cases run against the embedded local store in a scratch directory, through DatabaseManager.
+public class HotPathCases {
+    private static final String[] MOODS = {"Happy & Energetic", "Calm & Peaceful", "Neutral", "Sad or Down", "Anxious", "Stressed or Overwhelmed"};
+    private static final String[] WORDS = {"Idea", "Plan", "Exam", "Notes", "Read", "Chapter", "Review", "Project", "Goal", "Week"};
+    private static final int CANVAS_WIDTH = 1000;
+    private static final int CANVAS_HEIGHT = 700;
+    
+    private static boolean storeOpen = false;
+    
+    // DatabaseManager picks its backend once, so every case in a JMH fork shares this store
+    private static synchronized void openStore() {
+        if (storeOpen) {
+            return;
+        }
+        try {
+            File dataDir = Files.createTempDirectory("ctrlyou-bench").toFile();
+            System.setProperty("ctrlyou.storage", "local");
+            System.setProperty("ctrlyou.local.dir", dataDir.getPath());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteRecursively(dataDir)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create the benchmark store", e);
+        }
+        System.setProperty("ctrlyou.metrics.log.seconds", "0");
+        DatabaseManager.initializeDatabase();
+        storeOpen = true;
+    }
+    
+    public static LongSupplier noteCreateDelete() {
+        openStore();
+        return () -> {
+            int id = DatabaseManager.saveNote("Scratch", "A short note body");
+            DatabaseManager.deleteNote(id);
+            return id;
+        };
+    }
+    
+    public static LongSupplier noteRead() {
+        openStore();
+        int noteId = DatabaseManager.saveNote("Bench note", text(2000, 1));
+        return () -> DatabaseManager.getNoteContent(noteId).length();
+    }
+    
+    public static LongSupplier noteUpdate() {
+        openStore();
+        int noteId = DatabaseManager.saveNote("Bench note", text(2000, 1));
+        int[] version = {0};
+        return () -> {
+            String content = "Revision " + (version[0]++) + " of the note";
+            DatabaseManager.updateNote(noteId, content);
+            return content.length();
+        };
+    }
+    
+    public static LongSupplier notePage(int limit) {
+        openStore();
+        for (int i = 0; i < 500; i++) {
+            DatabaseManager.saveNote("Note " + i, "Body " + i);
+        }
+        return () -> DatabaseManager.getNotePage(null, 0, limit).size();
+    }
+    
+    public static LongSupplier taskAddDelete() {
+        openStore();
+        return () -> {
+            int id = DatabaseManager.addTask("Bench task");
+            DatabaseManager.updateTaskStatus(id, "Completed");
+            DatabaseManager.deleteTask(id);
+            return id;
+        };
+    }
+    
+    public static LongSupplier mindMapSave(int size) {
+        int mapId = storedMap(size);
+        ArrayList<MindMapNode> nodes = buildMap(size);
+        return () -> DatabaseManager.saveMindMap(mapId, nodes) ? 1 : 0;
+    }
+    
+    public static LongSupplier mindMapLoad(int size) {
+        int mapId = storedMap(size);
+        return () -> DatabaseManager.loadMindMap(mapId).size();
+    }
+    
+    public static LongSupplier nodeDraw() {
+        BufferedImage image = new BufferedImage(CANVAS_WIDTH, CANVAS_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = graphics(image);
+        MindMapNode node = new MindMapNode(1, "A node with a label long enough to wrap", 400, 300);
+        boolean[] selected = {false};
+        return () -> {
+            selected[0] = !selected[0];
+            node.draw(g, selected[0]);
+            return node.width;
+        };
+    }
+    
+    public static LongSupplier canvasPaint(int size, boolean tiles) {
+        BufferedImage image = new BufferedImage(CANVAS_WIDTH, CANVAS_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = graphics(image);
+        MindMapCanvas canvas = new MindMapCanvas();
+        canvas.setSize(CANVAS_WIDTH, CANVAS_HEIGHT);
+        canvas.setNodes(buildMap(size));
+        canvas.setRetainedRendering(tiles);
+        return () -> {
+            g.setClip(0, 0, CANVAS_WIDTH, CANVAS_HEIGHT);
+            canvas.paintComponent(g);
+            return image.getRGB(CANVAS_WIDTH / 2, CANVAS_HEIGHT / 2);
+        };
+    }
+    
+    public static LongSupplier loadIcon() {
+        IconManager.loadIcon("home.png", 24, 24);
+        return () -> IconManager.loadIcon("home.png", 24, 24).getIconWidth();
+    }
+    
+    public static LongSupplier giftLookups() {
+        int[] next = {0};
+        return () -> {
+            String mood = MOODS[next[0]++ % MOODS.length];
+            return MoodGiftBox.getTaskForMood(mood).length()
+                + MoodGiftBox.getPlaylistForMood(mood).length()
+                + MoodGiftBox.getEncouragementMessage(mood).length();
+        };
+    }
+    
+    private static int storedMap(int size) {
+        openStore();
+        int mapId = DatabaseManager.createMindMap("Bench " + size, 0);
+        DatabaseManager.saveMindMap(mapId, buildMap(size));
+        return mapId;
+    }
+    
+    private static Graphics2D graphics(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        return g;
+    }
+    
+    // A tree grown the way people build maps: children placed around their parent, short repeated labels
+    private static ArrayList<MindMapNode> buildMap(int size) {
+        Random rand = new Random(size);
+        ArrayList<MindMapNode> nodes = new ArrayList<>(size);
+        nodes.add(new MindMapNode(1, "Main Idea", 450, 300));
+        for (int i = 1; i < size; i++) {
+            MindMapNode parent = nodes.get(rand.nextInt(i));
+            double angle = rand.nextDouble() * 2 * Math.PI;
+            MindMapNode node = new MindMapNode(i + 1, WORDS[rand.nextInt(WORDS.length)] + " " + (1 + rand.nextInt(20)),
+                parent.x + (int) (Math.cos(angle) * 170), parent.y + (int) (Math.sin(angle) * 170));
+            node.parentUid = parent.uid;
+            nodes.add(node);
+        }
+        return nodes;
+    }
+    
+    private static String text(int length, long seed) {
+        Random rand = new Random(seed);
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            text.append(WORDS[rand.nextInt(WORDS.length)]).append(' ');
+        }
+        return text.substring(0, length);
+    }
+    
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
\ No newline at end of file
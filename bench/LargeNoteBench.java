@@ -0,0 +1,149 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+
+// Large Note Benchmark - The notes editor's path for one very long note (10 MB by default), timed
+// step by step two ways: a stock PlainDocument (GapContent) saved whole through updateNote, as the
+// editor used to work, and NoteDocument (PieceTableContent) saved as changed ranges through saveNoteEdit.
+// Runs headless against the embedded local store in a scratch directory.
+//
+//   javac -encoding UTF-8 -d out CtrlYouApp.java bench/LargeNoteBench.java
+//   java -Xmx2g -Djava.awt.headless=true -cp out LargeNoteBench [MB] [rounds]
+//
+// Each step is repeated for the given number of rounds (default 5) and the median is reported.
+// "type" is the average per keystroke over a burst typed in the middle of the note; "capture" is
+// what autosave does on the EDT when typing pauses; "save" is the write on the database worker and
+// "log" how much it appended to the store. "reindex" is the search index catching up with the save,
+// which the app does on a background thread some seconds later, once per burst of saves.
+public class LargeNoteBench {
+    private static final int KEYSTROKES = 2000;
+    
+    // Results are folded in here so the JIT cannot drop the work being measured
+    private static volatile long sink;
+    
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        
+        File scratch = Files.createTempDirectory("ctrlyou-large-note").toFile();
+        System.setProperty("ctrlyou.storage", "local");
+        System.setProperty("ctrlyou.local.dir", scratch.getPath());
+        System.setProperty("ctrlyou.metrics.log.seconds", "0");
+        DatabaseManager.initializeDatabase();
+        File log = new File(scratch, "ctrlyou.log");
+        
+        String note = lectureNotes(megabytes << 20, new Random(7));
+        int gapNoteId = DatabaseManager.saveNote("Gap buffer", note);
+        int pieceNoteId = DatabaseManager.saveNote("Piece table", note);
+        System.out.printf("%d chars, %d lines, %d rounds%n", note.length(), note.split("\n", -1).length, rounds);
+        
+        String[] steps = {"open ms", "type us/key", "capture ms", "save ms", "log KB", "reindex ms"};
+        double[][] gap = new double[steps.length][rounds];
+        double[][] piece = new double[steps.length][rounds];
+        for (int round = 0; round < rounds; round++) {
+            // A fresh document each round, as when the note is opened again
+            PlainDocument gapDoc = new PlainDocument();
+            long start = System.nanoTime();
+            String content = DatabaseManager.getNoteContent(gapNoteId);
+            gapDoc.insertString(0, content, null);
+            gap[0][round] = millisSince(start);
+            gap[1][round] = typeBurst(gapDoc, new Random(round)) / 1000.0;
+            start = System.nanoTime();
+            String captured = gapDoc.getText(0, gapDoc.getLength());
+            gap[2][round] = millisSince(start);
+            long logBefore = log.length();
+            start = System.nanoTime();
+            DatabaseManager.updateNote(gapNoteId, captured);
+            gap[3][round] = millisSince(start);
+            gap[4][round] = (log.length() - logBefore) / 1024.0;
+            start = System.nanoTime();
+            SearchIndex.reindexPending();
+            gap[5][round] = millisSince(start);
+            
+            NoteDocument pieceDoc = new NoteDocument();
+            start = System.nanoTime();
+            pieceDoc.load(DatabaseManager.openNote(pieceNoteId));
+            piece[0][round] = millisSince(start);
+            piece[1][round] = typeBurst(pieceDoc, new Random(round)) / 1000.0;
+            start = System.nanoTime();
+            NoteDocument.Edit edit = pieceDoc.takeEdit();
+            piece[2][round] = millisSince(start);
+            logBefore = log.length();
+            start = System.nanoTime();
+            DatabaseManager.saveNoteEdit(pieceNoteId, edit);
+            piece[3][round] = millisSince(start);
+            piece[4][round] = (log.length() - logBefore) / 1024.0;
+            start = System.nanoTime();
+            SearchIndex.reindexPending();
+            piece[5][round] = millisSince(start);
+            
+            if (!captured.equals(edit.text.toString())) {
+                throw new IllegalStateException("Documents diverged in round " + round);
+            }
+        }
+        
+        System.out.printf("%n%-14s %14s %14s %9s%n", "step", "GapContent", "PieceTable", "ratio");
+        for (int step = 0; step < steps.length; step++) {
+            double before = median(gap[step]);
+            double after = median(piece[step]);
+            System.out.printf("%-14s %14.3f %14.3f %8.1fx%n", steps[step], before, after, after == 0 ? 0 : before / after);
+        }
+        if (!DatabaseManager.getNoteContent(gapNoteId).equals(DatabaseManager.getNoteContent(pieceNoteId))) {
+            throw new IllegalStateException("Stored notes differ");
+        }
+        System.out.println("sink " + sink);
+        deleteRecursively(scratch);
+        System.exit(0);
+    }
+    
+    // Nanoseconds per keystroke: a run of typing at one spot near the middle, with the odd backspace
+    private static double typeBurst(PlainDocument doc, Random rand) throws BadLocationException {
+        int caret = doc.getLength() / 2 + rand.nextInt(1000);
+        long start = System.nanoTime();
+        for (int i = 0; i < KEYSTROKES; i++) {
+            if (i % 10 == 9) {
+                doc.remove(--caret, 1);
+            } else {
+                doc.insertString(caret++, i % 60 == 59 ? "\n" : String.valueOf((char) ('a' + i % 26)), null);
+            }
+        }
+        sink += doc.getLength();
+        return (System.nanoTime() - start) / (double) KEYSTROKES;
+    }
+    
+    private static String lectureNotes(int length, Random rand) {
+        String[] words = {"lecture", "theorem", "proof", "example", "exam", "chapter", "review", "definition", "lemma", "notes"};
+        StringBuilder text = new StringBuilder(length + 100);
+        int line = 0;
+        while (text.length() < length) {
+            text.append(words[rand.nextInt(words.length)]).append(' ');
+            if (++line % 12 == 0) {
+                text.append('\n');
+            }
+        }
+        return text.substring(0, length);
+    }
+    
+    private static double millisSince(long start) {
+        return (System.nanoTime() - start) / 1e6;
+    }
+    
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+    
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
\ No newline at end of file
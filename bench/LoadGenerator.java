@@ -0,0 +1,265 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load Generator - Headless soak test for the persistence layer: N virtual users run a weighted mix of
+// writes through DatabaseManager for a fixed time, then throughput, latency percentiles and error rates
+// are reported per operation. No Swing is involved.
+//
+// By default it runs against the embedded local store in a scratch directory, so it works offline.
+// Pass -Dctrlyou.storage=mysql (plus the usual ctrlyou.db.* settings) to load a real server instead.
+//
+//   javac -encoding UTF-8 -d out CtrlYouApp.java bench/LoadGenerator.java
+//   java -cp out LoadGenerator [users] [seconds] [think ms]
+//
+// DatabaseManager reports failures by printing them and returning -1 or false, so those return values
+// count as errors. updateNote, updateTaskStatus and saveMoodEntry return nothing; for them only thrown
+// exceptions are counted.
+public class LoadGenerator {
+    private static final int MIND_MAP_NODES = 200;
+    private static final long PROGRESS_SECONDS = 10;
+    
+    // Operation mix, weighted roughly like a study session: autosaves dominate, then mind map edits
+    private static final String[] OPERATIONS = {"saveNote", "updateNote", "addTask", "updateTaskStatus", "saveMoodEntry", "saveJournalEntry", "saveMindMap"};
+    private static final int[] WEIGHTS = {5, 35, 10, 10, 10, 10, 20};
+    private static final String[] MOODS = {"Happy & Energetic", "Calm & Peaceful", "Neutral", "Sad or Down", "Anxious", "Stressed or Overwhelmed"};
+    
+    private static final LinkedHashMap<String, Metrics.Histogram> latencies = new LinkedHashMap<>();
+    private static final LinkedHashMap<String, AtomicLong> errors = new LinkedHashMap<>();
+    private static final AtomicLong completed = new AtomicLong();
+    
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int thinkMillis = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        
+        File scratch = null;
+        if (System.getProperty("ctrlyou.storage") == null) {
+            scratch = Files.createTempDirectory("ctrlyou-load").toFile();
+            System.setProperty("ctrlyou.storage", "local");
+            System.setProperty("ctrlyou.local.dir", scratch.getPath());
+        }
+        System.setProperty("ctrlyou.metrics.log.seconds", "0");
+        DatabaseManager.initializeDatabase();
+        
+        for (String operation : OPERATIONS) {
+            latencies.put(operation, new Metrics.Histogram(operation));
+            errors.put(operation, new AtomicLong());
+        }
+        
+        System.out.printf("%d users for %d s, think time %d ms, backend %s%n",
+            users, seconds, thinkMillis, DatabaseManager.getStorage().describe());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(users);
+        long start = System.nanoTime();
+        for (int u = 0; u < users; u++) {
+            int user = u;
+            Thread thread = new Thread(() -> {
+                try {
+                    new VirtualUser(user, thinkMillis).run(deadline);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "virtual-user-" + u);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        
+        // Progress lines make slow drift visible on long soak runs
+        long lastCount = 0;
+        while (!done.await(PROGRESS_SECONDS, TimeUnit.SECONDS)) {
+            long count = completed.get();
+            Runtime runtime = Runtime.getRuntime();
+            System.out.printf("  %4d s  %8d ops  %8.0f ops/s  %5d errors  heap %d MB%n",
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), count,
+                (count - lastCount) / (double) PROGRESS_SECONDS, totalErrors(),
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+            lastCount = count;
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        
+        report(elapsedSeconds);
+        if (scratch != null) {
+            deleteRecursively(scratch);
+        }
+    }
+    
+    private static class VirtualUser {
+        private final Random rand;
+        private final int user;
+        private final int thinkMillis;
+        private final ArrayList<Integer> noteIds = new ArrayList<>();
+        private final ArrayList<Integer> taskIds = new ArrayList<>();
+        private final ArrayList<MindMapNode> mapNodes = new ArrayList<>();
+        private int mindMapId = -1;
+        private int edits = 0;
+        
+        VirtualUser(int user, int thinkMillis) {
+            this.user = user;
+            this.thinkMillis = thinkMillis;
+            this.rand = new Random(user);
+        }
+        
+        void run(long deadline) throws InterruptedException {
+            while (System.nanoTime() < deadline) {
+                String operation = pick();
+                long start = System.nanoTime();
+                boolean ok;
+                try {
+                    ok = perform(operation);
+                } catch (RuntimeException e) {
+                    ok = false;
+                }
+                latencies.get(operation).recordSince(start);
+                if (!ok) {
+                    errors.get(operation).incrementAndGet();
+                }
+                completed.incrementAndGet();
+                if (thinkMillis > 0) {
+                    Thread.sleep(rand.nextInt(thinkMillis * 2 + 1));
+                }
+            }
+        }
+        
+        private String pick() {
+            int total = 0;
+            for (int weight : WEIGHTS) {
+                total += weight;
+            }
+            int roll = rand.nextInt(total);
+            for (int i = 0; i < WEIGHTS.length; i++) {
+                roll -= WEIGHTS[i];
+                if (roll < 0) {
+                    return OPERATIONS[i];
+                }
+            }
+            return OPERATIONS[0];
+        }
+        
+        // Operations that need something to work on create it first, as a real user would
+        private boolean perform(String operation) {
+            switch (operation) {
+                case "updateNote":
+                    if (noteIds.isEmpty()) {
+                        return saveNote();
+                    }
+                    int noteId = noteIds.get(rand.nextInt(noteIds.size()));
+                    DatabaseManager.updateNote(noteId, noteText(200 + rand.nextInt(4000)));
+                    return true;
+                case "saveNote":
+                    return saveNote();
+                case "updateTaskStatus":
+                    if (taskIds.isEmpty()) {
+                        return addTask();
+                    }
+                    int taskId = taskIds.remove(rand.nextInt(taskIds.size()));
+                    DatabaseManager.updateTaskStatus(taskId, "Completed");
+                    return true;
+                case "addTask":
+                    return addTask();
+                case "saveMoodEntry":
+                    DatabaseManager.saveMoodEntry(MOODS[rand.nextInt(MOODS.length)]);
+                    return true;
+                case "saveJournalEntry":
+                    return DatabaseManager.saveJournalEntry(noteText(300 + rand.nextInt(1500))) > 0;
+                case "saveMindMap":
+                    return saveMindMap();
+                default:
+                    throw new IllegalArgumentException(operation);
+            }
+        }
+        
+        private boolean saveNote() {
+            int noteId = DatabaseManager.saveNote("User " + user + " note " + noteIds.size(), noteText(200 + rand.nextInt(2000)));
+            if (noteId > 0) {
+                noteIds.add(noteId);
+            }
+            return noteId > 0;
+        }
+        
+        private boolean addTask() {
+            int taskId = DatabaseManager.addTask("Task " + rand.nextInt(1000) + " for user " + user);
+            if (taskId > 0) {
+                taskIds.add(taskId);
+            }
+            return taskId > 0;
+        }
+        
+        // One map per user, with a few nodes moved or relabelled between saves
+        private boolean saveMindMap() {
+            if (mindMapId < 0) {
+                mindMapId = DatabaseManager.createMindMap("Load map " + user, 0);
+                if (mindMapId < 0) {
+                    return false;
+                }
+                mapNodes.add(new MindMapNode(1, "Main Idea", 450, 300));
+                for (int i = 1; i < MIND_MAP_NODES; i++) {
+                    MindMapNode parent = mapNodes.get(rand.nextInt(i));
+                    MindMapNode node = new MindMapNode(i + 1, "Idea " + i, parent.x + rand.nextInt(341) - 170, parent.y + rand.nextInt(341) - 170);
+                    node.parentUid = parent.uid;
+                    mapNodes.add(node);
+                }
+            }
+            for (int i = 0; i < 5; i++) {
+                MindMapNode node = mapNodes.get(rand.nextInt(mapNodes.size()));
+                node.x += rand.nextInt(41) - 20;
+                node.y += rand.nextInt(41) - 20;
+            }
+            mapNodes.get(rand.nextInt(mapNodes.size())).text = "Edit " + (edits++);
+            return DatabaseManager.saveMindMap(mindMapId, mapNodes);
+        }
+        
+        private String noteText(int length) {
+            StringBuilder text = new StringBuilder(length);
+            while (text.length() < length) {
+                text.append("study notes ").append(rand.nextInt(10000)).append(' ');
+            }
+            return text.substring(0, length);
+        }
+    }
+    
+    private static long totalErrors() {
+        long total = 0;
+        for (AtomicLong count : errors.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+    
+    private static void report(double elapsedSeconds) {
+        System.out.printf("%n%-18s %9s %9s %8s %9s %9s %9s %9s%n",
+            "operation", "count", "ops/s", "errors", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        long total = 0;
+        for (Map.Entry<String, Metrics.Histogram> entry : latencies.entrySet()) {
+            Metrics.Histogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            long failed = errors.get(entry.getKey()).get();
+            total += count;
+            System.out.printf("%-18s %9d %9.1f %7.2f%% %9.2f %9.2f %9.2f %9.2f%n",
+                entry.getKey(), count, count / elapsedSeconds, count == 0 ? 0 : failed * 100.0 / count,
+                histogram.percentileMillis(0.50), histogram.percentileMillis(0.90),
+                histogram.percentileMillis(0.99), histogram.maxMillis());
+        }
+        long failed = totalErrors();
+        System.out.printf("%-18s %9d %9.1f %7.2f%%%n", "total", total, total / elapsedSeconds,
+            total == 0 ? 0 : failed * 100.0 / total);
+    }
+    
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,203 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+// Mind Map Canvas Benchmark - Repaint and hit-test cost at 10k and 100k nodes, grid-backed canvas
+// versus the previous draw-everything / scan-every-node approach. Each size is run as a star (every
+// node a child of the root, edges crossing the whole map) and as a tree whose edges join nearby
+// nodes. Star edges are too long to file in the grid, so every repaint still checks each of them:
+// only the tree shows what culling edges by the grid saves. The grid's edge lookups are checked
+// against a scan of every edge, before and after moving nodes around.
+//
+//   javac -encoding UTF-8 -d out CtrlYouApp.java bench/MindMapCanvasBench.java
+//   java -Djava.awt.headless=true -cp out MindMapCanvasBench
+public class MindMapCanvasBench {
+    private static final int VIEW_WIDTH = 1000;
+    private static final int VIEW_HEIGHT = 700;
+    
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? parseSizes(args) : new int[]{10_000, 100_000};
+        for (int size : sizes) {
+            run(size, false);
+            run(size, true);
+        }
+    }
+    
+    private static void run(int nodeCount, boolean tree) {
+        // Spread nodes so density stays roughly constant: about one node per 150x150 square
+        int side = (int) Math.sqrt((double) nodeCount) * 150;
+        Random rand = new Random(42);
+        ArrayList<MindMapNode> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.add(new MindMapNode(i + 1, "Node " + i, rand.nextInt(side), rand.nextInt(side)));
+        }
+        if (tree) {
+            linkNearby(nodes);
+        }
+        MindMapCanvas canvas = new MindMapCanvas();
+        canvas.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+        canvas.setNodes(nodes);
+        // Measure culling itself; with tiles, repeated repaints would only copy cached images
+        canvas.setRetainedRendering(false);
+        
+        BufferedImage image = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Point[] probes = new Point[100_000];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = new Point(rand.nextInt(side), rand.nextInt(side));
+        }
+        
+        System.out.println("== " + nodeCount + " nodes on a " + side + "x" + side + " map as a " + (tree ? "tree" : "star")
+            + ", " + VIEW_WIDTH + "x" + VIEW_HEIGHT + " view ==");
+        
+        double culled = timePerOp(20, () -> {
+            Graphics2D g = image.createGraphics();
+            g.setClip(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+            canvas.paintComponent(g);
+            g.dispose();
+        });
+        double full = timePerOp(3, () -> {
+            Graphics2D g = image.createGraphics();
+            g.setClip(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+            paintEverything(g, nodes);
+            g.dispose();
+        });
+        System.out.printf("repaint   culled %10.3f ms   draw-all %10.3f ms   (%.0fx)%n", culled, full, full / culled);
+        
+        int[] sink = new int[1];
+        double indexed = timePerOp(probes.length, new Runnable() {
+            int i = 0;
+            public void run() {
+                if (canvas.nodeAt(probes[i++ % probes.length]) != null) {
+                    sink[0]++;
+                }
+            }
+        });
+        double linear = timePerOp(Math.max(200, 20_000_000 / nodeCount), new Runnable() {
+            int i = 0;
+            public void run() {
+                Point p = probes[i++ % probes.length];
+                for (MindMapNode node : nodes) {
+                    if (node.contains(p)) {
+                        sink[0]++;
+                        break;
+                    }
+                }
+            }
+        });
+        System.out.printf("hit-test  grid   %10.5f ms   linear   %10.5f ms   (%.0fx)%n", indexed, linear, linear / indexed);
+        
+        // Agreement check: both must pick the same node
+        for (int i = 0; i < 10_000; i++) {
+            Point p = probes[i];
+            MindMapNode expected = null;
+            for (MindMapNode node : nodes) {
+                if (node.contains(p)) {
+                    expected = node;
+                    break;
+                }
+            }
+            if (canvas.nodeAt(p) != expected) {
+                throw new IllegalStateException("Grid hit-test disagrees with linear scan at " + p);
+            }
+        }
+        checkEdges(nodes, side, rand);
+    }
+    
+    // Nodes are grouped into 600x600 blocks: each joins the first node placed in its block, and that
+    // one joins the first node of the block to its left (or above, in the first column)
+    private static void linkNearby(ArrayList<MindMapNode> nodes) {
+        HashMap<Long, MindMapNode> heads = new HashMap<>();
+        for (MindMapNode node : nodes) {
+            heads.putIfAbsent(block(node.x / 600, node.y / 600), node);
+        }
+        for (MindMapNode node : nodes) {
+            int bx = node.x / 600;
+            int by = node.y / 600;
+            MindMapNode head = heads.get(block(bx, by));
+            if (head != node) {
+                node.parentUid = head.uid;
+                continue;
+            }
+            MindMapNode next = null;
+            for (int x = bx - 1; x >= 0 && next == null; x--) {
+                next = heads.get(block(x, by));
+            }
+            for (int y = by - 1; y >= 0 && next == null; y--) {
+                next = heads.get(block(bx, y));
+            }
+            node.parentUid = next != null ? next.uid : 0;
+        }
+    }
+    
+    private static long block(int bx, int by) {
+        return ((long) bx << 32) | by;
+    }
+    
+    // The grid must report every edge whose bounding box meets the area, each once
+    private static void checkEdges(ArrayList<MindMapNode> nodes, int side, Random rand) {
+        NodeGrid grid = new NodeGrid();
+        for (MindMapNode node : nodes) {
+            grid.add(node);
+        }
+        ArrayList<MindMapNode> found = new ArrayList<>();
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 50; i++) {
+                MindMapNode node = nodes.get(rand.nextInt(nodes.size()));
+                node.x = rand.nextInt(side);
+                node.y = rand.nextInt(side);
+                grid.update(node);
+            }
+            Rectangle area = new Rectangle(rand.nextInt(side) - 200, rand.nextInt(side) - 200, rand.nextInt(2000) + 1, rand.nextInt(2000) + 1);
+            grid.queryEdges(area, found);
+            HashSet<MindMapNode> reported = new HashSet<>(found);
+            if (reported.size() != found.size()) {
+                throw new IllegalStateException("Grid reported an edge twice for " + area);
+            }
+            for (MindMapNode node : nodes) {
+                if (node.parent != null && area.intersectsLine(node.parent.x + 60, node.parent.y + 30, node.x + 60, node.y + 30)
+                    && !reported.contains(node)) {
+                    throw new IllegalStateException("Grid missed the edge to node " + node.uid + " in " + area);
+                }
+            }
+            found.clear();
+        }
+    }
+    
+    // What paintComponent did before the grid: every edge and node, whatever the clip
+    private static void paintEverything(Graphics2D g2d, ArrayList<MindMapNode> nodes) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setColor(ColorPalette.LAVENDER);
+        g2d.setStroke(new BasicStroke(2));
+        for (MindMapNode node : nodes) {
+            if (node.parent != null) {
+                g2d.drawLine(node.parent.x + 60, node.parent.y + 30, node.x + 60, node.y + 30);
+            }
+        }
+        for (MindMapNode node : nodes) {
+            node.draw(g2d, false);
+        }
+    }
+    
+    // Milliseconds per operation, after a warm-up pass
+    private static double timePerOp(int ops, Runnable op) {
+        for (int i = 0; i < Math.max(1, ops / 4); i++) {
+            op.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            op.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / ops;
+    }
+    
+    private static int[] parseSizes(String[] args) {
+        int[] sizes = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        return sizes;
+    }
+}
\ No newline at end of file
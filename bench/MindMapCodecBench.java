@@ -0,0 +1,340 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Random;
+
+// Mind Map Codec Benchmark - Save/load latency and stored size of a whole map as one MindMapCodec
+// blob, against the per-row layout used before (one mindmap_nodes row plus one mindmap_edges row per node).
+//
+// Without arguments it compares the encodings in memory: codec encode/decode time and bytes, against
+// the column data the row layout stores (before InnoDB's own per-row overhead of roughly 20-30 bytes).
+// A second table times a diff save of DIFF_NODES nodes: rewriting the blob (decode, apply, encode, as
+// saves did before change records) against encoding one change record, plus the fold that one save in
+// FOLD_EVERY pays and what the pending records add to a load.
+// Given a JDBC URL it also times real saves and loads against MySQL, using scratch tables it drops afterwards.
+//
+//   javac -encoding UTF-8 -d out CtrlYouApp.java bench/MindMapCodecBench.java
+//   java -cp out MindMapCodecBench
+//   java -cp out:mysql-connector-j.jar MindMapCodecBench "jdbc:mysql://localhost:3306/ctrlyou_db?user=root&password=..."
+public class MindMapCodecBench {
+    private static final int[] SIZES = {100, 1000, 10000, 100000};
+    private static final String[] WORDS = {"Idea", "Plan", "Exam", "Notes", "Read", "Chapter", "Review", "Project", "Goal", "Week"};
+    // Nodes touched by one diff save (a drag of a small branch, a few edits)
+    private static final int DIFF_NODES = 10;
+    // MySqlStorage.FOLD_MINDMAP_CHANGES
+    private static final int FOLD_EVERY = 64;
+    
+    public static void main(String[] args) throws Exception {
+        String jdbcUrl = args.length > 0 ? args[0] : null;
+        System.out.printf("%8s  %12s %12s %12s  %10s %10s%n", "nodes", "row bytes", "codec raw", "codec+zip", "encode ms", "decode ms");
+        for (int size : SIZES) {
+            ArrayList<MindMapNode> nodes = buildMap(size);
+            byte[] blob = MindMapCodec.encode(nodes);
+            double encodeMs = time(() -> MindMapCodec.encode(nodes));
+            double decodeMs = time(() -> decode(blob));
+            System.out.printf("%8d  %12d %12d %12d  %10.2f %10.2f%n",
+                size, rowBytes(nodes), uncompressedSize(blob), blob.length, encodeMs, decodeMs);
+            checkRoundTrip(nodes, decode(blob));
+        }
+        
+        System.out.printf("%n%8s  %12s %12s  %12s %12s  %12s%n", "nodes", "rewrite ms", "record ms", "fold ms", "fold/save", "load+63 ms");
+        for (int size : SIZES) {
+            ArrayList<MindMapNode> nodes = buildMap(size);
+            byte[] blob = MindMapCodec.encode(nodes);
+            ArrayList<byte[]> records = new ArrayList<>();
+            for (int i = 0; i < FOLD_EVERY; i++) {
+                records.add(diffRecord(nodes, new Random(i)));
+            }
+            ArrayList<byte[]> one = new ArrayList<>(records.subList(0, 1));
+            ArrayList<byte[]> pending = new ArrayList<>(records.subList(0, FOLD_EVERY - 1));
+            double rewriteMs = time(() -> MindMapCodec.encode(applyRecords(decode(blob), one)));
+            double recordMs = time(() -> diffRecord(nodes, new Random(1)));
+            double foldMs = time(() -> MindMapCodec.encode(applyRecords(decode(blob), records)));
+            double loadMs = time(() -> applyRecords(decode(blob), pending)) - time(() -> decode(blob));
+            System.out.printf("%8d  %12.3f %12.3f  %12.2f %12.3f  %12.2f%n",
+                size, rewriteMs, recordMs, foldMs, foldMs / FOLD_EVERY, loadMs);
+            
+            // A folded map, new nodes and their parent uids included, must survive a round trip through the blob
+            ArrayList<MindMapNode> folded = applyRecords(decode(blob), records);
+            checkRoundTrip(folded, decode(MindMapCodec.encode(folded)));
+        }
+        if (jdbcUrl != null) {
+            runDatabase(jdbcUrl);
+        }
+    }
+    
+    // A tree grown the way people build maps: children placed around their parent, short repeated labels
+    private static ArrayList<MindMapNode> buildMap(int size) {
+        Random rand = new Random(size);
+        ArrayList<MindMapNode> nodes = new ArrayList<>(size);
+        nodes.add(new MindMapNode(rand.nextLong() & Long.MAX_VALUE, "Main Idea", 450, 300));
+        for (int i = 1; i < size; i++) {
+            MindMapNode parent = nodes.get(rand.nextInt(i));
+            double angle = rand.nextDouble() * 2 * Math.PI;
+            MindMapNode node = new MindMapNode(rand.nextLong() & Long.MAX_VALUE,
+                WORDS[rand.nextInt(WORDS.length)] + " " + (1 + rand.nextInt(20)),
+                parent.x + (int) (Math.cos(angle) * 170), parent.y + (int) (Math.sin(angle) * 170));
+            node.parentUid = parent.uid;
+            nodes.add(node);
+        }
+        return nodes;
+    }
+    
+    // Column data of the old layout: id, mindmap_id, node_uid, node_text, position_x, position_y,
+    // created_date, plus mindmap_id, child_uid, parent_uid in mindmap_edges
+    private static long rowBytes(ArrayList<MindMapNode> nodes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (MindMapNode node : nodes) {
+            out.writeInt(0);
+            out.writeInt(1);
+            out.writeLong(node.uid);
+            byte[] text = node.text.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            out.writeByte(text.length);
+            out.write(text);
+            out.writeInt(node.x);
+            out.writeInt(node.y);
+            out.writeInt(0);
+            if (node.parentUid != 0) {
+                out.writeInt(1);
+                out.writeLong(node.uid);
+                out.writeLong(node.parentUid);
+            }
+        }
+        return bytes.size();
+    }
+    
+    // DIFF_NODES existing nodes moved, one of them renamed, and one new leaf under the first
+    private static byte[] diffRecord(ArrayList<MindMapNode> nodes, Random rand) {
+        ArrayList<MindMapNode> changed = new ArrayList<>();
+        for (int i = 0; i < DIFF_NODES; i++) {
+            MindMapNode copy = nodes.get(rand.nextInt(nodes.size())).copy();
+            copy.x += rand.nextInt(41) - 20;
+            copy.y += rand.nextInt(41) - 20;
+            changed.add(copy);
+        }
+        changed.get(0).text = "Renamed " + rand.nextInt(100);
+        MindMapNode added = new MindMapNode(rand.nextLong() & Long.MAX_VALUE, "New", nodes.get(0).x, nodes.get(0).y);
+        added.parentUid = changed.get(0).uid;
+        changed.add(added);
+        return MindMapCodec.encodeChanges(changed, new ArrayList<>());
+    }
+    
+    private static ArrayList<MindMapNode> applyRecords(ArrayList<MindMapNode> nodes, ArrayList<byte[]> records) {
+        try {
+            return MindMapCodec.applyChangeRecords(nodes, records);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static int uncompressedSize(byte[] blob) throws IOException {
+        if (blob[5] == 0) {
+            return blob.length;
+        }
+        java.util.zip.InflaterInputStream in = new java.util.zip.InflaterInputStream(new ByteArrayInputStream(blob, 6, blob.length - 6));
+        int size = 6;
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            size += n;
+        }
+        return size;
+    }
+    
+    private static ArrayList<MindMapNode> decode(byte[] blob) {
+        try {
+            return MindMapCodec.decode(new ByteArrayInputStream(blob));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static void checkRoundTrip(ArrayList<MindMapNode> expected, ArrayList<MindMapNode> actual) {
+        if (expected.size() != actual.size()) {
+            throw new AssertionError("node count " + actual.size() + " != " + expected.size());
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            MindMapNode a = expected.get(i);
+            MindMapNode b = actual.get(i);
+            if (a.uid != b.uid || !a.text.equals(b.text) || a.x != b.x || a.y != b.y || a.parentUid != b.parentUid) {
+                throw new AssertionError("node " + i + " differs after decoding");
+            }
+        }
+    }
+    
+    // Median of a few runs after warming up
+    private static double time(Runnable task) {
+        for (int i = 0; i < 3; i++) {
+            task.run();
+        }
+        double[] runs = new double[7];
+        for (int i = 0; i < runs.length; i++) {
+            long start = System.nanoTime();
+            task.run();
+            runs[i] = (System.nanoTime() - start) / 1e6;
+        }
+        java.util.Arrays.sort(runs);
+        return runs[runs.length / 2];
+    }
+    
+    private static void runDatabase(String jdbcUrl) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(jdbcUrl); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE bench_mindmap_nodes (id INT AUTO_INCREMENT PRIMARY KEY, mindmap_id INT, node_uid BIGINT, " +
+                "node_text VARCHAR(255), position_x INT, position_y INT, created_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                "UNIQUE KEY uq_bench_node (mindmap_id, node_uid))");
+            stmt.executeUpdate("CREATE TABLE bench_mindmap_edges (mindmap_id INT NOT NULL, child_uid BIGINT NOT NULL, " +
+                "parent_uid BIGINT NOT NULL, PRIMARY KEY (mindmap_id, child_uid))");
+            stmt.executeUpdate("CREATE TABLE bench_mindmaps (id INT PRIMARY KEY, content MEDIUMBLOB)");
+            stmt.executeUpdate("CREATE TABLE bench_mindmap_changes (id BIGINT AUTO_INCREMENT PRIMARY KEY, mindmap_id INT NOT NULL, " +
+                "changes MEDIUMBLOB NOT NULL, INDEX idx_bench_changes (mindmap_id, id))");
+            try {
+                System.out.printf("%n%8s  %12s %12s  %12s %12s  %12s %12s  %12s %12s%n",
+                    "nodes", "rows save", "rows load", "blob save", "blob load", "rows bytes", "blob bytes", "rewrite diff", "record diff");
+                for (int size : SIZES) {
+                    ArrayList<MindMapNode> nodes = buildMap(size);
+                    double rowSave = timeSql(() -> saveRows(conn, nodes));
+                    double rowLoad = timeSql(() -> loadRows(conn));
+                    double blobSave = timeSql(() -> saveBlob(conn, nodes));
+                    double blobLoad = timeSql(() -> loadBlob(conn));
+                    stmt.execute("ANALYZE TABLE bench_mindmap_nodes, bench_mindmap_edges, bench_mindmaps");
+                    long rowBytes = tableBytes(conn, "bench_mindmap_nodes") + tableBytes(conn, "bench_mindmap_edges");
+                    long blobBytes = tableBytes(conn, "bench_mindmaps");
+                    byte[] record = diffRecord(nodes, new Random(size));
+                    double rewriteDiff = timeSql(() -> rewriteDiff(conn, record));
+                    double recordDiff = timeSql(() -> appendDiff(conn, record));
+                    stmt.executeUpdate("DELETE FROM bench_mindmap_changes");
+                    System.out.printf("%8d  %10.1fms %10.1fms  %10.1fms %10.1fms  %12d %12d  %10.1fms %10.1fms%n",
+                        size, rowSave, rowLoad, blobSave, blobLoad, rowBytes, blobBytes, rewriteDiff, recordDiff);
+                }
+            } finally {
+                stmt.executeUpdate("DROP TABLE bench_mindmap_nodes, bench_mindmap_edges, bench_mindmaps, bench_mindmap_changes");
+            }
+        }
+    }
+    
+    interface SqlTask {
+        void run() throws SQLException;
+    }
+    
+    private static double timeSql(SqlTask task) throws SQLException {
+        task.run();
+        double[] runs = new double[3];
+        for (int i = 0; i < runs.length; i++) {
+            long start = System.nanoTime();
+            task.run();
+            runs[i] = (System.nanoTime() - start) / 1e6;
+        }
+        java.util.Arrays.sort(runs);
+        return runs[1];
+    }
+    
+    // The save the app did before: replace every row in one batched transaction
+    private static void saveRows(Connection conn, ArrayList<MindMapNode> nodes) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement();
+             PreparedStatement insertNode = conn.prepareStatement(
+                 "INSERT INTO bench_mindmap_nodes (mindmap_id, node_uid, node_text, position_x, position_y) VALUES (1, ?, ?, ?, ?)");
+             PreparedStatement insertEdge = conn.prepareStatement(
+                 "INSERT INTO bench_mindmap_edges (mindmap_id, child_uid, parent_uid) VALUES (1, ?, ?)")) {
+            stmt.executeUpdate("DELETE FROM bench_mindmap_nodes WHERE mindmap_id = 1");
+            stmt.executeUpdate("DELETE FROM bench_mindmap_edges WHERE mindmap_id = 1");
+            for (MindMapNode node : nodes) {
+                insertNode.setLong(1, node.uid);
+                insertNode.setString(2, node.text);
+                insertNode.setInt(3, node.x);
+                insertNode.setInt(4, node.y);
+                insertNode.addBatch();
+                if (node.parentUid != 0) {
+                    insertEdge.setLong(1, node.uid);
+                    insertEdge.setLong(2, node.parentUid);
+                    insertEdge.addBatch();
+                }
+            }
+            insertNode.executeBatch();
+            insertEdge.executeBatch();
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+    
+    private static void loadRows(Connection conn) throws SQLException {
+        ArrayList<MindMapNode> nodes = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "SELECT n.node_uid, n.node_text, n.position_x, n.position_y, e.parent_uid FROM bench_mindmap_nodes n " +
+                 "LEFT JOIN bench_mindmap_edges e ON e.mindmap_id = n.mindmap_id AND e.child_uid = n.node_uid " +
+                 "WHERE n.mindmap_id = 1 ORDER BY n.id")) {
+            while (rs.next()) {
+                MindMapNode node = new MindMapNode(rs.getLong(1), rs.getString(2), rs.getInt(3), rs.getInt(4));
+                node.parentUid = rs.getLong(5);
+                nodes.add(node);
+            }
+        }
+    }
+    
+    private static void saveBlob(Connection conn, ArrayList<MindMapNode> nodes) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO bench_mindmaps (id, content) VALUES (1, ?) ON DUPLICATE KEY UPDATE content = VALUES(content)")) {
+            pstmt.setBytes(1, MindMapCodec.encode(nodes));
+            pstmt.executeUpdate();
+        }
+    }
+    
+    private static void loadBlob(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT content FROM bench_mindmaps WHERE id = 1")) {
+            if (rs.next()) {
+                MindMapCodec.decode(rs.getBinaryStream(1));
+            }
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+    }
+    
+    // A diff save as it was before change records: read the blob under lock, apply, write it back
+    private static void rewriteDiff(Connection conn, byte[] record) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement();
+             PreparedStatement update = conn.prepareStatement("UPDATE bench_mindmaps SET content = ? WHERE id = 1")) {
+            ResultSet rs = stmt.executeQuery("SELECT content FROM bench_mindmaps WHERE id = 1 FOR UPDATE");
+            rs.next();
+            ArrayList<byte[]> records = new ArrayList<>();
+            records.add(record);
+            update.setBytes(1, MindMapCodec.encode(MindMapCodec.applyChangeRecords(MindMapCodec.decode(rs.getBinaryStream(1)), records)));
+            update.executeUpdate();
+            conn.commit();
+        } catch (IOException e) {
+            throw new SQLException(e);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+    
+    // A diff save as MySqlStorage makes it between folds: lock the map row, append, count
+    private static void appendDiff(Connection conn, byte[] record) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement();
+             PreparedStatement insert = conn.prepareStatement("INSERT INTO bench_mindmap_changes (mindmap_id, changes) VALUES (1, ?)")) {
+            stmt.executeQuery("SELECT id FROM bench_mindmaps WHERE id = 1 FOR UPDATE").close();
+            insert.setBytes(1, record);
+            insert.executeUpdate();
+            stmt.executeQuery("SELECT COUNT(*) FROM bench_mindmap_changes WHERE mindmap_id = 1").close();
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+    
+    private static long tableBytes(Connection conn, String table) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT data_length + index_length FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?")) {
+            pstmt.setString(1, table);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
\ No newline at end of file
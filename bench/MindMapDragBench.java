@@ -0,0 +1,106 @@
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Random;
+
+// Mind Map Drag Benchmark - Time per drag frame with the tile cache and dirty-region repaint,
+// against repainting the whole canvas directly. Also checks that tiled output matches direct output.
+//
+//   javac -encoding UTF-8 -d out CtrlYouApp.java bench/MindMapDragBench.java
+//   java -Djava.awt.headless=true -cp out MindMapDragBench [nodeCount]
+public class MindMapDragBench {
+    private static final int VIEW_WIDTH = 1600;
+    private static final int VIEW_HEIGHT = 1000;
+    private static final int FRAMES = 300;
+    
+    public static void main(String[] args) {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+        Random rand = new Random(11);
+        ArrayList<MindMapNode> nodes = new ArrayList<>();
+        nodes.add(new MindMapNode(1, "Main Idea", VIEW_WIDTH / 2, VIEW_HEIGHT / 2));
+        for (int i = 1; i < nodeCount; i++) {
+            nodes.add(new MindMapNode(i + 1, "Idea " + i, rand.nextInt(VIEW_WIDTH * 2), rand.nextInt(VIEW_HEIGHT * 2)));
+        }
+        MindMapCanvas canvas = new MindMapCanvas();
+        canvas.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+        canvas.setNodes(nodes);
+        BufferedImage screen = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        
+        // Tiled and direct painting must produce the same pixels
+        BufferedImage direct = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        canvas.setRetainedRendering(false);
+        paint(canvas, direct, new Rectangle(0, 0, VIEW_WIDTH, VIEW_HEIGHT));
+        canvas.setRetainedRendering(true);
+        paint(canvas, screen, new Rectangle(0, 0, VIEW_WIDTH, VIEW_HEIGHT));
+        int differing = 0;
+        for (int y = 0; y < VIEW_HEIGHT; y++) {
+            for (int x = 0; x < VIEW_WIDTH; x++) {
+                if (screen.getRGB(x, y) != direct.getRGB(x, y)) {
+                    differing++;
+                }
+            }
+        }
+        System.out.println("pixels differing between tiled and direct painting: " + differing);
+        
+        // Pick a visible node that is not the centre one and start dragging it
+        MindMapNode dragged = null;
+        for (MindMapNode node : nodes) {
+            if (node != nodes.get(0) && node.x < VIEW_WIDTH - 200 && node.y < VIEW_HEIGHT - 100) {
+                dragged = node;
+                break;
+            }
+        }
+        
+        double direct1 = dragFrames(canvas, dragged, nodes.get(0), screen, false);
+        double retained = dragFrames(canvas, dragged, nodes.get(0), screen, true);
+        System.out.printf("%d nodes, %dx%d view%n", nodeCount, VIEW_WIDTH, VIEW_HEIGHT);
+        System.out.printf("direct full repaint   %8.2f ms/frame  (%5.0f fps)%n", direct1, 1000 / direct1);
+        System.out.printf("tiles + dirty region  %8.2f ms/frame  (%5.0f fps)%n", retained, 1000 / retained);
+        if (differing > 0) {
+            System.exit(1);
+        }
+    }
+    
+    private static double dragFrames(MindMapCanvas canvas, MindMapNode node, MindMapNode center, BufferedImage screen, boolean retained) {
+        canvas.setRetainedRendering(retained);
+        Rectangle full = new Rectangle(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+        paint(canvas, screen, full);
+        canvas.dispatchEvent(new MouseEvent(canvas, MouseEvent.MOUSE_PRESSED, 0, MouseEvent.BUTTON1_DOWN_MASK,
+            node.x + 5, node.y + 5, 1, false, MouseEvent.BUTTON1));
+        paint(canvas, screen, full);
+        
+        int startX = node.x;
+        int startY = node.y;
+        long start = 0;
+        for (int frame = -FRAMES / 3; frame < FRAMES; frame++) {
+            if (frame == 0) {
+                start = System.nanoTime();
+            }
+            Rectangle dirty = footprint(node, center);
+            int step = Math.floorMod(frame, 100);
+            canvas.moveNode(node, startX + step * 2, startY + step);
+            // What the RepaintManager would hand to paint: the node's old and new footprint,
+            // or everything in direct mode (the previous behaviour)
+            dirty.add(footprint(node, center));
+            paint(canvas, screen, retained ? dirty : full);
+        }
+        double perFrame = (System.nanoTime() - start) / 1e6 / FRAMES;
+        canvas.dispatchEvent(new MouseEvent(canvas, MouseEvent.MOUSE_RELEASED, 0, 0,
+            node.x + 5, node.y + 5, 1, false, MouseEvent.BUTTON1));
+        return perFrame;
+    }
+    
+    private static Rectangle footprint(MindMapNode node, MindMapNode center) {
+        Rectangle region = new Rectangle(node.x - 2, node.y - 2, node.width + 7, node.height + 7);
+        region.add(new Rectangle(center.x + 58, center.y + 28, 4, 4));
+        return region;
+    }
+    
+    private static void paint(MindMapCanvas canvas, BufferedImage screen, Rectangle clip) {
+        Graphics2D g = screen.createGraphics();
+        g.setClip(clip);
+        canvas.paintComponent(g);
+        g.dispose();
+    }
+}
\ No newline at end of file
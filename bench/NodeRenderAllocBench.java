@@ -0,0 +1,172 @@
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+// Node Render Allocation Benchmark - Bytes allocated per drag frame (move one node, repaint the canvas),
+// for the current MindMapNode.draw and for the previous per-paint Font/Color/Stroke/layout allocation.
+// The drag is driven the way the canvas sees it, between a mouse press and release on the node, so
+// the retained tiles stay valid and only the live node is drawn on top of them.
+// Exits with status 1 if the node layout path allocates again in steady state, or if a drag frame
+// allocates more than the previous code did.
+//
+//   javac -encoding UTF-8 -d out CtrlYouApp.java bench/NodeRenderAllocBench.java
+//   java -Djava.awt.headless=true -cp out NodeRenderAllocBench
+public class NodeRenderAllocBench {
+    private static final int FRAMES = 200;
+    private static final int NODE_COUNT = 400;
+    
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        
+        Random rand = new Random(7);
+        ArrayList<MindMapNode> nodes = new ArrayList<>();
+        for (int i = 0; i < NODE_COUNT; i++) {
+            nodes.add(new MindMapNode(i + 1, "Idea number " + i + " with a few words", rand.nextInt(880), rand.nextInt(640)));
+        }
+        MindMapCanvas canvas = new MindMapCanvas();
+        canvas.setSize(1000, 700);
+        canvas.setNodes(nodes);
+        // Nodes overlap, so take whichever one a press in the middle of the map actually lands on
+        MindMapNode middle = nodes.get(NODE_COUNT / 2);
+        MindMapNode dragged = canvas.nodeAt(new Point(middle.x + 5, middle.y + 5));
+        
+        BufferedImage image = new BufferedImage(1000, 700, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setClip(0, 0, 1000, 700);
+        
+        // Current code: the full drag frame, and the node text layout on its own
+        Runnable frame = new Runnable() {
+            int step = 0;
+            public void run() {
+                step++;
+                canvas.moveNode(dragged, 100 + step % 400, 100 + step % 300);
+                canvas.paintComponent(g);
+            }
+        };
+        canvas.paintComponent(g);
+        canvas.dispatchEvent(new MouseEvent(canvas, MouseEvent.MOUSE_PRESSED, 0, MouseEvent.BUTTON1_DOWN_MASK,
+            dragged.x + 5, dragged.y + 5, 1, false, MouseEvent.BUTTON1));
+        double currentFrame = bytesPerOp(threads, thread, frame);
+        canvas.dispatchEvent(new MouseEvent(canvas, MouseEvent.MOUSE_RELEASED, 0, 0,
+            dragged.x + 5, dragged.y + 5, 1, false, MouseEvent.BUTTON1));
+        
+        BufferedImage textImage = new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D textGraphics = textImage.createGraphics();
+        MindMapNode single = new MindMapNode(1, "Idea with a few words to wrap", 0, 0);
+        double currentNodeOnly = bytesPerOp(threads, thread, () -> single.draw(textGraphics, false)) - drawingOverhead(threads, thread, textGraphics);
+        
+        // Previous code, reproduced below
+        Runnable legacyFrame = new Runnable() {
+            int step = 0;
+            public void run() {
+                step++;
+                dragged.x = 100 + step % 400;
+                dragged.y = 100 + step % 300;
+                legacyPaint(g, nodes);
+            }
+        };
+        double legacy = bytesPerOp(threads, thread, legacyFrame);
+        double legacyNodeOnly = bytesPerOp(threads, thread, () -> legacyDraw(textGraphics, single, false)) - drawingOverhead(threads, thread, textGraphics);
+        
+        System.out.printf("drag frame, %d nodes: current %,12.0f B/frame   previous %,12.0f B/frame%n", NODE_COUNT, currentFrame, legacy);
+        System.out.printf("one node, excluding Java2D: current %,8.0f B/draw    previous %,8.0f B/draw%n", currentNodeOnly, legacyNodeOnly);
+        
+        // Java2D itself allocates a little for antialiased shapes; everything on top of that must be ~0
+        if (currentNodeOnly > 16) {
+            System.out.println("FAIL: MindMapNode.draw allocates " + Math.round(currentNodeOnly) + " bytes per call in steady state");
+            System.exit(1);
+        }
+        if (currentFrame > legacy) {
+            System.out.println("FAIL: a drag frame allocates more than the previous code did");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+    
+    // The same primitives MindMapNode.draw issues, with constant arguments: what Java2D allocates on its own
+    private static double drawingOverhead(com.sun.management.ThreadMXBean threads, long thread, Graphics2D g) {
+        Color shadow = new Color(0, 0, 0, 30);
+        Font font = MindMapNode.TEXT_FONT;
+        Stroke stroke = MindMapNode.BORDER_STROKE;
+        return bytesPerOp(threads, thread, () -> {
+            g.setColor(shadow);
+            g.fillRoundRect(3, 3, 120, 60, 15, 15);
+            g.setColor(ColorPalette.SOFT_PINK);
+            g.fillRoundRect(0, 0, 120, 60, 15, 15);
+            g.setColor(ColorPalette.LAVENDER);
+            g.setStroke(stroke);
+            g.drawRoundRect(0, 0, 120, 60, 15, 15);
+            g.setColor(ColorPalette.TEXT_DARK);
+            g.setFont(font);
+            g.drawString("Idea with a few", 10, 20);
+            g.drawString("words to wrap", 12, 35);
+        });
+    }
+    
+    private static double bytesPerOp(com.sun.management.ThreadMXBean threads, long thread, Runnable op) {
+        for (int i = 0; i < FRAMES; i++) {
+            op.run();
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < FRAMES; i++) {
+            op.run();
+        }
+        return (double) (threads.getThreadAllocatedBytes(thread) - before) / FRAMES;
+    }
+    
+    private static void legacyPaint(Graphics2D g2d, ArrayList<MindMapNode> nodes) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setColor(ColorPalette.LAVENDER);
+        g2d.setStroke(new BasicStroke(2));
+        MindMapNode center = nodes.get(0);
+        for (int i = 1; i < nodes.size(); i++) {
+            MindMapNode node = nodes.get(i);
+            g2d.drawLine(center.x + 60, center.y + 30, node.x + 60, node.y + 30);
+        }
+        for (MindMapNode node : nodes) {
+            legacyDraw(g2d, node, false);
+        }
+    }
+    
+    // MindMapNode.draw before layouts were cached
+    private static void legacyDraw(Graphics2D g, MindMapNode node, boolean selected) {
+        int x = node.x, y = node.y, width = node.width, height = node.height;
+        g.setColor(new Color(0, 0, 0, 30));
+        g.fillRoundRect(x + 3, y + 3, width, height, 15, 15);
+        g.setColor(selected ? ColorPalette.PALE_ROSE : ColorPalette.SOFT_PINK);
+        g.fillRoundRect(x, y, width, height, 15, 15);
+        g.setColor(selected ? ColorPalette.MEDIUM_PURPLE : ColorPalette.LAVENDER);
+        g.setStroke(new BasicStroke(selected ? 3 : 2));
+        g.drawRoundRect(x, y, width, height, 15, 15);
+        g.setColor(ColorPalette.TEXT_DARK);
+        g.setFont(new Font("Georgia", Font.BOLD, 12));
+        FontMetrics fm = g.getFontMetrics();
+        String[] words = node.text.split(" ");
+        ArrayList<String> lines = new ArrayList<>();
+        String currentLine = "";
+        for (String word : words) {
+            String testLine = currentLine.isEmpty() ? word : currentLine + " " + word;
+            if (fm.stringWidth(testLine) > width - 20) {
+                if (!currentLine.isEmpty()) {
+                    lines.add(currentLine);
+                }
+                currentLine = word;
+            } else {
+                currentLine = testLine;
+            }
+        }
+        if (!currentLine.isEmpty()) {
+            lines.add(currentLine);
+        }
+        int lineHeight = fm.getHeight();
+        int startY = y + (height - lines.size() * lineHeight) / 2 + fm.getAscent();
+        for (String line : lines) {
+            g.drawString(line, x + (width - fm.stringWidth(line)) / 2, startY);
+            startY += lineHeight;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+// Search Benchmark - Type-ahead query latency of SearchIndex over a large corpus (100,000 notes by
+// default), against the 10 ms a keystroke may take. Notes are drawn from a Zipf-like vocabulary so a
+// few words are in most notes and most words are in a few, as in real lecture notes. Also times
+// building the index and writing it to disk. Nothing touches the real index: user.home is pointed
+// at a scratch directory.
+//
+//   javac -encoding UTF-8 -d out CtrlYouApp.java bench/SearchBench.java
+//   java -Xmx3g -cp out SearchBench [documents] [target ms]
+//
+// Each query is run QUERY_RUNS times after warming up; the median and 99th percentile are reported.
+// Exits with status 1 if any query's median is over the target.
+public class SearchBench {
+    private static final int VOCABULARY = 30000;
+    private static final int WORDS_PER_NOTE = 80;
+    private static final int QUERY_RUNS = 200;
+    
+    public static void main(String[] args) throws Exception {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        double targetMs = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+        File scratch = Files.createTempDirectory("ctrlyou-search-bench").toFile();
+        System.setProperty("user.home", scratch.getPath());
+        
+        Random rand = new Random(3);
+        String[] words = vocabulary(rand);
+        // Cumulative Zipf weights (exponent 1), so word i turns up about 1/(i+1) as often as the first
+        double[] cumulative = new double[VOCABULARY];
+        double total = 0;
+        for (int i = 0; i < VOCABULARY; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        
+        long start = System.nanoTime();
+        StringBuilder text = new StringBuilder();
+        for (int id = 1; id <= documents; id++) {
+            text.setLength(0);
+            for (int w = 0; w < WORDS_PER_NOTE; w++) {
+                int index = Arrays.binarySearch(cumulative, rand.nextDouble() * total);
+                text.append(words[index < 0 ? -index - 1 : index]).append(w % 12 == 11 ? '\n' : ' ');
+            }
+            String title = words[rand.nextInt(200)] + " " + words[200 + rand.nextInt(2000)];
+            SearchIndex.indexNote(id, title, text.toString(), id);
+        }
+        System.out.printf("%d notes of %d words, %d-word vocabulary; indexed in %.1f s%n",
+            documents, WORDS_PER_NOTE, VOCABULARY, (System.nanoTime() - start) / 1e9);
+        
+        String common = words[0];
+        String middling = words[500];
+        String rare = words[VOCABULARY - 1];
+        String[][] queries = {
+            {"most common word", common + " "},
+            {"mid-frequency word", middling + " "},
+            {"rare word", rare + " "},
+            {"common + mid", common + " " + middling + " "},
+            {"two-letter prefix", middling.substring(0, 2)},
+            {"three-letter prefix", middling.substring(0, 3)},
+            {"word + prefix", common + " " + middling.substring(0, 3)},
+        };
+        System.out.printf("%n%-22s %8s %10s %10s%n", "query", "hits", "p50 ms", "p99 ms");
+        boolean ok = true;
+        for (String[] query : queries) {
+            int hits = SearchIndex.search(query[1], SearchIndex.NOTE, 20).size();
+            double[] runs = new double[QUERY_RUNS];
+            for (int i = 0; i < 20; i++) {
+                SearchIndex.search(query[1], SearchIndex.NOTE, 20);
+            }
+            for (int i = 0; i < QUERY_RUNS; i++) {
+                long queryStart = System.nanoTime();
+                SearchIndex.search(query[1], SearchIndex.NOTE, 20);
+                runs[i] = (System.nanoTime() - queryStart) / 1e6;
+            }
+            Arrays.sort(runs);
+            double p50 = runs[QUERY_RUNS / 2];
+            double p99 = runs[QUERY_RUNS * 99 / 100];
+            boolean within = p50 <= targetMs;
+            ok &= within;
+            System.out.printf("%-22s %8d %10.3f %10.3f%s%n", query[0], hits, p50, p99, within ? "" : "   over " + targetMs + " ms");
+        }
+        
+        start = System.nanoTime();
+        SearchIndex.save();
+        File saved = new File(scratch, ".ctrlyou").listFiles()[0];
+        System.out.printf("%nsaved %.1f MB in %.2f s%n", saved.length() / 1e6, (System.nanoTime() - start) / 1e9);
+        deleteRecursively(scratch);
+        
+        System.out.println(ok ? "OK" : "FAILED: median over " + targetMs + " ms");
+        System.exit(ok ? 0 : 1);
+    }
+    
+    // Pronounceable made-up words of two to four syllables, all distinct
+    private static String[] vocabulary(Random rand) {
+        String[] syllables = {"ka", "lo", "mi", "ne", "ru", "ta", "vi", "so", "pe", "da", "gu", "ri", "sha", "tor", "lin", "mek"};
+        java.util.LinkedHashSet<String> words = new java.util.LinkedHashSet<>();
+        StringBuilder word = new StringBuilder();
+        while (words.size() < VOCABULARY) {
+            word.setLength(0);
+            for (int i = 2 + rand.nextInt(3); i > 0; i--) {
+                word.append(syllables[rand.nextInt(syllables.length)]);
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+    
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,13 @@
+#!/bin/sh
+# Builds the JMH benchmark module (bench/pom.xml) and runs HotPathBenchmark, writing JMH's JSON results.
+#
+#   bench/run.sh [results.json] [JMH options, e.g. -p nodes=10,1000 or -wi 1 -i 3]
+#
+# Compare two runs with:
+#   java -cp bench/target/benchmarks.jar ctrlyou.bench.CompareResults baseline.json results.json [threshold %]
+set -e
+cd "$(dirname "$0")/.."
+RESULTS="${1:-bench-results.json}"
+[ $# -gt 0 ] && shift
+mvn -B -q -f bench/pom.xml package
+java -jar bench/target/benchmarks.jar HotPathBenchmark -rf json -rff "$RESULTS" "$@"
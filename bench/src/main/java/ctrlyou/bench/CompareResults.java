@@ -0,0 +1,89 @@
+package ctrlyou.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Compare Results - Compares two JMH result files written with -rf json, benchmark by benchmark (each
+// parameter combination separately), and prints the change in score. Scores are average times, as in
+// HotPathBenchmark. Exits with status 1 if any benchmark in both files got slower than the threshold
+// (default 10%).
+//
+//   java -cp bench/target/benchmarks.jar ctrlyou.bench.CompareResults baseline.json results.json [threshold %]
+public class CompareResults {
+    // JMH writes one key per line, so the files are read line by line rather than with a JSON library
+    private static final Pattern BENCHMARK = Pattern.compile("^\\s*\"benchmark\" : \"([^\"]+)\"");
+    private static final Pattern PARAMS = Pattern.compile("^\\s*\"params\" : \\{");
+    private static final Pattern PARAM = Pattern.compile("^\\s*\"([^\"]+)\" : \"([^\"]*)\"");
+    private static final Pattern PRIMARY_METRIC = Pattern.compile("^\\s*\"primaryMetric\" : \\{");
+    private static final Pattern SCORE = Pattern.compile("^\\s*\"score\" : ([-0-9.Ee]+|\"NaN\")");
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults baseline.json results.json [threshold %]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        System.exit(compare(new File(args[0]), new File(args[1]), threshold) ? 0 : 1);
+    }
+    
+    // "benchmark [param=value, ...]" -> score, in file order
+    static LinkedHashMap<String, Double> readScores(File file) throws IOException {
+        LinkedHashMap<String, Double> scores = new LinkedHashMap<>();
+        String benchmark = null;
+        StringBuilder params = new StringBuilder();
+        boolean inParams = false;
+        boolean inPrimaryMetric = false;
+        for (String line : Files.readAllLines(file.toPath())) {
+            Matcher m;
+            if ((m = BENCHMARK.matcher(line)).find()) {
+                benchmark = m.group(1);
+                params.setLength(0);
+                inParams = false;
+                inPrimaryMetric = false;
+            } else if (benchmark == null) {
+                continue;
+            } else if (PARAMS.matcher(line).find()) {
+                inParams = true;
+            } else if (inParams && (m = PARAM.matcher(line)).find()) {
+                params.append(params.length() > 0 ? ", " : "").append(m.group(1)).append('=').append(m.group(2));
+            } else if (inParams && line.trim().startsWith("}")) {
+                inParams = false;
+            } else if (PRIMARY_METRIC.matcher(line).find()) {
+                inPrimaryMetric = true;
+            } else if (inPrimaryMetric && (m = SCORE.matcher(line)).find()) {
+                String score = m.group(1);
+                scores.put(benchmark + (params.length() == 0 ? "" : " [" + params + "]"),
+                    score.startsWith("\"") ? Double.NaN : Double.parseDouble(score));
+                benchmark = null;
+            }
+        }
+        return scores;
+    }
+    
+    // Returns false if any benchmark present in both files is slower by more than thresholdPercent
+    static boolean compare(File baselineFile, File currentFile, double thresholdPercent) throws IOException {
+        LinkedHashMap<String, Double> baseline = readScores(baselineFile);
+        LinkedHashMap<String, Double> current = readScores(currentFile);
+        boolean ok = true;
+        System.out.printf("%-64s %12s %12s %9s%n", "benchmark", "base us/op", "now us/op", "change");
+        for (Map.Entry<String, Double> entry : current.entrySet()) {
+            String name = entry.getKey().replace("ctrlyou.bench.", "");
+            Double before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-64s %12s %12.3f %9s%n", name, "-", entry.getValue(), "new");
+                continue;
+            }
+            double change = (entry.getValue() - before) / before * 100;
+            boolean regressed = change > thresholdPercent;
+            ok &= !regressed;
+            System.out.printf("%-64s %12.3f %12.3f %+8.1f%%%s%n", name, before, entry.getValue(), change,
+                regressed ? "  REGRESSION" : "");
+        }
+        return ok;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,167 @@
+package ctrlyou.bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Hot Path Benchmark - Average time per operation for the paths we care about: DatabaseManager CRUD on
+// the embedded local store, mind map save and load from 10 to 100k nodes, node and canvas painting
+// into an offscreen image, cached icon loads and mood gift lookups. The operations themselves are in
+// bench/HotPathCases.java, which explains why they are fetched by reflection.
+//
+//   bench/run.sh [results.json] [JMH options]
+//   java -jar bench/target/benchmarks.jar -rf json -rff results.json [JMH options]
+//   java -cp bench/target/benchmarks.jar ctrlyou.bench.CompareResults baseline.json results.json [threshold %]
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class HotPathBenchmark {
+    
+    @State(Scope.Benchmark)
+    public static class Database {
+        LongSupplier noteCreateDelete;
+        LongSupplier noteRead;
+        LongSupplier noteUpdate;
+        LongSupplier notePage;
+        LongSupplier taskAddDelete;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            noteCreateDelete = cases("noteCreateDelete");
+            noteRead = cases("noteRead");
+            noteUpdate = cases("noteUpdate");
+            notePage = cases("notePage", 50);
+            taskAddDelete = cases("taskAddDelete");
+        }
+    }
+    
+    @State(Scope.Benchmark)
+    public static class MindMap {
+        @Param({"10", "100", "1000", "10000", "100000"})
+        int nodes;
+        
+        LongSupplier save;
+        LongSupplier load;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            save = cases("mindMapSave", nodes);
+            load = cases("mindMapLoad", nodes);
+        }
+    }
+    
+    @State(Scope.Benchmark)
+    public static class Canvas {
+        // Named apart from MindMap's, as JMH treats parameters with one name as one parameter
+        @Param({"1000", "10000"})
+        int canvasNodes;
+        
+        @Param({"true", "false"})
+        boolean tiles;
+        
+        LongSupplier paint;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            paint = cases("canvasPaint", canvasNodes, tiles);
+        }
+    }
+    
+    @State(Scope.Benchmark)
+    public static class Lookups {
+        LongSupplier nodeDraw;
+        LongSupplier loadIcon;
+        LongSupplier giftLookups;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            nodeDraw = cases("nodeDraw");
+            loadIcon = cases("loadIcon");
+            giftLookups = cases("giftLookups");
+        }
+    }
+    
+    @Benchmark
+    public long dbNoteCreateDelete(Database db) {
+        return db.noteCreateDelete.getAsLong();
+    }
+    
+    @Benchmark
+    public long dbNoteRead(Database db) {
+        return db.noteRead.getAsLong();
+    }
+    
+    @Benchmark
+    public long dbNoteUpdate(Database db) {
+        return db.noteUpdate.getAsLong();
+    }
+    
+    @Benchmark
+    public long dbNotePage(Database db) {
+        return db.notePage.getAsLong();
+    }
+    
+    @Benchmark
+    public long dbTaskAddDelete(Database db) {
+        return db.taskAddDelete.getAsLong();
+    }
+    
+    @Benchmark
+    public long mindMapSave(MindMap map) {
+        return map.save.getAsLong();
+    }
+    
+    @Benchmark
+    public long mindMapLoad(MindMap map) {
+        return map.load.getAsLong();
+    }
+    
+    @Benchmark
+    public long renderNodeDraw(Lookups lookups) {
+        return lookups.nodeDraw.getAsLong();
+    }
+    
+    @Benchmark
+    public long renderCanvasPaint(Canvas canvas) {
+        return canvas.paint.getAsLong();
+    }
+    
+    @Benchmark
+    public long iconLoadIcon(Lookups lookups) {
+        return lookups.loadIcon.getAsLong();
+    }
+    
+    @Benchmark
+    public long moodGiftLookups(Lookups lookups) {
+        return lookups.giftLookups.getAsLong();
+    }
+    
+    // Calls the HotPathCases factory with these arguments; ints and booleans are passed as primitives
+    static LongSupplier cases(String name, Object... args) {
+        Class<?>[] types = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            types[i] = args[i] instanceof Integer ? int.class : args[i] instanceof Boolean ? boolean.class : args[i].getClass();
+        }
+        try {
+            return (LongSupplier) Class.forName("HotPathCases").getMethod(name, types).invoke(null, args);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Setting up " + name + " failed", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No benchmark case " + name, e);
+        }
+    }
+}
\ No newline at end of file
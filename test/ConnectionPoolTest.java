@@ -0,0 +1,210 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Properties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// Connection Pool Test - Exercises ConnectionPool against a stub JDBC driver, so it runs without a
+// database: connections are reused after being returned, a connection that fails validation is
+// replaced on borrow, idle connections are evicted after the timeout, a borrow times out when the pool
+// is exhausted, and a returned connection's transaction and session settings are reset.
+class ConnectionPoolTest {
+    private static final String URL = "jdbc:poolcheck:";
+    
+    private StubDriver driver;
+    private ConnectionPool pool;
+    
+    @BeforeEach
+    void registerDriver() throws SQLException {
+        driver = new StubDriver();
+        DriverManager.registerDriver(driver);
+    }
+    
+    @AfterEach
+    void shutDown() throws SQLException {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        DriverManager.deregisterDriver(driver);
+    }
+    
+    // Borrow and return: the second borrow gets the same physical connection
+    @Test
+    void returnedConnectionIsReused() throws SQLException {
+        pool = new ConnectionPool(URL, "user", "password", 2, 200, 60000);
+        pool.borrow().close();
+        pool.borrow().close();
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, driver.opened.size());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getActiveCount());
+    }
+    
+    // Validation on borrow: a connection that went bad while idle is closed and replaced
+    @Test
+    void invalidIdleConnectionIsReplaced() throws SQLException {
+        pool = new ConnectionPool(URL, "user", "password", 2, 200, 60000);
+        pool.borrow().close();
+        driver.opened.get(0).valid = false;
+        pool.borrow().close();
+        assertEquals(2, pool.getCreatedCount());
+        assertTrue(driver.opened.get(0).closed);
+    }
+    
+    @Test
+    void returnedConnectionIsReset() throws SQLException {
+        pool = new ConnectionPool(URL, "user", "password", 2, 200, 60000);
+        Connection conn = pool.borrow();
+        conn.setAutoCommit(false);
+        conn.setReadOnly(true);
+        conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        conn.close();
+        StubConnection raw = driver.opened.get(0);
+        assertEquals(1, raw.rollbacks, "open transaction is rolled back");
+        assertTrue(raw.autoCommit, "autocommit is restored");
+        assertFalse(raw.readOnly, "read-only is restored");
+        assertEquals(Connection.TRANSACTION_REPEATABLE_READ, raw.isolation, "isolation is restored");
+        conn = pool.borrow();
+        assertEquals(1, pool.getCreatedCount(), "reset connection is reused");
+        assertFalse(conn.isReadOnly());
+        conn.close();
+    }
+    
+    // A returned connection that cannot be reset is closed rather than pooled
+    @Test
+    void connectionFailingItsResetIsClosed() throws SQLException {
+        pool = new ConnectionPool(URL, "user", "password", 2, 200, 60000);
+        Connection conn = pool.borrow();
+        conn.setReadOnly(true);
+        StubConnection raw = driver.opened.get(0);
+        raw.failResets = true;
+        conn.close();
+        assertTrue(raw.closed);
+        assertEquals(0, pool.getIdleCount());
+    }
+    
+    // Max wait: with every connection out, a borrow gives up after maxWaitMillis
+    @Test
+    void exhaustedPoolTimesOut() throws SQLException {
+        pool = new ConnectionPool(URL, "user", "password", 1, 150, 60000);
+        Connection held = pool.borrow();
+        long start = System.nanoTime();
+        assertThrows(SQLException.class, () -> pool.borrow().close());
+        long waitedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(waitedMillis >= 140 && waitedMillis < 2000, "waited " + waitedMillis + " ms");
+        held.close();
+        pool.borrow().close();
+        assertEquals(0, pool.getActiveCount(), "permit is back after return");
+    }
+    
+    // Idle eviction: connections unused past the idle timeout are closed
+    @Test
+    void idleConnectionsAreEvicted() throws Exception {
+        pool = new ConnectionPool(URL, "user", "password", 2, 200, 50);
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+        first.close();
+        second.close();
+        Thread.sleep(120);
+        pool.evictIdle();
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(driver.opened.get(0).closed && driver.opened.get(1).closed);
+        pool.borrow().close();
+        assertEquals(3, driver.opened.size(), "a new connection is opened after eviction");
+    }
+    
+    // Hands out StubConnections and keeps every one it opened
+    static class StubDriver implements Driver {
+        final ArrayList<StubConnection> opened = new ArrayList<>();
+        
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            StubConnection state = new StubConnection();
+            opened.add(state);
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> state.invoke(method.getName(), args));
+        }
+        
+        public boolean acceptsURL(String url) {
+            return url.startsWith(URL);
+        }
+        
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+        
+        public int getMajorVersion() {
+            return 1;
+        }
+        
+        public int getMinorVersion() {
+            return 0;
+        }
+        
+        public boolean jdbcCompliant() {
+            return false;
+        }
+        
+        public java.util.logging.Logger getParentLogger() {
+            return java.util.logging.Logger.getGlobal();
+        }
+    }
+    
+    // Session state of one stub connection; only what the pool touches is implemented
+    static class StubConnection {
+        boolean closed = false;
+        boolean valid = true;
+        boolean autoCommit = true;
+        boolean readOnly = false;
+        int isolation = Connection.TRANSACTION_REPEATABLE_READ;
+        int rollbacks = 0;
+        boolean failResets = false;
+        
+        Object invoke(String method, Object[] args) throws SQLException {
+            switch (method) {
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "isValid":
+                    return valid && !closed;
+                case "getAutoCommit":
+                    return autoCommit;
+                case "setAutoCommit":
+                    autoCommit = (Boolean) args[0];
+                    return null;
+                case "rollback":
+                    rollbacks++;
+                    return null;
+                case "isReadOnly":
+                    return readOnly;
+                case "setReadOnly":
+                    if (failResets && !(Boolean) args[0]) {
+                        throw new SQLException("Stub connection refused the reset");
+                    }
+                    readOnly = (Boolean) args[0];
+                    return null;
+                case "getTransactionIsolation":
+                    return isolation;
+                case "setTransactionIsolation":
+                    isolation = (Integer) args[0];
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(this);
+                case "equals":
+                    return false;
+                case "toString":
+                    return "StubConnection";
+                default:
+                    throw new SQLFeatureNotSupportedException(method);
+            }
+        }
+    }
+}
\ No newline at end of file
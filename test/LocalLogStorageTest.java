@@ -0,0 +1,114 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.sql.SQLException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Local Log Storage Test - Exercises LocalLogStorage in a scratch directory: rows written before a
+// close come back on replay, a record with a bad checksum or a torn tail is cut off (along with
+// everything after it) and the store carries on appending, and compaction shrinks a log full of
+// overwritten rows without changing what replays from it.
+class LocalLogStorageTest {
+    @TempDir
+    File dir;
+    private File logFile;
+    
+    @BeforeEach
+    void locateLog() {
+        logFile = new File(dir, "ctrlyou.log");
+    }
+    
+    @Test
+    void rowsReplay() throws SQLException {
+        LocalLogStorage store = open();
+        int noteId = store.insertNote("Groceries", "milk\neggs");
+        store.updateNote(noteId, "milk\neggs\nbread");
+        int goneId = store.insertNote("Scratch", "delete me");
+        store.deleteNote(goneId);
+        int taskId = store.insertTask("Water plants");
+        store.updateTaskStatus(taskId, "Done");
+        store.close();
+        
+        store = open();
+        assertEquals("milk\neggs\nbread", store.getNoteContent(noteId), "note content replays");
+        assertNull(store.getNoteContent(goneId), "deleted note stays deleted");
+        assertEquals(1, store.countNotes(), "note count replays");
+        Object[] task = store.getAllTasks().get(0);
+        assertEquals(taskId, task[0]);
+        assertEquals("Done", task[2], "task status replays");
+        assertTrue(store.insertNote("Next", "") > goneId, "ids are not reused");
+        store.close();
+    }
+    
+    @Test
+    void damagedTailIsCutOff() throws Exception {
+        LocalLogStorage store = open();
+        int keptId = store.insertNote("Kept", "written before the damage");
+        long goodLength = logFile.length();
+        int lostId = store.insertNote("Lost", "its checksum gets corrupted");
+        store.close();
+        
+        // Flip a bit in the last record's checksum
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 1);
+        }
+        store = open();
+        assertNull(store.getNoteContent(lostId), "record with a bad checksum is dropped");
+        assertEquals("written before the damage", store.getNoteContent(keptId), "records before it survive");
+        assertEquals(goodLength, logFile.length(), "log is cut back to the last good record");
+        store.close();
+        
+        // A record whose length promises more bytes than were written, as after a crash mid-append
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            raf.seek(raf.length());
+            raf.writeInt(1 << 20);
+            raf.write(new byte[] {1, 2, 3});
+        }
+        store = open();
+        assertEquals(goodLength, logFile.length(), "torn tail is cut off");
+        int afterId = store.insertNote("After", "appended past the cut");
+        store.close();
+        store = open();
+        assertEquals("appended past the cut", store.getNoteContent(afterId), "appends after a cut replay");
+        assertEquals(2, store.countNotes(), "cut records stay gone");
+        store.close();
+    }
+    
+    @Test
+    void compactionKeepsWhatReplays() throws SQLException {
+        LocalLogStorage store = open();
+        int otherId = store.insertNote("Other", "left alone");
+        int noteId = store.insertNote("Counter", "0");
+        long peak = 0;
+        for (int i = 1; i <= 3000; i++) {
+            store.updateNote(noteId, "count " + i);
+            peak = Math.max(peak, logFile.length());
+        }
+        long compacted = logFile.length();
+        store.close();
+        assertTrue(compacted < peak / 4, "compaction shrinks the log");
+        assertFalse(new File(dir, "ctrlyou.log.compact").exists(), "no temporary file is left behind");
+        
+        store = open();
+        assertEquals("count 3000", store.getNoteContent(noteId), "compacted log replays the latest content");
+        assertEquals("left alone", store.getNoteContent(otherId), "compacted log keeps the other rows");
+        int nextId = store.insertNote("Next", "after compaction");
+        assertTrue(nextId > noteId, "sequence survives compaction");
+        store.close();
+        store = open();
+        assertEquals("after compaction", store.getNoteContent(nextId), "appends after compaction replay");
+        store.close();
+    }
+    
+    private LocalLogStorage open() throws SQLException {
+        LocalLogStorage store = new LocalLogStorage(dir, false);
+        store.initialize();
+        return store;
+    }
+}
\ No newline at end of file
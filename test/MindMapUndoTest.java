@@ -0,0 +1,105 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.TreeMap;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// Mind Map Undo Test - Deletes nodes on a headless canvas, undoes and redoes, and checks that positions
+// and parent links come back exactly. Also saves through the embedded local store between steps and
+// reloads, so diff saves of undone deletions are checked too (deleting the root, saving, undoing and
+// saving again must reload with the original root). Needs -Djava.awt.headless=true, which pom.xml sets.
+class MindMapUndoTest {
+    private int mindmapId;
+    private MindMapCanvas canvas;
+    private TreeMap<Long, String> original;
+    
+    @BeforeAll
+    static void openStore() {
+        TestDatabase.init();
+    }
+    
+    @BeforeEach
+    void openSampleMap() {
+        mindmapId = DatabaseManager.createMindMap("Undo test", -1);
+        assertTrue(DatabaseManager.saveMindMap(mindmapId, sampleMap()));
+        canvas = load(mindmapId);
+        original = shape(canvas.getNodes());
+    }
+    
+    @Test
+    void undoAndRedoOfDelete() {
+        select(canvas, find(canvas, 2));
+        canvas.deleteSelectedNode();
+        assertFalse(shape(canvas.getNodes()).containsKey(2L), "delete removes the node");
+        canvas.undo();
+        assertEquals(original, shape(canvas.getNodes()), "undo of delete");
+        canvas.redo();
+        canvas.undo();
+        assertEquals(original, shape(canvas.getNodes()), "redo then undo of delete");
+    }
+    
+    // Delete the root, save, undo, save again: the reloaded map must have its old root back
+    @Test
+    void undoneRootDeleteSurvivesSaves() {
+        select(canvas, find(canvas, 1));
+        canvas.deleteSelectedNode();
+        save(canvas, mindmapId);
+        canvas.undo();
+        assertEquals(original, shape(canvas.getNodes()), "undo of root delete");
+        save(canvas, mindmapId);
+        assertEquals(original, shape(load(mindmapId).getNodes()), "reload after undone root delete");
+    }
+    
+    private static MindMapCanvas load(int mindmapId) {
+        MindMapCanvas canvas = new MindMapCanvas();
+        canvas.setSize(1200, 900);
+        canvas.setNodes(DatabaseManager.loadMindMap(mindmapId));
+        return canvas;
+    }
+    
+    // A root with three children, one of which has two children of its own
+    private static ArrayList<MindMapNode> sampleMap() {
+        ArrayList<MindMapNode> nodes = new ArrayList<>();
+        long[][] layout = {{1, 0, 600, 450}, {2, 1, 300, 250}, {3, 1, 900, 250}, {4, 1, 600, 700}, {5, 2, 150, 100}, {6, 2, 300, 100}};
+        for (long[] row : layout) {
+            MindMapNode node = new MindMapNode(row[0], "Idea " + row[0], (int) row[2], (int) row[3]);
+            node.parentUid = row[1];
+            nodes.add(node);
+        }
+        return nodes;
+    }
+    
+    // uid -> position and parent, in a form that compares with equals()
+    private static TreeMap<Long, String> shape(ArrayList<MindMapNode> nodes) {
+        TreeMap<Long, String> shape = new TreeMap<>();
+        for (MindMapNode node : nodes) {
+            shape.put(node.uid, node.x + "," + node.y + " under " + (node.parent != null ? node.parent.uid : 0));
+        }
+        return shape;
+    }
+    
+    private static MindMapNode find(MindMapCanvas canvas, long uid) {
+        for (MindMapNode node : canvas.getNodes()) {
+            if (node.uid == uid) {
+                return node;
+            }
+        }
+        throw new IllegalStateException("No node " + uid);
+    }
+    
+    // A click without movement selects the node and records no move
+    private static void select(MindMapCanvas canvas, MindMapNode node) {
+        canvas.dispatchEvent(new MouseEvent(canvas, MouseEvent.MOUSE_PRESSED, 0, MouseEvent.BUTTON1_DOWN_MASK,
+            node.x + 5, node.y + 5, 1, false, MouseEvent.BUTTON1));
+        canvas.dispatchEvent(new MouseEvent(canvas, MouseEvent.MOUSE_RELEASED, 0, 0,
+            node.x + 5, node.y + 5, 1, false, MouseEvent.BUTTON1));
+    }
+    
+    // What the mind map panel does for a save once the map has a baseline
+    private static void save(MindMapCanvas canvas, int mindmapId) {
+        assertTrue(DatabaseManager.saveMindMapChanges(mindmapId, canvas.takeChangedNodes(false), canvas.takeDeletedNodeIds()), "save");
+    }
+}
\ No newline at end of file
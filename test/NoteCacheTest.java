@@ -0,0 +1,44 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// Note Cache Test - Opens a note through DatabaseManager, then changes and deletes it behind the
+// cache's back, through the backend directly, as another CtrlYou instance on the same database would.
+// Each later read must see the other writer's version; an unchanged note still comes from the cache.
+class NoteCacheTest {
+    @BeforeAll
+    static void openStore() {
+        TestDatabase.init();
+    }
+    
+    @Test
+    void unchangedNoteIsServedFromTheCache() {
+        int noteId = DatabaseManager.saveNote("Cached", "first version");
+        NoteText opened = DatabaseManager.openNote(noteId);
+        assertEquals("first version", opened.toString());
+        assertSame(opened, DatabaseManager.openNote(noteId));
+    }
+    
+    @Test
+    void otherInstanceSaveIsSeen() throws Exception {
+        int noteId = DatabaseManager.saveNote("Shared", "first version");
+        assertEquals("first version", DatabaseManager.openNote(noteId).toString());
+        
+        // Let the clock move on, as it would between two people's saves
+        Thread.sleep(20);
+        DatabaseManager.getStorage().updateNote(noteId, "saved by another instance");
+        assertEquals("saved by another instance", DatabaseManager.openNote(noteId).toString());
+        assertEquals("saved by another instance", DatabaseManager.getNoteContent(noteId));
+    }
+    
+    @Test
+    void otherInstanceDeleteIsSeen() throws Exception {
+        int noteId = DatabaseManager.saveNote("Doomed", "about to go");
+        assertEquals("about to go", DatabaseManager.getNoteContent(noteId));
+        
+        DatabaseManager.getStorage().deleteNote(noteId);
+        assertEquals(0, DatabaseManager.openNote(noteId).length());
+        assertEquals("", DatabaseManager.getNoteContent(noteId));
+    }
+}
\ No newline at end of file
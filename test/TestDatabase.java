@@ -0,0 +1,26 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+
+// Test Database - Points DatabaseManager at an embedded local store in a scratch directory. Its
+// backend is chosen once, when the class is first used, so every test in the run shares this store.
+class TestDatabase {
+    private static boolean initialized = false;
+    
+    static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        try {
+            File scratch = Files.createTempDirectory("ctrlyou-test").toFile();
+            System.setProperty("ctrlyou.storage", "local");
+            System.setProperty("ctrlyou.local.dir", scratch.getPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.setProperty("ctrlyou.metrics.log.seconds", "0");
+        DatabaseManager.initializeDatabase();
+        initialized = true;
+    }
+}
\ No newline at end of file